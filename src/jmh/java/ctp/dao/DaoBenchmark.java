@@ -0,0 +1,101 @@
+package ctp.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.UpdateOption;
+import org.iplass.mtp.entity.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ctp.entity.RadikoProgram;
+import dao.InMemoryEntityManager;
+
+/**
+ * {@link Dao}の呼び出しコストのベンチマーク
+ * <p>
+ * テスト用の{@link InMemoryEntityManager}を利用するため、DBアクセスを除いたDao層のコストとなる。
+ * (InMemoryEntityManager自体の処理コストを含む)
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+
+	/** 検索結果件数 */
+	private static final int ROWS = 1000;
+
+	private RadikoProgramDao dao;
+	private RadikoProgram program;
+	private UpdateOption updateOption;
+
+	@Setup
+	public void setUp() {
+		program = new RadikoProgram();
+		program.setOid("program0");
+		program.setProgramName("アフター6ジャンクション");
+		program.setStartDatetime(Timestamp.valueOf("2020-01-01 18:00:00"));
+
+		dao = new RadikoProgramDao(new InMemoryEntityManager().asEntityManager());
+		dao.insert(program);
+		for (int i = 1; i < ROWS; i++) {
+			RadikoProgram row = new RadikoProgram();
+			row.setOid("program" + i);
+			row.setProgramName("番組" + i);
+			row.setStartDatetime(program.getStartDatetime());
+			dao.insert(row);
+		}
+
+		updateOption = new UpdateOption(false);
+		List<String> properties = new ArrayList<>();
+		properties.add(RadikoProgram.PROGRAM_NAME);
+		updateOption.setUpdateProperties(properties);
+	}
+
+	@Benchmark
+	public RadikoProgram load() {
+		return dao.load(program.getOid());
+	}
+
+	/**
+	 * 登録したEntityを削除し、保持件数を一定に保つ
+	 */
+	@Benchmark
+	public String insertAndDelete() {
+		RadikoProgram inserted = new RadikoProgram();
+		inserted.setProgramName(program.getProgramName());
+		inserted.setStartDatetime(program.getStartDatetime());
+		String oid = dao.insert(inserted);
+		dao.delete(inserted);
+		return oid;
+	}
+
+	@Benchmark
+	public void update() {
+		dao.update(program, updateOption);
+	}
+
+	@Benchmark
+	public long searchStream() {
+		long[] count = new long[1];
+		dao.searchEntity(new Query().select(RadikoProgram.PROGRAM_NAME), entity -> {
+			count[0]++;
+			return true;
+		});
+		return count[0];
+	}
+}
@@ -0,0 +1,91 @@
+package ctp.entity;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link RadikoProgram}、{@link RadikoSchedule}のgetter/setterのベンチマーク
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityAccessorBenchmark {
+
+	private RadikoProgram program;
+	private RadikoSchedule schedule;
+
+	private Timestamp startDatetime;
+	private Time startTime;
+	private SelectValue listenStatus;
+	private SelectValue weekDay;
+
+	@Setup
+	public void setUp() {
+		startDatetime = Timestamp.valueOf("2020-01-01 18:00:00");
+		startTime = Time.valueOf("18:00:00");
+		listenStatus = new SelectValue("1");
+		weekDay = new SelectValue("3");
+
+		program = new RadikoProgram();
+		program.setProgramName("アフター6ジャンクション");
+		program.setStartDatetime(startDatetime);
+		program.setDeadline(startDatetime);
+		program.setListenStatus(listenStatus);
+
+		schedule = new RadikoSchedule();
+		schedule.setProgramName("アフター6ジャンクション");
+		schedule.setWeekDay(weekDay);
+		schedule.setStartTime(startTime);
+	}
+
+	@Benchmark
+	public void programGetters(Blackhole bh) {
+		bh.consume(program.getProgramName());
+		bh.consume(program.getStartDatetime());
+		bh.consume(program.getDeadline());
+		bh.consume(program.getListenStatus());
+	}
+
+	@Benchmark
+	public RadikoProgram programSetters() {
+		RadikoProgram p = new RadikoProgram();
+		p.setProgramName("アフター6ジャンクション");
+		p.setStartDatetime(startDatetime);
+		p.setDeadline(startDatetime);
+		p.setListenStatus(listenStatus);
+		return p;
+	}
+
+	@Benchmark
+	public void scheduleGetters(Blackhole bh) {
+		bh.consume(schedule.getProgramName());
+		bh.consume(schedule.getWeekDay());
+		bh.consume(schedule.getStartTime());
+	}
+
+	@Benchmark
+	public RadikoSchedule scheduleSetters() {
+		RadikoSchedule s = new RadikoSchedule();
+		s.setProgramName("アフター6ジャンクション");
+		s.setWeekDay(weekDay);
+		s.setStartTime(startTime);
+		return s;
+	}
+}
@@ -0,0 +1,90 @@
+package ctp.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+
+/**
+ * {@link RadikoProgramColumns}の集計のベンチマーク
+ * <p>
+ * 同じ番組をEntityのリストで保持した場合と、期間で絞り込んで視聴ステータス毎に件数を数えるコストを比較する。
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RadikoProgramColumnsBenchmark {
+
+	/** 番組数 */
+	private static final int ROWS = 100000;
+	/** 集計期間 */
+	private static final Timestamp FROM = Timestamp.valueOf("2020-02-01 00:00:00");
+	private static final Timestamp TO = Timestamp.valueOf("2020-02-29 23:59:59");
+
+	private List<RadikoProgram> programs;
+	private RadikoProgramColumns columns;
+
+	@Setup
+	public void setUp() {
+		String[] stations = { "TBS", "QRR", "LFR", "INT", "FMT" };
+		long start = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+		programs = new ArrayList<>(ROWS);
+		RadikoProgramColumns.Builder builder = new RadikoProgramColumns.Builder();
+		for (int i = 0; i < ROWS; i++) {
+			RadikoStation station = new RadikoStation();
+			station.setOid(stations[i % stations.length]);
+			RadikoProgram program = new RadikoProgram();
+			program.setOid("program" + i);
+			program.setRadikoStation(station);
+			program.setProgramName("番組" + (i % 100));
+			program.setStartDatetime(new Timestamp(start + i * 60000L));
+			if (i % 3 == 0) {
+				program.setListenStatus(new SelectValue("LISTENED"));
+			}
+			programs.add(program);
+			builder.add(program);
+		}
+		columns = builder.build();
+	}
+
+	@Benchmark
+	public Map<String, Long> entities() {
+		Map<String, Long> counts = new HashMap<>();
+		for (RadikoProgram program : programs) {
+			Timestamp startDatetime = program.getStartDatetime();
+			if (startDatetime != null && !startDatetime.before(FROM) && !startDatetime.after(TO)) {
+				SelectValue status = program.getListenStatus();
+				counts.merge(status != null ? status.getValue() : RadikoProgramService.NO_STATUS, 1L, Long::sum);
+			}
+		}
+		return counts;
+	}
+
+	@Benchmark
+	public Map<String, Long> columns() {
+		boolean[] selection = columns.selectAll();
+		columns.filterStartBetween(selection, FROM, TO);
+		return columns.countByStatus(selection);
+	}
+}
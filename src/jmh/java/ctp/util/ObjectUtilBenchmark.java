@@ -0,0 +1,81 @@
+package ctp.util;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ObjectUtil}のベンチマーク
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjectUtilBenchmark {
+
+	private String template;
+	private Map<String, String> bindData;
+
+	private BigDecimal decimal1;
+	private BigDecimal decimal2;
+	private String string1;
+	private String string2;
+	private SelectValue selectValue;
+
+	@Setup
+	public void setUp() {
+		template = "{stationName}の番組「{programName}」の視聴期限は{deadline}です。{url} {unknown}";
+		bindData = new HashMap<>();
+		bindData.put("stationName", "TBSラジオ");
+		bindData.put("programName", "アフター6ジャンクション");
+		bindData.put("deadline", "2020/01/08 18:00");
+		bindData.put("url", "http://radiko.jp/#!/ts/TBS/20200101180000");
+		bindData.put("note", "");
+
+		decimal1 = new BigDecimal("1.0");
+		decimal2 = new BigDecimal("1");
+		string1 = new String("radiko");
+		string2 = new String("radiko");
+		selectValue = new SelectValue("1");
+	}
+
+	@Benchmark
+	public String replace() {
+		return ObjectUtil.replace(template, bindData);
+	}
+
+	@Benchmark
+	public boolean equalsString() {
+		return ObjectUtil.equals((Object) string1, (Object) string2);
+	}
+
+	@Benchmark
+	public boolean equalsBigDecimal() {
+		return ObjectUtil.equals((Object) decimal1, (Object) decimal2);
+	}
+
+	@Benchmark
+	public boolean isBlankString() {
+		return ObjectUtil.isBlank(string1);
+	}
+
+	@Benchmark
+	public boolean isBlankSelectValue() {
+		return ObjectUtil.isBlank(selectValue);
+	}
+}
@@ -0,0 +1,25 @@
+package ctp.command;
+
+import org.iplass.mtp.command.Command;
+import org.iplass.mtp.command.RequestContext;
+
+import ctp.dao.DaoMetrics;
+
+/**
+ * Dao計測値参照Command
+ * <p>
+ * 計測値のスナップショットをリクエスト属性{@value #ATTR_SNAPSHOTS}に設定する。<br>
+ * 計測値は全テナント共通のため、初期化は管理者のみ実行できる{@link DaoMetricsResetCommand}で行う。
+ * </p>
+ */
+public class DaoMetricsCommand implements Command {
+
+	/** 属性:計測値のスナップショット */
+	public static final String ATTR_SNAPSHOTS = "snapshots";
+
+	@Override
+	public String execute(RequestContext request) {
+		request.setAttribute(ATTR_SNAPSHOTS, DaoMetrics.getInstance().getSnapshots());
+		return "SUCCESS";
+	}
+}
@@ -0,0 +1,41 @@
+package ctp.command;
+
+import org.iplass.mtp.auth.AuthContext;
+import org.iplass.mtp.auth.User;
+import org.iplass.mtp.command.Command;
+import org.iplass.mtp.command.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.dao.DaoMetrics;
+
+/**
+ * Dao計測値初期化Command
+ * <p>
+ * 計測値のスナップショットをリクエスト属性{@value #ATTR_SNAPSHOTS}に設定した後、計測値を初期化する。<br>
+ * 計測値は全テナント共通のため、管理者ユーザ以外の場合は初期化せずにFAILを返す。
+ * Action(WebApi)の権限も管理者に限定して定義すること。
+ * </p>
+ */
+public class DaoMetricsResetCommand implements Command {
+
+	/** 属性:初期化前の計測値のスナップショット */
+	public static final String ATTR_SNAPSHOTS = "snapshots";
+
+	private static final Logger logger = LoggerFactory.getLogger(DaoMetricsResetCommand.class);
+
+	@Override
+	public String execute(RequestContext request) {
+		AuthContext auth = AuthContext.getCurrentContext();
+		User user = auth != null ? auth.getUser() : null;
+		if (user == null || !user.isAdmin()) {
+			logger.warn("dao metrics reset rejected. user={}", user != null ? user.getOid() : null);
+			return "FAIL";
+		}
+		DaoMetrics metrics = DaoMetrics.getInstance();
+		request.setAttribute(ATTR_SNAPSHOTS, metrics.getSnapshots());
+		metrics.reset();
+		logger.info("dao metrics reset. user={}", user.getOid());
+		return "SUCCESS";
+	}
+}
@@ -0,0 +1,138 @@
+package ctp.command;
+
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import org.iplass.gem.GemConfigService;
+import org.iplass.mtp.command.Command;
+import org.iplass.mtp.command.RequestContext;
+import org.iplass.mtp.spi.ServiceRegistry;
+import org.iplass.mtp.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.service.RadikoExportWriter;
+import ctp.service.RadikoExportWriter.Format;
+import ctp.service.RadikoExportWriter.Target;
+
+/**
+ * 番組、定期予約のエクスポートCommand
+ * <p>
+ * GEMのCSVダウンロード(件数上限csvDownloadMaxCount)と異なり、検索結果をカーソルから直接出力するため件数の上限はない。
+ * ActionのStreamResultで出力するため、{@link RadikoExportWriter}をリクエスト属性{@value #ATTR_STREAM_DATA}に、
+ * Content-Typeを{@value #ATTR_CONTENT_TYPE}に、ファイル名を{@value #ATTR_FILE_NAME}に設定する。
+ * </p>
+ * <ul>
+ * <li>{@value #PARAM_TARGET}:program(番組)またはschedule(定期予約)
+ * <li>{@value #PARAM_FORMAT}:csv(デフォルト)またはndjson
+ * <li>{@value #PARAM_FROM}～{@value #PARAM_TO}(yyyy-MM-dd):番組の開始日の期間(省略時は全件)
+ * <li>{@value #PARAM_CHARSET}:CSVの文字コード(UTF-8またはcsvDownloadCharacterCodeに設定した文字コード)
+ * <li>{@value #PARAM_GZIP}:trueの場合はgzip圧縮する
+ * </ul>
+ * <p>
+ * CSVのダブルクォート出力はcsvDownloadQuoteAllの設定に従う。
+ * </p>
+ */
+public class RadikoExportCommand implements Command {
+
+	private static final Logger logger = LoggerFactory.getLogger(RadikoExportCommand.class);
+
+	/** パラメータ:出力対象 */
+	public static final String PARAM_TARGET = "target";
+	/** パラメータ:出力形式 */
+	public static final String PARAM_FORMAT = "format";
+	/** パラメータ:開始日 */
+	public static final String PARAM_FROM = "from";
+	/** パラメータ:終了日 */
+	public static final String PARAM_TO = "to";
+	/** パラメータ:文字コード */
+	public static final String PARAM_CHARSET = "charset";
+	/** パラメータ:gzip圧縮するか */
+	public static final String PARAM_GZIP = "gzip";
+	/** 属性:出力データ */
+	public static final String ATTR_STREAM_DATA = "streamData";
+	/** 属性:Content-Type */
+	public static final String ATTR_CONTENT_TYPE = "contentType";
+	/** 属性:ファイル名 */
+	public static final String ATTR_FILE_NAME = "fileName";
+
+	/** 常に利用可能な文字コード */
+	private static final String DEFAULT_CHARSET = "UTF-8";
+
+	@Override
+	public String execute(RequestContext request) {
+		Target target;
+		Format format;
+		try {
+			target = Target.valueOf(request.getParam(PARAM_TARGET).toUpperCase());
+			format = StringUtil.isEmpty(request.getParam(PARAM_FORMAT)) ? Format.CSV
+					: Format.valueOf(request.getParam(PARAM_FORMAT).toUpperCase());
+		} catch (IllegalArgumentException | NullPointerException e) {
+			logger.warn("invalid parameter. target={}, format={}", request.getParam(PARAM_TARGET),
+					request.getParam(PARAM_FORMAT));
+			return "FAIL";
+		}
+
+		GemConfigService gemConfig = ServiceRegistry.getRegistry().getService(GemConfigService.class);
+		Charset charset = resolveCharset(request.getParam(PARAM_CHARSET), gemConfig.getCsvDownloadCharacterCode());
+		if (charset == null) {
+			logger.warn("unsupported charset. charset={}", request.getParam(PARAM_CHARSET));
+			return "FAIL";
+		}
+
+		RadikoExportWriter writer = new RadikoExportWriter(target, format);
+		writer.setCharset(charset);
+		writer.setQuoteAll(gemConfig.isCsvDownloadQuoteAll());
+		writer.setGzip(Boolean.parseBoolean(request.getParam(PARAM_GZIP)));
+
+		String fromParam = request.getParam(PARAM_FROM);
+		String toParam = request.getParam(PARAM_TO);
+		if (!StringUtil.isEmpty(fromParam) || !StringUtil.isEmpty(toParam)) {
+			LocalDate from;
+			LocalDate to;
+			try {
+				from = LocalDate.parse(fromParam);
+				to = LocalDate.parse(toParam);
+			} catch (DateTimeParseException | NullPointerException e) {
+				logger.warn("invalid period. from={}, to={}", fromParam, toParam);
+				return "FAIL";
+			}
+			if (from.isAfter(to)) {
+				logger.warn("invalid period. from={}, to={}", from, to);
+				return "FAIL";
+			}
+			writer.setPeriod(Timestamp.valueOf(from.atStartOfDay()),
+					new Timestamp(Timestamp.valueOf(to.plusDays(1).atStartOfDay()).getTime() - 1));
+		}
+
+		request.setAttribute(ATTR_STREAM_DATA, writer);
+		request.setAttribute(ATTR_CONTENT_TYPE, writer.getContentType());
+		request.setAttribute(ATTR_FILE_NAME, writer.getFileName());
+		return "SUCCESS";
+	}
+
+	/**
+	 * 文字コードを解決する
+	 *
+	 * @param name 指定された文字コード(未指定の場合はUTF-8)
+	 * @param additional csvDownloadCharacterCodeに設定された文字コード
+	 * @return 文字コード、利用できない場合はnull
+	 */
+	private static Charset resolveCharset(String name, List<String> additional) {
+		if (StringUtil.isEmpty(name) || DEFAULT_CHARSET.equalsIgnoreCase(name)) {
+			return Charset.forName(DEFAULT_CHARSET);
+		}
+		if (additional == null) {
+			return null;
+		}
+		for (String allowed : additional) {
+			if (allowed.equalsIgnoreCase(name) && Charset.isSupported(allowed)) {
+				return Charset.forName(allowed);
+			}
+		}
+		return null;
+	}
+}
@@ -1,19 +1,104 @@
 package ctp.command;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
 import org.iplass.mtp.command.Command;
 import org.iplass.mtp.command.RequestContext;
+import org.iplass.mtp.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.service.ExpansionTaskManager;
+import ctp.service.ExpansionTaskProgress;
+import ctp.service.ScheduleExpansionResult;
+import ctp.service.ScheduleExpansionService;
 
+/**
+ * 定期予約から番組を登録するCommand
+ * <p>
+ * パラメータ{@value #PARAM_FROM}～{@value #PARAM_TO}(yyyy-MM-dd)の期間で定期予約を番組に展開する。<br>
+ * 登録済みの番組は重複登録しないため、同じ期間で再実行できる。
+ * 展開結果をリクエスト属性{@value #ATTR_RESULT}に設定する。
+ * </p>
+ * <p>
+ * パラメータ{@value #PARAM_ASYNC}にtrueを指定した場合はバックグラウンドのタスクとして登録し、
+ * タスクIDをリクエスト属性{@value #ATTR_TASK_ID}に設定してすぐに返す。
+ * 進捗は{@link ScheduleExpansionStatusCommand}で参照する。
+ * </p>
+ */
 public class RadikoScheduleToProgramCommand implements Command {
-    @Override
-    public String execute(RequestContext request) {
-        String paramX = request.getParam("x");
-
-        boolean success = true;
-
-        if (success) {
-            return "SUCCESS";
-        } else {
-            return "FAIL";
-        }
-    }
-}
\ No newline at end of file
+
+	private static final Logger logger = LoggerFactory.getLogger(RadikoScheduleToProgramCommand.class);
+
+	/** パラメータ:開始日 */
+	public static final String PARAM_FROM = "from";
+	/** パラメータ:終了日 */
+	public static final String PARAM_TO = "to";
+	/** パラメータ:並列数 */
+	public static final String PARAM_PARALLELISM = "parallelism";
+	/** パラメータ:バックグラウンドで実行するか */
+	public static final String PARAM_ASYNC = "async";
+	/** パラメータ:チャンクの日数(バックグラウンド実行時) */
+	public static final String PARAM_CHUNK_DAYS = "chunkDays";
+	/** 属性:展開結果 */
+	public static final String ATTR_RESULT = "result";
+	/** 属性:タスクID */
+	public static final String ATTR_TASK_ID = "taskId";
+
+	@Override
+	public String execute(RequestContext request) {
+		LocalDate from;
+		LocalDate to;
+		try {
+			from = LocalDate.parse(request.getParam(PARAM_FROM));
+			to = LocalDate.parse(request.getParam(PARAM_TO));
+		} catch (DateTimeParseException | NullPointerException e) {
+			logger.warn("invalid period. from={}, to={}", request.getParam(PARAM_FROM), request.getParam(PARAM_TO));
+			return "FAIL";
+		}
+		if (from.isAfter(to)) {
+			logger.warn("invalid period. from={}, to={}", from, to);
+			return "FAIL";
+		}
+
+		int parallelism;
+		int chunkDays;
+		try {
+			parallelism = intParam(request, PARAM_PARALLELISM, ScheduleExpansionService.DEFAULT_PARALLELISM);
+			chunkDays = intParam(request, PARAM_CHUNK_DAYS, ExpansionTaskManager.DEFAULT_CHUNK_DAYS);
+		} catch (NumberFormatException e) {
+			logger.warn("invalid parameter. parallelism={}, chunkDays={}", request.getParam(PARAM_PARALLELISM),
+					request.getParam(PARAM_CHUNK_DAYS));
+			return "FAIL";
+		}
+		if (parallelism <= 0 || chunkDays <= 0) {
+			logger.warn("invalid parameter. parallelism={}, chunkDays={}", parallelism, chunkDays);
+			return "FAIL";
+		}
+
+		if (Boolean.parseBoolean(request.getParam(PARAM_ASYNC))) {
+			ExpansionTaskProgress progress = ExpansionTaskManager.getInstance().submit(from, to, chunkDays, parallelism);
+			logger.info("schedule expansion submitted. {}", progress);
+			request.setAttribute(ATTR_TASK_ID, progress.getTaskId());
+			return "SUCCESS";
+		}
+
+		ScheduleExpansionService service = new ScheduleExpansionService();
+		service.setParallelism(parallelism);
+		ScheduleExpansionResult result = service.expand(from, to);
+		logger.info("schedule expanded. from={}, to={}, {}", from, to, result);
+		request.setAttribute(ATTR_RESULT, result);
+
+		if (result.isSuccess()) {
+			return "SUCCESS";
+		} else {
+			return "FAIL";
+		}
+	}
+
+	private static int intParam(RequestContext request, String name, int defaultValue) {
+		String value = request.getParam(name);
+		return StringUtil.isNotBlank(value) ? Integer.parseInt(value) : defaultValue;
+	}
+}
@@ -0,0 +1,54 @@
+package ctp.command;
+
+import org.iplass.mtp.command.Command;
+import org.iplass.mtp.command.RequestContext;
+import org.iplass.mtp.util.StringUtil;
+
+import ctp.service.ExpansionTaskManager;
+import ctp.service.ExpansionTaskProgress;
+
+/**
+ * 定期予約展開タスクの進捗参照Command
+ * <p>
+ * パラメータ{@value #PARAM_TASK_ID}のタスクの進捗をリクエスト属性{@value #ATTR_PROGRESS}に設定する。<br>
+ * パラメータ{@value #PARAM_RESUME}にtrueを指定した場合は、タスクIDのタスクを再開する。
+ * タスクIDを指定しない場合は、現在のテナントの未完了の全てのタスクを再開し、再開したタスク数を
+ * リクエスト属性{@value #ATTR_RESUMED_COUNT}に設定する。
+ * </p>
+ */
+public class ScheduleExpansionStatusCommand implements Command {
+
+	/** パラメータ:タスクID */
+	public static final String PARAM_TASK_ID = "taskId";
+	/** パラメータ:再開するか */
+	public static final String PARAM_RESUME = "resume";
+	/** 属性:進捗 */
+	public static final String ATTR_PROGRESS = "progress";
+	/** 属性:再開したタスク数 */
+	public static final String ATTR_RESUMED_COUNT = "resumedCount";
+
+	@Override
+	public String execute(RequestContext request) {
+		ExpansionTaskManager manager = ExpansionTaskManager.getInstance();
+		String taskId = request.getParam(PARAM_TASK_ID);
+		boolean resume = Boolean.parseBoolean(request.getParam(PARAM_RESUME));
+
+		if (StringUtil.isBlank(taskId)) {
+			if (!resume) {
+				return "FAIL";
+			}
+			request.setAttribute(ATTR_RESUMED_COUNT, manager.resumeIncomplete());
+			return "SUCCESS";
+		}
+
+		ExpansionTaskProgress progress = resume ? manager.resume(taskId) : null;
+		if (progress == null) {
+			progress = manager.getProgress(taskId);
+		}
+		if (progress == null) {
+			return "FAIL";
+		}
+		request.setAttribute(ATTR_PROGRESS, progress);
+		return "SUCCESS";
+	}
+}
@@ -0,0 +1,128 @@
+package ctp.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一括処理結果
+ * <p>
+ * チャンク単位で処理した件数と、失敗したチャンクの情報を保持する。<br>
+ * 失敗したチャンクのみロールバックされ、他のチャンクの処理結果はコミットされている。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class BulkResult {
+
+	/** 成功件数 */
+	private int successCount;
+	/** 失敗チャンク */
+	private final List<ChunkFailure> failures = new ArrayList<>();
+
+	/**
+	 * 成功件数を加算します。
+	 *
+	 * @param count 成功件数
+	 */
+	void addSuccess(int count) {
+		successCount += count;
+	}
+
+	/**
+	 * 失敗チャンクを追加します。
+	 *
+	 * @param fromIndex チャンクの開始index(この値を含む)
+	 * @param toIndex チャンクの終了index(この値を含まない)
+	 * @param cause 失敗原因
+	 */
+	void addFailure(int fromIndex, int toIndex, RuntimeException cause) {
+		failures.add(new ChunkFailure(fromIndex, toIndex, cause));
+	}
+
+	/**
+	 * 全チャンクが成功したかを返します。
+	 *
+	 * @return 全件成功=true
+	 */
+	public boolean isSuccess() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * 成功件数を返します。
+	 *
+	 * @return 成功件数
+	 */
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	/**
+	 * 失敗件数を返します。
+	 *
+	 * @return 失敗したチャンクに含まれる件数
+	 */
+	public int getFailureCount() {
+		int count = 0;
+		for (ChunkFailure failure : failures) {
+			count += failure.getToIndex() - failure.getFromIndex();
+		}
+		return count;
+	}
+
+	/**
+	 * 失敗チャンクを返します。
+	 *
+	 * @return 失敗チャンク
+	 */
+	public List<ChunkFailure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * 失敗チャンク情報
+	 */
+	public static class ChunkFailure {
+
+		/** 開始index */
+		private final int fromIndex;
+		/** 終了index */
+		private final int toIndex;
+		/** 失敗原因 */
+		private final RuntimeException cause;
+
+		ChunkFailure(int fromIndex, int toIndex, RuntimeException cause) {
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+			this.cause = cause;
+		}
+
+		/**
+		 * チャンクの開始indexを返します。
+		 *
+		 * @return 入力Listにおける開始index(この値を含む)
+		 */
+		public int getFromIndex() {
+			return fromIndex;
+		}
+
+		/**
+		 * チャンクの終了indexを返します。
+		 *
+		 * @return 入力Listにおける終了index(この値を含まない)
+		 */
+		public int getToIndex() {
+			return toIndex;
+		}
+
+		/**
+		 * 失敗原因を返します。
+		 *
+		 * @return 失敗原因
+		 */
+		public RuntimeException getCause() {
+			return cause;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package ctp.dao;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import org.iplass.mtp.entity.ValidateResult;
+
+/**
+ * 一括バリデーションチェック結果
+ * <p>
+ * チェック済みのEntityの入力Listにおけるindexと、エラーのあったEntityのチェック結果のみを保持する。
+ * エラーのないEntityの結果は保持しない。
+ * エラー件数の上限でチェックを打ち切った場合、未チェックのEntityは{@link #isValidated(int)}がfalseとなる。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class BulkValidateResult {
+
+	/** 入力件数 */
+	private final int totalCount;
+	/** チェック済みのindex */
+	private final BitSet validated;
+	/** エラーのあったindex(昇順) */
+	private final int[] failureIndexes;
+	/** エラーのあったチェック結果(failureIndexesと同じ順) */
+	private final ValidateResult[] failureResults;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param totalCount 入力件数
+	 * @param validated チェック済みのindex
+	 * @param failures index(昇順) -> チェック結果
+	 */
+	BulkValidateResult(int totalCount, BitSet validated, Map<Integer, ValidateResult> failures) {
+		this.totalCount = totalCount;
+		this.validated = (BitSet) validated.clone();
+		this.failureIndexes = new int[failures.size()];
+		this.failureResults = new ValidateResult[failures.size()];
+		int i = 0;
+		for (Map.Entry<Integer, ValidateResult> entry : failures.entrySet()) {
+			failureIndexes[i] = entry.getKey();
+			failureResults[i] = entry.getValue();
+			i++;
+		}
+	}
+
+	/**
+	 * 全件チェックし、エラーがなかったかを返します。
+	 *
+	 * @return 全件チェック済みかつエラーなし=true
+	 */
+	public boolean isSuccess() {
+		return failureIndexes.length == 0 && getValidatedCount() == totalCount;
+	}
+
+	/**
+	 * エラー件数の上限に達してチェックを打ち切ったかを返します。
+	 *
+	 * @return 打ち切った=true
+	 */
+	public boolean isStopped() {
+		return getValidatedCount() < totalCount;
+	}
+
+	/**
+	 * チェック済み件数を返します。
+	 *
+	 * @return チェック済み件数
+	 */
+	public int getValidatedCount() {
+		return validated.cardinality();
+	}
+
+	/**
+	 * 指定indexのEntityをチェックしたかを返します。
+	 *
+	 * @param index 入力Listにおけるindex
+	 * @return チェック済み=true
+	 */
+	public boolean isValidated(int index) {
+		return index >= 0 && validated.get(index);
+	}
+
+	/**
+	 * チェック済みのindexを返します。
+	 *
+	 * @return 入力Listにおけるindex(昇順)
+	 */
+	public int[] getValidatedIndexes() {
+		return validated.stream().toArray();
+	}
+
+	/**
+	 * エラー件数を返します。
+	 *
+	 * @return エラー件数
+	 */
+	public int getFailureCount() {
+		return failureIndexes.length;
+	}
+
+	/**
+	 * エラーのあったindexを返します。
+	 *
+	 * @return 入力Listにおけるindex(昇順)
+	 */
+	public int[] getFailureIndexes() {
+		return failureIndexes.clone();
+	}
+
+	/**
+	 * 指定indexのEntityにエラーがあったかを返します。
+	 * <p>
+	 * 未チェックのEntityもfalseとなるため、エラーがないことの判定には{@link #isValidated(int)}を併用する。
+	 * </p>
+	 *
+	 * @param index 入力Listにおけるindex
+	 * @return エラーあり=true
+	 */
+	public boolean hasError(int index) {
+		return Arrays.binarySearch(failureIndexes, index) >= 0;
+	}
+
+	/**
+	 * 指定indexのEntityのチェック結果を返します。
+	 * <p>
+	 * エラーがない場合と未チェックの場合はいずれもnullとなるため、{@link #isValidated(int)}で区別する。
+	 * </p>
+	 *
+	 * @param index 入力Listにおけるindex
+	 * @return チェック結果、エラーがない場合または未チェックの場合はnull
+	 */
+	public ValidateResult getResult(int index) {
+		int position = Arrays.binarySearch(failureIndexes, index);
+		return position >= 0 ? failureResults[position] : null;
+	}
+}
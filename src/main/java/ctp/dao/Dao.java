@@ -1,10 +1,33 @@
 package ctp.dao;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.iplass.mtp.ManagerLocator;
 import org.iplass.mtp.entity.DeleteOption;
 import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.EntityConcurrentUpdateException;
 import org.iplass.mtp.entity.EntityManager;
 import org.iplass.mtp.entity.InsertOption;
 import org.iplass.mtp.entity.LoadOption;
@@ -16,10 +39,23 @@ import org.iplass.mtp.entity.UpdateOption;
 import org.iplass.mtp.entity.ValidateResult;
 import org.iplass.mtp.entity.query.Query;
 import org.iplass.mtp.entity.query.Where;
+import org.iplass.mtp.entity.query.condition.Condition;
+import org.iplass.mtp.entity.query.condition.expr.And;
+import org.iplass.mtp.entity.query.condition.predicate.Between;
+import org.iplass.mtp.entity.query.condition.predicate.GreaterEqual;
+import org.iplass.mtp.entity.query.condition.predicate.In;
+import org.iplass.mtp.entity.query.condition.predicate.Lesser;
+import org.iplass.mtp.entity.query.hint.FetchSizeHint;
+import org.iplass.mtp.transaction.Transaction;
 import org.iplass.mtp.util.CollectionUtil;
 import org.iplass.mtp.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import ctp.util.ContextPropagation;
 import ctp.util.ObjectUtil;
+import ctp.util.SharedExecutors;
+import ctp.util.TransactionHooks;
 
 //import jp.co.isid.etp.util.ObjectUtil;
 
@@ -42,9 +78,31 @@ public abstract class Dao<E extends Entity> {
 
   /** ドット */
   protected static final String DOT = ".";
+  /** ストリーミング検索時のデフォルトフェッチサイズ */
+  protected static final int DEFAULT_FETCH_SIZE = 500;
+  /** 一括処理時のデフォルトチャンクサイズ */
+  protected static final int DEFAULT_BULK_CHUNK_SIZE = 200;
+  /** IN句に指定する値のデフォルト最大件数(Oracleの上限に合わせる) */
+  protected static final int DEFAULT_IN_CLAUSE_CHUNK_SIZE = 1000;
+  /** 並列検索時のデフォルト分割数 */
+  protected static final int DEFAULT_SEARCH_PARALLELISM = 4;
+  /** 並列検索用スレッド数を指定するシステムプロパティ */
+  public static final String PARALLEL_SEARCH_THREADS_PROPERTY = "ctp.dao.parallelSearchThreads";
+  /** 一括バリデーションチェック用スレッド数を指定するシステムプロパティ */
+  public static final String VALIDATION_THREADS_PROPERTY = "ctp.dao.validationThreads";
+  /** 一括バリデーションチェック時に1スレッドで連続してチェックする件数 */
+  private static final int VALIDATION_SLICE_SIZE = 50;
+  /** 楽観ロックによる更新のデフォルト最大試行回数 */
+  protected static final int DEFAULT_UPDATE_ATTEMPTS = 5;
+  /** 楽観ロックによる更新のリトライ時の待機時間の初期値(ミリ秒) */
+  private static final long UPDATE_BACKOFF_BASE_MILLIS = 10;
+  /** 楽観ロックによる更新のリトライ時の待機時間の上限(ミリ秒) */
+  private static final long UPDATE_BACKOFF_MAX_MILLIS = 1000;
+
+  private static final Logger logger = LoggerFactory.getLogger(Dao.class);
 
   /** EntityManager */
-  protected final EntityManager em = ManagerLocator.getInstance().getManager(EntityManager.class);
+  protected final EntityManager em;
   /** Entity定義名 */
   protected final String defName;
 
@@ -62,6 +120,27 @@ public abstract class Dao<E extends Entity> {
       purgeDelOptionLogical = new DeleteOption();
       purgeDelOptionLogical.setPurge(false);
   }
+  /** バリデーションチェック、リスナーを実行しないinsert時のOption */
+  private static final InsertOption forceInsOption; static {
+      forceInsOption = new InsertOption();
+      forceInsOption.setNotifyListeners(false);
+      forceInsOption.setWithValidation(false);
+  }
+
+  /** 複数件検索時に多重度複数の参照をまとめて1Entityとして返すOption */
+  private static final SearchOption structuredSearchOption; static {
+      structuredSearchOption = new SearchOption();
+      structuredSearchOption.setReturnStructuredEntity(true);
+  }
+
+  /** 一括処理時のチャンクサイズ */
+  private int bulkChunkSize = DEFAULT_BULK_CHUNK_SIZE;
+  /** IN句に指定する値の最大件数 */
+  private int inClauseChunkSize = DEFAULT_IN_CLAUSE_CHUNK_SIZE;
+  /** 計測値({@link DaoOperation}のordinal順) */
+  private final OperationStats[] metrics;
+  /** 並列検索時の分割数 */
+  private int searchParallelism = DEFAULT_SEARCH_PARALLELISM;
 
     /**
      * コンストラクタ
@@ -72,7 +151,23 @@ public abstract class Dao<E extends Entity> {
      * @param defName EntityのdefinitionName
      */
     protected Dao(String defName) {
+        this(defName, ManagerLocator.getInstance().getManager(EntityManager.class));
+    }
+
+    /**
+     * コンストラクタ
+     * <p>
+     * EntityのdefinitionNameと利用するEntityManagerを引数とする。<br>
+     * ベンチマーク、テストなどでDB接続を伴わないEntityManagerを利用する場合に使用する。
+     * </p>
+     *
+     * @param defName EntityのdefinitionName
+     * @param em EntityManager
+     */
+    protected Dao(String defName, EntityManager em) {
         this.defName = defName;
+        this.em = em;
+        this.metrics = DaoMetrics.statsFor(defName);
     }
 
     /**
@@ -82,7 +177,14 @@ public abstract class Dao<E extends Entity> {
      * @return oid insertしたEntityのoid
      */
     public String insert(E entity) {
-        return em.insert(entity);
+        long start = System.nanoTime();
+        try {
+            String oid = em.insert(entity);
+            fireInserted(entity);
+            return oid;
+        } finally {
+            record(DaoOperation.INSERT, start, 1);
+        }
     }
 
     /**
@@ -95,10 +197,61 @@ public abstract class Dao<E extends Entity> {
      * @return oid insertしたEntityのoid
      */
     public String forceInsert(E entity) {
-        InsertOption option = new InsertOption();
-        option.setNotifyListeners(false);
-        option.setWithValidation(false);
-        return em.insert(entity, option);
+        long start = System.nanoTime();
+        try {
+            String oid = em.insert(entity, forceInsOption);
+            fireInserted(entity);
+            return oid;
+        } finally {
+            record(DaoOperation.INSERT, start, 1);
+        }
+    }
+
+    /**
+     * 一括処理時のチャンクサイズを設定する
+     * <p>
+     * {@link #insertAll(List, boolean)}、{@link #updateAll(List, UpdateOption)}、{@link #deleteAll(List, DeleteOption)}は
+     * チャンク単位でトランザクションを分けて処理する。
+     * </p>
+     *
+     * @param bulkChunkSize チャンクサイズ
+     */
+    public void setBulkChunkSize(int bulkChunkSize) {
+        if (bulkChunkSize <= 0) {
+            throw new IllegalArgumentException("bulkChunkSize must be positive: " + bulkChunkSize);
+        }
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    /**
+     * 一括Insert処理
+     *
+     * @param entities insertしたいEntityデータ
+     * @return 処理結果
+     * @see #insertAll(List, boolean)
+     */
+    public BulkResult insertAll(List<E> entities) {
+        return insertAll(entities, false);
+    }
+
+    /**
+     * 一括Insert処理
+     * <p>
+     * チャンクサイズ毎に新規トランザクションで処理する。
+     * 失敗したチャンクのみロールバックし、残りのチャンクは継続して処理する。
+     * </p>
+     *
+     * @param entities insertしたいEntityデータ
+     * @param force trueの場合{@link #forceInsert(Entity)}と同様にバリデーションチェック、リスナーを実行しない
+     * @return 処理結果
+     */
+    public BulkResult insertAll(List<E> entities, boolean force) {
+        if (force) {
+            return executeChunked(DaoOperation.BULK_INSERT, entities, entity -> em.insert(entity, forceInsOption),
+                    (entity, previous) -> fireInserted(entity), false);
+        }
+        return executeChunked(DaoOperation.BULK_INSERT, entities, entity -> em.insert(entity),
+                (entity, previous) -> fireInserted(entity), false);
     }
 
     /**
@@ -109,6 +262,9 @@ public abstract class Dao<E extends Entity> {
      * <p>
      * referenceの値も取得可能(oidなど)、不要な場合は{@link #loadNonRef(String)}を利用。
      * </p>
+     * <p>
+     * {@link EntityCache}が有効な場合はキャッシュから取得する。
+     * </p>
      *
      * @param oid Entityのoid
      * @param op Entityのload時のオプション
@@ -119,7 +275,28 @@ public abstract class Dao<E extends Entity> {
             return null;
         }
 
-        return ObjectUtil.cast(em.load(oid, this.defName, op));
+        long start = System.nanoTime();
+        E entity = null;
+        try {
+            EntityCache cache = EntityCache.get(this.defName);
+            if (cache == null) {
+                entity = ObjectUtil.cast(em.load(oid, this.defName, op));
+                return entity;
+            }
+
+            entity = cache.get(oid, op);
+            if (entity == null) {
+                // 読込中に破棄された場合は格納しない
+                long token = cache.token(oid);
+                entity = ObjectUtil.cast(em.load(oid, this.defName, op));
+                if (entity != null) {
+                    cache.put(entity, op, token);
+                }
+            }
+            return entity;
+        } finally {
+            record(DaoOperation.LOAD, start, entity != null ? 1 : 0);
+        }
     }
 
     /**
@@ -156,6 +333,82 @@ public abstract class Dao<E extends Entity> {
 
     }
 
+    /**
+     * IN句に指定する値の最大件数を設定する
+     * <p>
+     * 利用するRDBのIN句、バインド変数の上限に合わせて指定する。
+     * </p>
+     *
+     * @param inClauseChunkSize IN句に指定する値の最大件数
+     */
+    public void setInClauseChunkSize(int inClauseChunkSize) {
+        if (inClauseChunkSize <= 0) {
+            throw new IllegalArgumentException("inClauseChunkSize must be positive: " + inClauseChunkSize);
+        }
+        this.inClauseChunkSize = inClauseChunkSize;
+    }
+
+    /**
+     * Entity情報一括取得
+     * <p>
+     * referenceの値も取得する。
+     * </p>
+     *
+     * @param oids Entityのoid
+     * @return oidをキーとしたEntity
+     * @see #loadAll(Collection, LoadOption)
+     */
+    public Map<String, E> loadAll(Collection<String> oids) {
+        return loadAll(oids, loadRefOption);
+    }
+
+    /**
+     * Entity情報一括取得
+     * <p>
+     * 重複、空白を除いたoidをIN句の最大件数毎に分割し、分割単位で1回の検索を行う。
+     * </p>
+     * <p>
+     * 戻り値は引数のoidの順序を保持する。存在しないoidは含まれない。
+     * </p>
+     *
+     * @param oids Entityのoid
+     * @param op Entityのload時のオプション(referenceの取得有無のみ参照)
+     * @return oidをキーとしたEntity
+     */
+    public Map<String, E> loadAll(Collection<String> oids, LoadOption op) {
+        Map<String, E> result = new LinkedHashMap<>();
+        if (CollectionUtil.isEmpty(oids)) {
+            return result;
+        }
+
+        LinkedHashSet<String> distinct = new LinkedHashSet<>();
+        for (String oid : oids) {
+            if (StringUtil.isNotBlank(oid) && distinct.add(oid)) {
+                // 引数の順序を保持するため先に枠を確保する
+                result.put(oid, null);
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<String> targets = new ArrayList<>(distinct);
+            for (int from = 0; from < targets.size(); from += inClauseChunkSize) {
+                List<String> chunk = targets.subList(from, Math.min(from + inClauseChunkSize, targets.size()));
+                Query query = new Query()
+                        .selectAll(this.defName, op.isWithReference(), op.isWithMappedByReference())
+                        .where(new In(Entity.OID, chunk.toArray()));
+                for (E entity : em.<E> searchEntity(query.from(this.defName), structuredSearchOption).getList()) {
+                    result.put(entity.getOid(), entity);
+                }
+            }
+
+            result.values().removeIf(Objects::isNull);
+            return result;
+        } finally {
+            record(DaoOperation.LOAD_ALL, start, result.size());
+        }
+    }
+
     /**
      * データの検索
      * <p>
@@ -170,7 +423,14 @@ public abstract class Dao<E extends Entity> {
      * @return list 検索結果list&lt;E&gt;
      */
     protected List<E> search(Query query) {
-        return em.<E> searchEntity(query.from(this.defName)).getList();
+        long start = System.nanoTime();
+        List<E> list = null;
+        try {
+            list = em.<E> searchEntity(query.from(this.defName)).getList();
+            return list;
+        } finally {
+            record(DaoOperation.SEARCH, start, list != null ? list.size() : 0);
+        }
     }
 
     /**
@@ -187,7 +447,38 @@ public abstract class Dao<E extends Entity> {
      * @return list 検索結果list&lt;E&gt;
      */
     protected List<E> searchSelectAll(Query query) {
-        return em.<E> searchEntity(query.selectAll(this.defName, false, false)).getList();
+        long start = System.nanoTime();
+        List<E> list = null;
+        try {
+            list = em.<E> searchEntity(query.selectAll(this.defName, false, false)).getList();
+            return list;
+        } finally {
+            record(DaoOperation.SEARCH, start, list != null ? list.size() : 0);
+        }
+    }
+
+    /**
+     * データの検索(ストリーミング)
+     * <p>
+     * {@link #searchSelectAll(Query)}と同様の検索を行うが、結果をListに保持せず1件ずつcallbackに渡す。<br>
+     * callbackがfalseを返した時点で検索を打ち切る。
+     * </p>
+     *
+     * @param query 検索条件
+     * @param fetchSize フェッチサイズ(0以下の場合はJDBCドライバのデフォルト)
+     * @param callback 1件ごとの処理
+     */
+    protected void searchSelectAll(Query query, int fetchSize, Predicate<E> callback) {
+        long start = System.nanoTime();
+        long[] rows = new long[1];
+        try {
+            em.<E> searchEntity(withFetchSize(query.selectAll(this.defName, false, false), fetchSize), (E entity) -> {
+                rows[0]++;
+                return callback.test(entity);
+            });
+        } finally {
+            record(DaoOperation.SEARCH_STREAM, start, rows[0]);
+        }
     }
 
     /**
@@ -243,11 +534,19 @@ public abstract class Dao<E extends Entity> {
      * @return count 検索条件と一致するEntity件数
      */
     public int count(Query query) {
-        return em.count(query.from(this.defName));
+        long start = System.nanoTime();
+        try {
+            return em.count(query.from(this.defName));
+        } finally {
+            record(DaoOperation.COUNT, start, 0);
+        }
     }
 
     /**
      * Update処理
+     * <p>
+     * 更新前の状態を必要とするリスナー({@link DaoWriteListener#requiresPrevious()})がある場合は、更新前にロードして通知する。
+     * </p>
      *
      * @param entity Entity
      * @param option updateOption
@@ -258,7 +557,292 @@ public abstract class Dao<E extends Entity> {
         return;
       }
 
-       em.update(entity, option);
+       update(entity, option, loadPrevious(entity));
+    }
+
+    /**
+     * Update処理(更新前の状態が分かっている場合)
+     *
+     * @param entity Entity
+     * @param option updateOption
+     * @param previous 更新前の状態(リスナーに通知する)、不要な場合はnull
+     */
+    private void update(E entity, UpdateOption option, E previous) {
+       long start = System.nanoTime();
+       try {
+           em.update(entity, option);
+           fireUpdated(entity, option.getUpdateProperties(), previous);
+       } finally {
+           record(DaoOperation.UPDATE, start, 1);
+       }
+       invalidateCache(entity);
+    }
+
+    /**
+     * 変更プロパティの記録を開始する
+     * <p>
+     * {@link #trackedProperties()}の現在の値を記録する。記録後にsetterで変更したプロパティを{@link #updateDirty(DirtyTracker)}で更新する。
+     * </p>
+     *
+     * @param entity Entity(load、検索で取得したもの)
+     * @return 変更プロパティの記録
+     */
+    public DirtyTracker<E> track(E entity) {
+        String[] properties = trackedProperties();
+        if (properties.length == 0) {
+            throw new IllegalStateException(this.defName + " does not track dirty properties.");
+        }
+        return new DirtyTracker<>(entity, Arrays.asList(properties));
+    }
+
+    /**
+     * 変更を記録するプロパティ
+     * <p>
+     * 変更プロパティの記録を利用するDaoで対象Entityの更新可能なプロパティを返す。
+     * </p>
+     *
+     * @return プロパティ名
+     */
+    protected String[] trackedProperties() {
+        return new String[0];
+    }
+
+    /**
+     * 変更プロパティのUpdate処理
+     * <p>
+     * {@link #track(Entity)}以降に変更されたプロパティのみを更新対象とする。
+     * 変更がない場合は何もしない。更新後は現在の値を記録し直す。
+     * </p>
+     *
+     * @param tracker 変更プロパティの記録
+     * @return 更新した場合true
+     */
+    public boolean updateDirty(DirtyTracker<E> tracker) {
+        List<String> dirtyProperties = tracker.getDirtyProperties();
+        if (dirtyProperties.isEmpty()) {
+            return false;
+        }
+
+        UpdateOption option = new UpdateOption(false);
+        option.setUpdateProperties(dirtyProperties);
+        update(tracker.get(), option, requiresPrevious() ? tracker.previous() : null);
+        tracker.reset();
+        return true;
+    }
+
+    /**
+     * 一括Update処理
+     * <p>
+     * {@link #update(Entity, UpdateOption)}と同様に更新プロパティの指定がない場合は何もしない。<br>
+     * チャンクサイズ毎に新規トランザクションで処理する。
+     * 失敗したチャンクのみロールバックし、残りのチャンクは継続して処理する。
+     * </p>
+     *
+     * @param entities 更新対象Entity
+     * @param option updateOption
+     * @return 処理結果
+     */
+    public BulkResult updateAll(List<E> entities, UpdateOption option) {
+        if (ObjectUtil.isBlank(option) || ObjectUtil.isBlank(option.getUpdateProperties()) || option.getUpdateProperties().isEmpty()) {
+            return new BulkResult();
+        }
+        return executeChunked(DaoOperation.BULK_UPDATE, entities, entity -> em.update(entity, option),
+                (entity, previous) -> fireUpdated(entity, option.getUpdateProperties(), previous), true);
+    }
+
+    /**
+     * 一括物理削除
+     *
+     * @param entities 削除対象Entity
+     * @return 処理結果
+     * @see #deleteAll(List, DeleteOption)
+     */
+    public BulkResult deleteAll(List<E> entities) {
+        return deleteAll(entities, purgeDelOption);
+    }
+
+    /**
+     * 一括削除処理
+     * <p>
+     * チャンクサイズ毎に新規トランザクションで処理する。
+     * 失敗したチャンクのみロールバックし、残りのチャンクは継続して処理する。
+     * </p>
+     *
+     * @param entities 削除対象Entity
+     * @param deleteOption 削除オプション
+     * @return 処理結果
+     */
+    public BulkResult deleteAll(List<E> entities, DeleteOption deleteOption) {
+        return executeChunked(DaoOperation.BULK_DELETE, entities, entity -> em.delete(entity, deleteOption),
+                this::fireDeleted, true);
+    }
+
+    /**
+     * チャンク単位での一括処理
+     *
+     * @param operation 計測上の操作種別
+     * @param entities 処理対象Entity
+     * @param action 1件ごとの処理
+     * @param committed 1件ごとの通知処理(チャンクのトランザクション内で呼び出す、Entityと更新前の状態を受け取る)
+     * @param invalidate チャンク処理後に{@link EntityCache}から破棄するか(更新、削除の場合true、更新前の状態もロードする)
+     * @return 処理結果
+     */
+    private BulkResult executeChunked(DaoOperation operation, List<E> entities, Consumer<E> action,
+            BiConsumer<E, E> committed, boolean invalidate) {
+        BulkResult result = new BulkResult();
+        if (CollectionUtil.isEmpty(entities)) {
+            return result;
+        }
+        long start = System.nanoTime();
+        for (int from = 0; from < entities.size(); from += bulkChunkSize) {
+            int to = Math.min(from + bulkChunkSize, entities.size());
+            List<E> chunk = entities.subList(from, to);
+            try {
+                Transaction.requiresNew(() -> {
+                    Map<String, E> previous = invalidate ? loadPrevious(chunk) : Collections.emptyMap();
+                    for (E entity : chunk) {
+                        action.accept(entity);
+                    }
+                    // チャンクのトランザクションのコミット後に通知する
+                    for (E entity : chunk) {
+                        committed.accept(entity, previous.get(entity.getOid()));
+                    }
+                });
+                result.addSuccess(chunk.size());
+            } catch (RuntimeException e) {
+                result.addFailure(from, to, e);
+            } finally {
+                if (invalidate) {
+                    for (E entity : chunk) {
+                        invalidateCache(entity);
+                    }
+                }
+            }
+        }
+        record(operation, start, result.getSuccessCount());
+        return result;
+    }
+
+    /**
+     * 登録をリスナーに通知する
+     *
+     * @param entity 登録したEntity
+     */
+    private void fireInserted(E entity) {
+        fireListeners(listener -> listener.inserted(entity));
+    }
+
+    /**
+     * 更新をリスナーに通知する
+     *
+     * @param entity 更新したEntity
+     * @param updateProperties 更新したプロパティ
+     * @param previous 更新前の状態(不明な場合はnull)
+     */
+    private void fireUpdated(E entity, List<String> updateProperties, E previous) {
+        fireListeners(listener -> listener.updated(entity, updateProperties, previous));
+    }
+
+    /**
+     * 削除をリスナーに通知する
+     *
+     * @param entity 削除したEntity
+     * @param previous 削除前の状態(不明な場合はnull)
+     */
+    private void fireDeleted(E entity, E previous) {
+        fireListeners(listener -> listener.deleted(entity, previous));
+    }
+
+    /**
+     * 更新前の状態を必要とするリスナーがあるかを返します。
+     *
+     * @return 現在のテナントに{@link DaoWriteListener#requiresPrevious()}がtrueのリスナーがある場合true
+     */
+    private boolean requiresPrevious() {
+        for (DaoWriteListener<? extends Entity> listener : DaoWriteListeners.listenersFor(this.defName)) {
+            if (listener.requiresPrevious()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 更新、削除前の状態をロードする
+     * <p>
+     * 必要とするリスナーがない場合はロードしない。referenceの値も取得する。
+     * </p>
+     *
+     * @param entity 更新、削除するEntity
+     * @return 更新前の状態、不要な場合または存在しない場合はnull
+     */
+    private E loadPrevious(E entity) {
+        if (entity == null || entity.getOid() == null || !requiresPrevious()) {
+            return null;
+        }
+        return ObjectUtil.cast(em.load(entity.getOid(), this.defName, loadRefOption));
+    }
+
+    /**
+     * 一括更新、削除前の状態をロードする
+     *
+     * @param entities 更新、削除するEntity
+     * @return oid -> 更新前の状態、不要な場合は空
+     */
+    private Map<String, E> loadPrevious(List<E> entities) {
+        if (!requiresPrevious()) {
+            return Collections.emptyMap();
+        }
+        List<String> oids = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            oids.add(entity.getOid());
+        }
+        return loadAll(oids);
+    }
+
+    /**
+     * 登録されたリスナーに通知する
+     * <p>
+     * 現在のテナントのリスナーに、トランザクションのコミット後に通知する。
+     * ロールバックされた場合は通知しない。
+     * リスナーで発生した例外は更新処理に影響させない。
+     * </p>
+     *
+     * @param event 通知処理
+     */
+    @SuppressWarnings("unchecked")
+    private void fireListeners(Consumer<DaoWriteListener<E>> event) {
+        List<DaoWriteListener<? extends Entity>> listeners = DaoWriteListeners.listenersFor(this.defName);
+        if (listeners.isEmpty()) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> {
+            for (DaoWriteListener<? extends Entity> listener : listeners) {
+                try {
+                    event.accept((DaoWriteListener<E>) listener);
+                } catch (RuntimeException e) {
+                    logger.warn("write listener failed. defName=" + this.defName, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@link EntityCache}から該当Entityを破棄する
+     * <p>
+     * 即時に破棄し、トランザクション中の場合はコミット後にも破棄する。
+     * コミット前に他スレッドが読み込んだ更新前のEntityはコミット後の破棄で除かれる。
+     * </p>
+     *
+     * @param entity 更新、削除したEntity
+     */
+    private void invalidateCache(E entity) {
+        EntityCache cache = EntityCache.get(this.defName);
+        if (cache != null && entity != null) {
+            String oid = entity.getOid();
+            cache.invalidate(oid);
+            TransactionHooks.afterCommit(() -> cache.invalidate(oid));
+        }
     }
 
     /**
@@ -271,10 +855,16 @@ public abstract class Dao<E extends Entity> {
      * @param deleteOption 削除オプション
      */
     public void delete(E entity, DeleteOption deleteOption) {
+        E previous = loadPrevious(entity);
+        long start = System.nanoTime();
         try {
             em.delete(entity, deleteOption);
+            fireDeleted(entity, previous);
         } catch (Exception e) {
             throw e;
+        } finally {
+            record(DaoOperation.DELETE, start, 1);
+            invalidateCache(entity);
         }
     }
 
@@ -303,7 +893,192 @@ public abstract class Dao<E extends Entity> {
      * @return loadしたEntity
      */
     public E loadAndLock(String oid) {
-        return ObjectUtil.cast(em.loadAndLock(oid, this.defName, new LoadOption(false, false)));
+        long start = System.nanoTime();
+        try {
+            return ObjectUtil.cast(em.loadAndLock(oid, this.defName, nonLoadRefOption));
+        } finally {
+            record(DaoOperation.LOAD_AND_LOCK, start, 1);
+        }
+    }
+
+    /**
+     * 複数件のロードとロック
+     * <p>
+     * null、空白、重複を除いたoidを昇順(全処理で共通の順序)にロックするため、重複するoidをロックする処理同士でデッドロックしない。
+     * ロックは呼び出し元のトランザクションの終了まで保持する。
+     * </p>
+     * <p>
+     * 1件毎のロック取得前に待機時間を確認し、timeoutを超えていた場合は残りをロックせずに
+     * {@link EntityConcurrentUpdateException}をスローする(取得済みのロックは呼び出し元のトランザクションのロールバックで解放される)。
+     * 最後の1件のロックを取得できた場合は、timeoutを超えていても結果を返す。
+     * 1件のロック待ち自体の上限はDBのロック待ちタイムアウトに従う。
+     * </p>
+     *
+     * @param oids Entityのoid
+     * @param timeout 待機時間の上限(0以下の場合は上限なし)
+     * @param unit 待機時間の単位
+     * @return oid -> loadしたEntity(oidの昇順、存在しないoidは含まない)
+     */
+    public Map<String, E> loadAndLockAll(Collection<String> oids, long timeout, TimeUnit unit) {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        Map<String, E> result = new LinkedHashMap<>();
+        try {
+            TreeSet<String> targets = new TreeSet<>();
+            if (oids != null) {
+                for (String oid : oids) {
+                    if (StringUtil.isNotBlank(oid)) {
+                        targets.add(oid);
+                    }
+                }
+            }
+            int processed = 0;
+            for (String oid : targets) {
+                if (timeout > 0 && System.nanoTime() - deadline > 0) {
+                    throw new EntityConcurrentUpdateException("lock wait timeout. defName=" + this.defName + ", locked="
+                            + processed + "/" + targets.size());
+                }
+                E entity = ObjectUtil.cast(em.loadAndLock(oid, this.defName, nonLoadRefOption));
+                if (entity != null) {
+                    result.put(oid, entity);
+                }
+                processed++;
+            }
+            return result;
+        } finally {
+            record(DaoOperation.LOAD_AND_LOCK, start, result.size());
+        }
+    }
+
+    /**
+     * 複数件のロードとロック
+     * <p>
+     * 待機時間の上限なし。
+     * </p>
+     *
+     * @param oids Entityのoid
+     * @return oid -> loadしたEntity(oidの昇順、存在しないoidは含まない)
+     * @see #loadAndLockAll(Collection, long, TimeUnit)
+     */
+    public Map<String, E> loadAndLockAll(Collection<String> oids) {
+        return loadAndLockAll(oids, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 楽観ロックによる更新
+     * <p>
+     * 新規トランザクションで更新日時をチェックして更新する。entityをloadした後に他の処理で更新されていた場合は更新せずにfalseを返す。
+     * 競合は新規トランザクション内で発生するため、呼び出し元のトランザクションはロールバック対象とならない。
+     * </p>
+     * <p>
+     * 呼び出し元のトランザクションで同じEntityを{@link #loadAndLock(String)}、{@link #loadAndLockAll(Collection)}でロック、
+     * または更新している場合は、新規トランザクションがロックを待つためデッドロックする。
+     * </p>
+     *
+     * @param entity 更新対象のEntity(loadした時点の更新日時を保持していること)
+     * @param updateProperties 更新するプロパティ
+     * @return 更新した=true、他の処理で更新済み=false
+     */
+    public boolean updateIfVersion(E entity, List<String> updateProperties) {
+        UpdateOption option = new UpdateOption(true);
+        option.setUpdateProperties(updateProperties);
+        try {
+            Transaction.requiresNew(() -> {
+                update(entity, option);
+            });
+            return true;
+        } catch (EntityConcurrentUpdateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 楽観ロックによる更新(リトライあり)
+     * <p>
+     * 新規トランザクションで最新のEntityをロードしてmodifierで変更し、更新日時をチェックして更新する。
+     * 他の処理で更新済みの場合は待機時間を指数的に延ばしながら(ジッタあり)、ロードからやり直す。
+     * 悲観ロックを取得しないため、視聴ステータスの切り替えのように頻繁に更新される行に利用する。
+     * 更新前の状態を必要とするリスナーがある場合はreferenceの値も取得し、ロードした状態を更新前の状態として通知する。
+     * </p>
+     * <p>
+     * 呼び出し元のトランザクションで同じEntityを{@link #loadAndLock(String)}、{@link #loadAndLockAll(Collection)}でロック、
+     * または更新している場合は、新規トランザクションがロックを待つためデッドロックする(リトライでは解消しない)。
+     * ロック済みのEntityは呼び出し元のトランザクションで{@link #update(Entity, UpdateOption)}する。
+     * </p>
+     *
+     * @param oid Entityのoid
+     * @param updateProperties 更新するプロパティ
+     * @param modifier Entityの変更処理(ロードする度に呼び出す)、変更不要の場合はfalseを返す
+     * @param maxAttempts 最大試行回数
+     * @return 更新したEntity、存在しない場合または変更不要の場合はnull
+     * @throws EntityConcurrentUpdateException 最大試行回数まで他の処理と競合した場合
+     */
+    public E updateIfVersion(String oid, List<String> updateProperties, Predicate<E> modifier, int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                return Transaction.requiresNew(() -> {
+                    boolean withPrevious = requiresPrevious();
+                    E entity = ObjectUtil.cast(em.load(oid, this.defName, withPrevious ? loadRefOption : nonLoadRefOption));
+                    if (entity == null) {
+                        return null;
+                    }
+                    // 更新日時をチェックするため、ロードした状態が更新前の状態となる
+                    E previous = withPrevious ? entity.copy() : null;
+                    if (!modifier.test(entity)) {
+                        return null;
+                    }
+                    UpdateOption option = new UpdateOption(true);
+                    option.setUpdateProperties(updateProperties);
+                    update(entity, option, previous);
+                    return entity;
+                });
+            } catch (EntityConcurrentUpdateException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.debug("concurrent update detected. defName={}, oid={}, attempt={}", this.defName, oid, attempt);
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * 楽観ロックによる更新(リトライあり)
+     * <p>
+     * 最大試行回数は{@value #DEFAULT_UPDATE_ATTEMPTS}回。
+     * </p>
+     *
+     * @param oid Entityのoid
+     * @param updateProperties 更新するプロパティ
+     * @param modifier Entityの変更処理(ロードする度に呼び出す)、変更不要の場合はfalseを返す
+     * @return 更新したEntity、存在しない場合または変更不要の場合はnull
+     * @see #updateIfVersion(String, List, Predicate, int)
+     */
+    public E updateIfVersion(String oid, List<String> updateProperties, Predicate<E> modifier) {
+        return updateIfVersion(oid, updateProperties, modifier, DEFAULT_UPDATE_ATTEMPTS);
+    }
+
+    /**
+     * リトライ前の待機
+     * <p>
+     * 試行回数毎に{@value #UPDATE_BACKOFF_BASE_MILLIS}ミリ秒から倍に延ばし、{@value #UPDATE_BACKOFF_MAX_MILLIS}ミリ秒を上限とする。
+     * 競合した処理同士が同時に再試行しないよう、待機時間は0～上限のランダムな値とする。
+     * </p>
+     *
+     * @param attempt 試行回数
+     * @param cause 競合の例外(割り込まれた場合にスローする)
+     */
+    private static void backoff(int attempt, EntityConcurrentUpdateException cause) {
+        long max = Math.min(UPDATE_BACKOFF_MAX_MILLIS, UPDATE_BACKOFF_BASE_MILLIS << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(max + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
     }
 
     /**
@@ -315,7 +1090,25 @@ public abstract class Dao<E extends Entity> {
      */
     public int updateAll(List<UpdateValue> list, Where where) {
         UpdateCondition updateCondition = new UpdateCondition(this.defName, list, where);
-        return em.updateAll(updateCondition);
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            count = em.updateAll(updateCondition);
+            return count;
+        } finally {
+            record(DaoOperation.UPDATE_ALL, start, count);
+            // 更新対象のoidが特定できないため全て破棄する
+            EntityCache cache = EntityCache.get(this.defName);
+            if (cache != null) {
+                cache.invalidateAll();
+                TransactionHooks.afterCommit(cache::invalidateAll);
+            }
+            List<String> updateProperties = new ArrayList<>(list.size());
+            for (UpdateValue value : list) {
+                updateProperties.add(value.getEntityField());
+            }
+            fireListeners(listener -> listener.invalidated(updateProperties));
+        }
     }
 
     /**
@@ -328,7 +1121,12 @@ public abstract class Dao<E extends Entity> {
      * @return チェック結果
      */
     public ValidateResult validate(E entity, List<String> properties) {
-        return em.validate(entity, properties);
+        long start = System.nanoTime();
+        try {
+            return em.validate(entity, properties);
+        } finally {
+            record(DaoOperation.VALIDATE, start, 1);
+        }
     }
 
     /**
@@ -340,7 +1138,101 @@ public abstract class Dao<E extends Entity> {
      * @return チェック結果
      */
     public ValidateResult validate(E entity) {
-        return em.validate(entity);
+        long start = System.nanoTime();
+        try {
+            return em.validate(entity);
+        } finally {
+            record(DaoOperation.VALIDATE, start, 1);
+        }
+    }
+
+    /**
+     * 一括バリデーションチェック
+     * <p>
+     * エラー件数の上限なしで全件チェックする。
+     * </p>
+     *
+     * @param entities チェック対象のEntity
+     * @param properties チェック対象のプロパティ(nullの場合はすべてのプロパティ)
+     * @return チェック結果
+     * @see #validateAll(List, List, int)
+     */
+    public BulkValidateResult validateAll(List<E> entities, List<String> properties) {
+        return validateAll(entities, properties, 0);
+    }
+
+    /**
+     * 一括バリデーションチェック
+     * <p>
+     * {@value #VALIDATION_SLICE_SIZE}件毎に分割し、共有スレッドプールで並列にチェックする。
+     * 各スレッドには呼び出し元のテナント、ユーザなどの実行コンテキストを引き継ぐ。
+     * </p>
+     * <p>
+     * エラー件数がmaxFailuresに達した時点で未着手のチェックを打ち切る。
+     * 並列にチェック中だったEntityの結果も含めるため、エラー件数はmaxFailuresを超える場合がある。
+     * 打ち切った場合にチェック済みのEntityは{@link BulkValidateResult#isValidated(int)}で判定する。
+     * </p>
+     *
+     * @param entities チェック対象のEntity
+     * @param properties チェック対象のプロパティ(nullの場合はすべてのプロパティ)
+     * @param maxFailures エラー件数の上限(0以下の場合は上限なし)
+     * @return チェック結果
+     */
+    public BulkValidateResult validateAll(List<E> entities, List<String> properties, int maxFailures) {
+        long start = System.nanoTime();
+        int limit = maxFailures > 0 ? maxFailures : Integer.MAX_VALUE;
+        Map<Integer, ValidateResult> failures = new ConcurrentSkipListMap<>();
+        AtomicInteger failureCount = new AtomicInteger();
+        AtomicInteger validatedCount = new AtomicInteger();
+        BitSet validated = new BitSet(entities.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (int from = 0; from < entities.size(); from += VALIDATION_SLICE_SIZE) {
+                    int fromIndex = from;
+                    int toIndex = Math.min(from + VALIDATION_SLICE_SIZE, entities.size());
+                    futures.add(validationExecutor().submit(ContextPropagation.wrap(() -> {
+                        BitSet sliceValidated = new BitSet(toIndex);
+                        try {
+                            for (int i = fromIndex; i < toIndex && failureCount.get() < limit; i++) {
+                                E entity = entities.get(i);
+                                ValidateResult result = properties == null ? em.validate(entity) : em.validate(entity, properties);
+                                sliceValidated.set(i);
+                                validatedCount.incrementAndGet();
+                                if (result != null && result.hasError()) {
+                                    failures.put(i, result);
+                                    failureCount.incrementAndGet();
+                                }
+                            }
+                        } finally {
+                            synchronized (validated) {
+                                validated.or(sliceValidated);
+                            }
+                        }
+                    })));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("parallel validation interrupted.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            synchronized (validated) {
+                return new BulkValidateResult(entities.size(), validated, failures);
+            }
+        } finally {
+            record(DaoOperation.VALIDATE, start, validatedCount.get());
+        }
     }
 
     /**
@@ -350,8 +1242,15 @@ public abstract class Dao<E extends Entity> {
      * @return Object[] 検索結果
      */
     protected Object[] searchOne2(Query query) {
-        SearchResult<Object[]> result = this.em.search(query.from(this.defName));
-        return result.getFirst();
+        long start = System.nanoTime();
+        Object[] row = null;
+        try {
+            SearchResult<Object[]> result = this.em.search(query.from(this.defName));
+            row = result.getFirst();
+            return row;
+        } finally {
+            record(DaoOperation.SEARCH, start, row != null ? 1 : 0);
+        }
     }
 
     /**
@@ -361,8 +1260,74 @@ public abstract class Dao<E extends Entity> {
      * @return List&lt;Object[]&gt; 検索結果
      */
     protected List<Object[]> search2(Query query) {
-        SearchResult<Object[]> result = this.em.search(query.from(this.defName));
-        return result.getList();
+        long start = System.nanoTime();
+        List<Object[]> list = null;
+        try {
+            SearchResult<Object[]> result = this.em.search(query.from(this.defName));
+            list = result.getList();
+            return list;
+        } finally {
+            record(DaoOperation.SEARCH, start, list != null ? list.size() : 0);
+        }
+    }
+
+    /**
+     * 検索を実行します(ストリーミング)
+     * <p>
+     * 結果をListに保持せず、1件ずつcallbackに渡す。
+     * callbackがfalseを返した時点で検索を打ち切る。
+     * </p>
+     *
+     * @param query クエリ
+     * @param callback 1件ごとの処理
+     */
+    protected void search2(Query query, Predicate<Object[]> callback) {
+        search2(query, DEFAULT_FETCH_SIZE, callback);
+    }
+
+    /**
+     * 検索を実行します(ストリーミング)
+     * <p>
+     * 結果をListに保持せず、フェッチサイズ分の結果のみをメモリ上に保持して1件ずつcallbackに渡す。
+     * callbackがfalseを返した時点で検索を打ち切る。
+     * </p>
+     *
+     * @param query クエリ
+     * @param fetchSize フェッチサイズ(0以下の場合はJDBCドライバのデフォルト)
+     * @param callback 1件ごとの処理
+     */
+    protected void search2(Query query, int fetchSize, Predicate<Object[]> callback) {
+        long start = System.nanoTime();
+        long[] rows = new long[1];
+        try {
+            this.em.search(withFetchSize(query.from(this.defName), fetchSize), (Object[] row) -> {
+                rows[0]++;
+                return callback.test(row);
+            });
+        } finally {
+            record(DaoOperation.SEARCH_STREAM, start, rows[0]);
+        }
+    }
+
+    /**
+     * 検索を実行します(射影)
+     * <p>
+     * select句を射影定義のプロパティで置き換えて検索し、1行ごとに射影先のインスタンスを生成する。
+     * Entityを経由しないため、行ごとのGenericEntity生成を省略できる。
+     * </p>
+     *
+     * @param query クエリ(select句は射影定義で上書きされる)
+     * @param projection 射影定義
+     * @param <T> 射影先のクラス
+     * @return List&lt;T&gt; 検索結果
+     */
+    protected <T> List<T> searchProjection(Query query, Projection<T> projection) {
+        List<T> list = new ArrayList<>();
+        search2(query.select((Object[]) projection.getProperties()), row -> {
+            list.add(projection.map(row));
+            return true;
+        });
+        return list;
     }
 
     /**
@@ -372,8 +1337,15 @@ public abstract class Dao<E extends Entity> {
      * @return List&lt;E&gt; 検索結果
      */
     protected List<E> searchEntity(Query query) {
-        SearchResult<E> result = this.em.searchEntity(query.from(this.defName));
-        return result.getList();
+        long start = System.nanoTime();
+        List<E> list = null;
+        try {
+            SearchResult<E> result = this.em.searchEntity(query.from(this.defName));
+            list = result.getList();
+            return list;
+        } finally {
+            record(DaoOperation.SEARCH, start, list != null ? list.size() : 0);
+        }
     }
 
     /**
@@ -384,8 +1356,15 @@ public abstract class Dao<E extends Entity> {
      * @return List&lt;E&gt; 検索結果
      */
     protected List<E> searchEntity(Query query, SearchOption option) {
-        SearchResult<E> result = this.em.searchEntity(query.from(this.defName), option);
-        return result.getList();
+        long start = System.nanoTime();
+        List<E> list = null;
+        try {
+            SearchResult<E> result = this.em.searchEntity(query.from(this.defName), option);
+            list = result.getList();
+            return list;
+        } finally {
+            record(DaoOperation.SEARCH, start, list != null ? list.size() : 0);
+        }
     }
 
     /**
@@ -395,8 +1374,15 @@ public abstract class Dao<E extends Entity> {
      * @return E 検索結果
      */
     protected E searchEntityOne(Query query) {
-        SearchResult<E> result = this.em.searchEntity(query.from(this.defName));
-        return result.getFirst();
+        long start = System.nanoTime();
+        E entity = null;
+        try {
+            SearchResult<E> result = this.em.searchEntity(query.from(this.defName));
+            entity = result.getFirst();
+            return entity;
+        } finally {
+            record(DaoOperation.SEARCH, start, entity != null ? 1 : 0);
+        }
     }
 
     /**
@@ -407,7 +1393,199 @@ public abstract class Dao<E extends Entity> {
      * @return E 検索結果
      */
     protected E searchEntityOne(Query query, SearchOption option) {
-        SearchResult<E> result = this.em.searchEntity(query.from(this.defName), option);
-        return result.getFirst();
+        long start = System.nanoTime();
+        E entity = null;
+        try {
+            SearchResult<E> result = this.em.searchEntity(query.from(this.defName), option);
+            entity = result.getFirst();
+            return entity;
+        } finally {
+            record(DaoOperation.SEARCH, start, entity != null ? 1 : 0);
+        }
+    }
+
+    /**
+     * 検索を実行します(ストリーミング)
+     * <p>
+     * 結果をListに保持せず、1件ずつcallbackに渡す。
+     * callbackがfalseを返した時点で検索を打ち切る。
+     * </p>
+     *
+     * @param query クエリ
+     * @param callback 1件ごとの処理
+     */
+    protected void searchEntity(Query query, Predicate<E> callback) {
+        searchEntity(query, DEFAULT_FETCH_SIZE, callback);
+    }
+
+    /**
+     * 検索を実行します(ストリーミング)
+     * <p>
+     * 結果をListに保持せず、フェッチサイズ分の結果のみをメモリ上に保持して1件ずつcallbackに渡す。
+     * callbackがfalseを返した時点で検索を打ち切る。
+     * </p>
+     *
+     * @param query クエリ
+     * @param fetchSize フェッチサイズ(0以下の場合はJDBCドライバのデフォルト)
+     * @param callback 1件ごとの処理
+     */
+    protected void searchEntity(Query query, int fetchSize, Predicate<E> callback) {
+        long start = System.nanoTime();
+        long[] rows = new long[1];
+        try {
+            this.em.<E> searchEntity(withFetchSize(query.from(this.defName), fetchSize), (E entity) -> {
+                rows[0]++;
+                return callback.test(entity);
+            });
+        } finally {
+            record(DaoOperation.SEARCH_STREAM, start, rows[0]);
+        }
+    }
+
+    /**
+     * 並列検索時の分割数を設定する
+     *
+     * @param searchParallelism 分割数
+     * @see #searchParallel(Function, String, Timestamp, Timestamp)
+     */
+    public void setSearchParallelism(int searchParallelism) {
+        if (searchParallelism <= 0) {
+            throw new IllegalArgumentException("searchParallelism must be positive: " + searchParallelism);
+        }
+        this.searchParallelism = searchParallelism;
+    }
+
+    /**
+     * 範囲分割による並列検索
+     * <p>
+     * rangePropertyの範囲[from, to]を{@link #setSearchParallelism(int)}の分割数の期間に等分し、
+     * 期間毎のサブ検索を共有スレッドプールで並列に実行する。
+     * 各スレッドには呼び出し元のテナント、ユーザなどの実行コンテキストを引き継ぐ。
+     * </p>
+     * <p>
+     * queryFactoryは期間の条件を受け取り、検索するQueryを返すこと(期間の条件はwhereに含めること)。
+     * 結果は期間の昇順に連結するため、QueryでrangePropertyの昇順を指定した場合は全体もその順となる。
+     * いずれかのサブ検索が失敗した場合は残りのサブ検索を取り消し、例外をスローする。
+     * </p>
+     *
+     * @param queryFactory 期間の条件 -> 検索するQuery
+     * @param rangeProperty 分割するプロパティ(日時型)
+     * @param from 開始日時(この日時を含む)
+     * @param to 終了日時(この日時を含む)
+     * @return 検索結果
+     */
+    protected List<E> searchParallel(Function<Condition, Query> queryFactory, String rangeProperty, Timestamp from,
+            Timestamp to) {
+        long start = System.nanoTime();
+        List<E> result = new ArrayList<>();
+        try {
+            long fromMillis = from.getTime();
+            long toMillis = to.getTime();
+            if (fromMillis > toMillis) {
+                return result;
+            }
+            int partitions = (int) Math.max(1L, Math.min(searchParallelism, toMillis - fromMillis + 1));
+            List<Future<List<E>>> futures = new ArrayList<>(partitions);
+            try {
+                for (int i = 0; i < partitions; i++) {
+                    Condition range = rangeCondition(rangeProperty, fromMillis, toMillis, i, partitions);
+                    Query query = queryFactory.apply(range).from(this.defName);
+                    futures.add(parallelSearchExecutor().submit(ContextPropagation.wrap(() -> em.<E> searchEntity(query).getList())));
+                }
+                for (Future<List<E>> future : futures) {
+                    result.addAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("parallel search interrupted.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                for (Future<List<E>> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            return result;
+        } finally {
+            record(DaoOperation.SEARCH, start, result.size());
+        }
+    }
+
+    /**
+     * 分割した期間の条件を返します。
+     * <p>
+     * 最後の期間以外は終了日時を含まない。
+     * </p>
+     *
+     * @param property 分割するプロパティ
+     * @param from 開始日時(ミリ秒)
+     * @param to 終了日時(ミリ秒)
+     * @param index 期間の番号(0～)
+     * @param partitions 分割数
+     * @return 期間の条件
+     */
+    private static Condition rangeCondition(String property, long from, long to, int index, int partitions) {
+        long span = to - from + 1;
+        long lower = from + span * index / partitions;
+        long upper = from + span * (index + 1) / partitions;
+        if (index == partitions - 1) {
+            return new Between(property, new Timestamp(lower), new Timestamp(to));
+        }
+        return new And(new GreaterEqual(property, new Timestamp(lower)), new Lesser(property, new Timestamp(upper)));
+    }
+
+    /**
+     * 並列検索用の共有スレッドプール
+     * <p>
+     * 全Daoで共有し、同時に実行するサブ検索数(DB接続数)を{@value #PARALLEL_SEARCH_THREADS_PROPERTY}(デフォルト8)に制限する。
+     * 待ち行列が溢れた場合は呼び出し元スレッドで実行する。アプリケーション停止時に{@link SharedExecutors#shutdown()}で停止する。
+     * </p>
+     *
+     * @return スレッドプール
+     */
+    private static ExecutorService parallelSearchExecutor() {
+        return SharedExecutors.get("ctp-dao-search", Integer.getInteger(PARALLEL_SEARCH_THREADS_PROPERTY, 8));
+    }
+
+    /**
+     * 一括バリデーションチェック用の共有スレッドプール
+     * <p>
+     * 全Daoで共有し、スレッド数を{@value #VALIDATION_THREADS_PROPERTY}(デフォルトはCPU数)に制限する。
+     * 待ち行列が溢れた場合は呼び出し元スレッドで実行する。アプリケーション停止時に{@link SharedExecutors#shutdown()}で停止する。
+     * </p>
+     *
+     * @return スレッドプール
+     */
+    private static ExecutorService validationExecutor() {
+        return SharedExecutors.get("ctp-dao-validate",
+                Integer.getInteger(VALIDATION_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * 計測値の記録
+     *
+     * @param operation 操作種別
+     * @param startNanos 処理開始時の{@link System#nanoTime()}
+     * @param rows 処理件数
+     */
+    private void record(DaoOperation operation, long startNanos, long rows) {
+        metrics[operation.ordinal()].record(System.nanoTime() - startNanos, rows);
+    }
+
+    /**
+     * クエリにフェッチサイズのヒントを付与する
+     *
+     * @param query クエリ
+     * @param fetchSize フェッチサイズ(0以下の場合は付与しない)
+     * @return 引数のクエリ
+     */
+    private static Query withFetchSize(Query query, int fetchSize) {
+        if (fetchSize > 0 && query.getSelect() != null) {
+            query.getSelect().addHint(new FetchSizeHint(fetchSize));
+        }
+        return query;
     }
 }
@@ -0,0 +1,219 @@
+package ctp.dao;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dao計測値
+ * <p>
+ * definitionNameと{@link DaoOperation}の組み合わせ毎に処理時間と処理件数を保持する。<br>
+ * Daoはインスタンス生成時に自身のdefinitionName分の計測値配列を取得し、以降は配列の参照のみで記録する。
+ * </p>
+ * <p>
+ * 計測値はJMX(ObjectName:{@value #OBJECT_NAME})と{@link ctp.command.DaoMetricsCommand}から参照できる。
+ * 初期化はJMXと{@link ctp.command.DaoMetricsResetCommand}(管理者のみ)から行う。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class DaoMetrics implements DaoMetricsMXBean {
+
+	/** JMX登録名 */
+	public static final String OBJECT_NAME = "ctp.dao:type=DaoMetrics";
+
+	private static final Logger logger = LoggerFactory.getLogger(DaoMetrics.class);
+
+	/** インスタンス */
+	private static final DaoMetrics INSTANCE = new DaoMetrics();
+	static {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		} catch (JMException | RuntimeException e) {
+			logger.warn("failed to register " + OBJECT_NAME, e);
+		}
+	}
+
+	/** definitionName毎の計測値(DaoOperationのordinal順) */
+	private final Map<String, OperationStats[]> statsMap = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ
+	 */
+	private DaoMetrics() {
+	}
+
+	/**
+	 * インスタンスを返します。
+	 *
+	 * @return インスタンス
+	 */
+	public static DaoMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * definitionNameの計測値配列を返します。
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @return {@link DaoOperation}のordinal順の計測値
+	 */
+	static OperationStats[] statsFor(String defName) {
+		return INSTANCE.statsMap.computeIfAbsent(defName, key -> {
+			OperationStats[] stats = new OperationStats[DaoOperation.values().length];
+			for (int i = 0; i < stats.length; i++) {
+				stats[i] = new OperationStats();
+			}
+			return stats;
+		});
+	}
+
+	@Override
+	public List<Snapshot> getSnapshots() {
+		List<Snapshot> list = new ArrayList<>();
+		for (Map.Entry<String, OperationStats[]> entry : new TreeMap<>(statsMap).entrySet()) {
+			for (DaoOperation operation : DaoOperation.values()) {
+				OperationStats stats = entry.getValue()[operation.ordinal()];
+				if (stats.getCount() > 0) {
+					list.add(new Snapshot(entry.getKey(), operation, stats));
+				}
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void reset() {
+		for (OperationStats[] stats : statsMap.values()) {
+			for (OperationStats s : stats) {
+				s.reset();
+			}
+		}
+	}
+
+	/**
+	 * 計測値のスナップショット
+	 */
+	public static class Snapshot {
+
+		/** 1マイクロ秒 */
+		private static final long MICROS = 1000L;
+
+		private final String definitionName;
+		private final String operation;
+		private final long count;
+		private final long rows;
+		private final long meanMicros;
+		private final long p50Micros;
+		private final long p95Micros;
+		private final long p99Micros;
+		private final long maxMicros;
+
+		Snapshot(String definitionName, DaoOperation operation, OperationStats stats) {
+			this.definitionName = definitionName;
+			this.operation = operation.name();
+			this.count = stats.getCount();
+			this.rows = stats.getRows();
+			this.meanMicros = count == 0 ? 0 : stats.getTotalNanos() / count / MICROS;
+			this.p50Micros = stats.getPercentileNanos(50) / MICROS;
+			this.p95Micros = stats.getPercentileNanos(95) / MICROS;
+			this.p99Micros = stats.getPercentileNanos(99) / MICROS;
+			this.maxMicros = stats.getMaxNanos() / MICROS;
+		}
+
+		/**
+		 * EntityのdefinitionNameを返します。
+		 *
+		 * @return EntityのdefinitionName
+		 */
+		public String getDefinitionName() {
+			return definitionName;
+		}
+
+		/**
+		 * 操作種別を返します。
+		 *
+		 * @return {@link DaoOperation}の名前
+		 */
+		public String getOperation() {
+			return operation;
+		}
+
+		/**
+		 * 実行回数を返します。
+		 *
+		 * @return 実行回数
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * 処理件数を返します。
+		 *
+		 * @return 取得、更新した件数の合計
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * 平均処理時間を返します。
+		 *
+		 * @return 平均処理時間(マイクロ秒)
+		 */
+		public long getMeanMicros() {
+			return meanMicros;
+		}
+
+		/**
+		 * 処理時間の50パーセンタイルを返します。
+		 *
+		 * @return 処理時間(マイクロ秒)
+		 */
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		/**
+		 * 処理時間の95パーセンタイルを返します。
+		 *
+		 * @return 処理時間(マイクロ秒)
+		 */
+		public long getP95Micros() {
+			return p95Micros;
+		}
+
+		/**
+		 * 処理時間の99パーセンタイルを返します。
+		 *
+		 * @return 処理時間(マイクロ秒)
+		 */
+		public long getP99Micros() {
+			return p99Micros;
+		}
+
+		/**
+		 * 最大処理時間を返します。
+		 *
+		 * @return 最大処理時間(マイクロ秒)
+		 */
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+	}
+}
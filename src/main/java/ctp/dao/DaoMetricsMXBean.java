@@ -0,0 +1,23 @@
+package ctp.dao;
+
+import java.util.List;
+
+/**
+ * Dao計測値のJMXインタフェース
+ *
+ * @author lis93e
+ */
+public interface DaoMetricsMXBean {
+
+	/**
+	 * 実行された操作の計測値を返します。
+	 *
+	 * @return 計測値
+	 */
+	List<DaoMetrics.Snapshot> getSnapshots();
+
+	/**
+	 * 全ての計測値を初期化する
+	 */
+	void reset();
+}
@@ -0,0 +1,41 @@
+package ctp.dao;
+
+/**
+ * Daoの操作種別
+ * <p>
+ * {@link DaoMetrics}で計測する単位となる。
+ * </p>
+ *
+ * @author lis93e
+ */
+public enum DaoOperation {
+
+	/** 1件ロード */
+	LOAD,
+	/** 複数件ロード */
+	LOAD_ALL,
+	/** ロードとロック */
+	LOAD_AND_LOCK,
+	/** 検索(List取得) */
+	SEARCH,
+	/** 検索(ストリーミング) */
+	SEARCH_STREAM,
+	/** 件数検索 */
+	COUNT,
+	/** 1件Insert */
+	INSERT,
+	/** 一括Insert */
+	BULK_INSERT,
+	/** 1件Update */
+	UPDATE,
+	/** 一括Update */
+	BULK_UPDATE,
+	/** 条件指定Update */
+	UPDATE_ALL,
+	/** 1件削除 */
+	DELETE,
+	/** 一括削除 */
+	BULK_DELETE,
+	/** バリデーションチェック */
+	VALIDATE;
+}
@@ -0,0 +1,102 @@
+package ctp.dao;
+
+import java.util.List;
+
+import org.iplass.mtp.entity.Entity;
+
+/**
+ * Dao更新通知リスナー
+ * <p>
+ * {@link DaoWriteListeners#add(String, DaoWriteListener)}でテナント、definitionName単位に登録し、
+ * Daoを経由した登録、更新、削除の後に通知を受ける。Daoを経由しない更新は通知されない。<br>
+ * 一括処理はチャンクのコミット後、それ以外は呼び出し元のトランザクションのコミット後に通知する。
+ * ロールバックされた場合は通知しない。トランザクション外ではEntityManagerの呼び出し後に通知する。
+ * </p>
+ * <p>
+ * 通知は更新したスレッド(現在のテナント)で行うため、処理は短時間で終わらせること。
+ * リスナーで発生した例外はログ出力のみ行い、更新処理には影響させない。
+ * </p>
+ *
+ * @author lis93e
+ * @param <E> Entityを継承したクラス
+ */
+public interface DaoWriteListener<E extends Entity> {
+
+	/**
+	 * 登録後の通知
+	 *
+	 * @param entity 登録したEntity(oid設定済み)
+	 */
+	default void inserted(E entity) {
+	}
+
+	/**
+	 * 更新後の通知
+	 *
+	 * @param entity 更新したEntity
+	 * @param updateProperties 更新したプロパティ
+	 */
+	default void updated(E entity, List<String> updateProperties) {
+	}
+
+	/**
+	 * 削除後の通知
+	 *
+	 * @param entity 削除したEntity
+	 */
+	default void deleted(E entity) {
+	}
+
+	/**
+	 * 更新後の通知(更新前の状態あり)
+	 * <p>
+	 * {@link #requiresPrevious()}がtrueの場合、previousに更新前の状態(referenceの値を含む)を設定する。
+	 * entityは呼び出し元が更新に指定したEntityのため、updateProperties以外のプロパティは設定されていない場合がある。
+	 * 更新後の状態はpreviousにupdatePropertiesの値を反映したものとなる。
+	 * デフォルトは{@link #updated(Entity, List)}を呼び出す。
+	 * </p>
+	 *
+	 * @param entity 更新したEntity
+	 * @param updateProperties 更新したプロパティ
+	 * @param previous 更新前の状態、不要な場合または不明な場合(更新前に削除済みなど)はnull
+	 */
+	default void updated(E entity, List<String> updateProperties, E previous) {
+		updated(entity, updateProperties);
+	}
+
+	/**
+	 * 削除後の通知(削除前の状態あり)
+	 * <p>
+	 * {@link #requiresPrevious()}がtrueの場合、previousに削除前の状態(referenceの値を含む)を設定する。
+	 * デフォルトは{@link #deleted(Entity)}を呼び出す。
+	 * </p>
+	 *
+	 * @param entity 削除したEntity
+	 * @param previous 削除前の状態、不要な場合または不明な場合はnull
+	 */
+	default void deleted(E entity, E previous) {
+		deleted(entity);
+	}
+
+	/**
+	 * 更新、削除前の状態を必要とするかを返します。
+	 * <p>
+	 * trueの場合、Daoは更新前の状態が分からない更新、削除の前にEntityをロードする(1件毎に1回のロードが増える)。
+	 * 楽観ロックによる更新({@link Dao#updateIfVersion(String, List, java.util.function.Predicate)})、
+	 * 変更プロパティの更新({@link Dao#updateDirty(DirtyTracker)})は既にロードした状態を利用するため、ロードは増えない。
+	 * </p>
+	 *
+	 * @return 必要な場合true、デフォルトはfalse
+	 */
+	default boolean requiresPrevious() {
+		return false;
+	}
+
+	/**
+	 * 更新対象を特定できない更新({@link Dao#updateAll(List, org.iplass.mtp.entity.query.Where)})後の通知
+	 *
+	 * @param updateProperties 更新したプロパティ
+	 */
+	default void invalidated(List<String> updateProperties) {
+	}
+}
@@ -0,0 +1,63 @@
+package ctp.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.iplass.mtp.entity.Entity;
+
+import ctp.util.ContextPropagation;
+
+/**
+ * Dao更新通知リスナーの登録先
+ * <p>
+ * テナント、definitionName単位にリスナーを保持する。
+ * 登録、削除、Daoからの通知はいずれも現在のテナントのリスナーを対象とする。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class DaoWriteListeners {
+
+	/** テナント、definitionName毎のリスナー */
+	private static final Map<String, List<DaoWriteListener<? extends Entity>>> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ
+	 */
+	private DaoWriteListeners() {
+	}
+
+	/**
+	 * 現在のテナントにリスナーを登録する
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @param listener リスナー
+	 * @param <E> Entityを継承したクラス
+	 */
+	public static <E extends Entity> void add(String defName, DaoWriteListener<E> listener) {
+		listenersFor(defName).add(listener);
+	}
+
+	/**
+	 * 現在のテナントからリスナーを削除する
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @param listener リスナー
+	 */
+	public static void remove(String defName, DaoWriteListener<? extends Entity> listener) {
+		listenersFor(defName).remove(listener);
+	}
+
+	/**
+	 * 現在のテナントのdefinitionNameのリスナーリストを返します。
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @return リスナーリスト(登録、削除が反映される)
+	 */
+	static List<DaoWriteListener<? extends Entity>> listenersFor(String defName) {
+		return listeners.computeIfAbsent(ContextPropagation.currentTenantId() + ":" + defName,
+				key -> new CopyOnWriteArrayList<>());
+	}
+}
@@ -0,0 +1,143 @@
+package ctp.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplass.mtp.entity.Entity;
+
+import ctp.util.ObjectUtil;
+
+/**
+ * 変更プロパティの記録
+ * <p>
+ * {@link Dao#track(Entity)}で生成した時点の対象プロパティの値を保持し、現在の値と比較して変更プロパティを求める。<br>
+ * 値の比較は{@link ObjectUtil#equals(Object, Object)}で行うため、同じ値の設定は変更として扱わない。
+ * </p>
+ * <p>
+ * Entityクラスは自動生成(createEntityClass)のため、Entityには手を加えずDao側で記録する。
+ * {@link Dao#updateDirty(DirtyTracker)}で変更プロパティのみを更新する。
+ * </p>
+ *
+ * @author lis93e
+ * @param <E> Entityを継承したクラス
+ */
+public class DirtyTracker<E extends Entity> {
+
+	/** 対象Entity */
+	private final E entity;
+	/** 対象プロパティ */
+	private final List<String> properties;
+	/** 記録時点の値 */
+	private final Map<String, Object> original = new HashMap<>();
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param entity 対象Entity
+	 * @param properties 対象プロパティ
+	 */
+	DirtyTracker(E entity, List<String> properties) {
+		this.entity = entity;
+		this.properties = properties;
+		reset();
+	}
+
+	/**
+	 * 対象Entityを返します。
+	 *
+	 * @return 対象Entity(setterで変更する)
+	 */
+	public E get() {
+		return entity;
+	}
+
+	/**
+	 * 変更があるかを返します。
+	 *
+	 * @return 変更あり=true
+	 */
+	public boolean isDirty() {
+		for (String property : properties) {
+			if (isChanged(property)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 変更プロパティを返します。
+	 *
+	 * @return 変更プロパティ(対象プロパティの順)
+	 */
+	public List<String> getDirtyProperties() {
+		List<String> dirty = new ArrayList<>();
+		for (String property : properties) {
+			if (isChanged(property)) {
+				dirty.add(property);
+			}
+		}
+		return dirty;
+	}
+
+	/**
+	 * 記録時点の状態を返します。
+	 * <p>
+	 * 対象Entityの複製に、対象プロパティの記録時点の値を設定したもの。更新前の状態としてリスナーに通知する。
+	 * </p>
+	 *
+	 * @return 記録時点の状態
+	 */
+	E previous() {
+		E previous = entity.copy();
+		for (String property : properties) {
+			previous.setValue(property, original.get(property));
+		}
+		return previous;
+	}
+
+	/**
+	 * 現在の値を記録し直し、変更なしの状態とします。
+	 */
+	public void reset() {
+		original.clear();
+		for (String property : properties) {
+			original.put(property, snapshot(entity.getValue(property)));
+		}
+	}
+
+	private boolean isChanged(String property) {
+		Object current = entity.getValue(property);
+		Object recorded = original.get(property);
+		if (current instanceof Object[] && recorded instanceof Object[]) {
+			Object[] a = (Object[]) current;
+			Object[] b = (Object[]) recorded;
+			if (a.length != b.length) {
+				return true;
+			}
+			for (int i = 0; i < a.length; i++) {
+				if (!ObjectUtil.equals(a[i], b[i])) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return !ObjectUtil.equals(current, recorded);
+	}
+
+	/**
+	 * 記録する値(変更可能な値は複製する)
+	 */
+	private static Object snapshot(Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		if (value instanceof Object[]) {
+			return ((Object[]) value).clone();
+		}
+		return value;
+	}
+}
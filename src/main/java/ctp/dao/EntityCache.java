@@ -0,0 +1,431 @@
+package ctp.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.entity.LoadOption;
+
+import ctp.util.ContextPropagation;
+import ctp.util.ObjectUtil;
+
+/**
+ * Entityキャッシュ
+ * <p>
+ * テナント、definitionName単位に{@link #enable(String, int, long)}で有効化した場合のみ、{@link Dao#load(String, LoadOption)}の結果を保持する。<br>
+ * 件数上限を超えた場合は最も参照されていないものから、有効期限を過ぎたものは参照時に破棄する。
+ * </p>
+ * <p>
+ * キーはoidとし、referenceの取得有無ごとに同一のversion(version、updateDate)のEntityを保持する。
+ * 異なるversionのEntityを格納する場合は新しいversionのもののみ残す。
+ * Daoの更新、削除処理で該当oidは破棄されるが、Daoを経由しない更新は有効期限まで反映されない。
+ * そのため更新頻度の低いマスタEntityでの利用を想定する。
+ * </p>
+ * <p>
+ * 格納時と取得時にEntityを複製し、呼び出し元での変更がキャッシュに影響しないようにする。
+ * 複製はreferenceのEntity、配列(多重度複数の値)、日時も含めて再帰的に行う(deep copy)。
+ * </p>
+ * <p>
+ * 読込と破棄の競合で破棄前のEntityを格納しないよう、読込前に{@link #token(String)}で世代を取得し、
+ * {@link #put(Entity, LoadOption, long)}では世代が変わっていない(読込中に破棄されていない)場合のみ格納する。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class EntityCache {
+
+	/** 世代の分割数 */
+	private static final int GENERATION_STRIPES = 64;
+
+	/** テナント、definitionName毎のキャッシュ */
+	private static final Map<String, EntityCache> caches = new ConcurrentHashMap<>();
+
+	/** 件数上限 */
+	private final int maxSize;
+	/** 有効期間(ミリ秒) */
+	private final long ttlMillis;
+	/** キャッシュ本体(アクセス順) */
+	private final LinkedHashMap<String, CacheEntry> entries;
+	/** oidのハッシュ毎の世代(破棄する度に加算) */
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+	/** ヒット件数 */
+	private final LongAdder hitCount = new LongAdder();
+	/** ミス件数 */
+	private final LongAdder missCount = new LongAdder();
+	/** 破棄件数(件数上限、有効期限によるもの) */
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param maxSize 件数上限
+	 * @param ttlMillis 有効期間(ミリ秒)
+	 */
+	private EntityCache(int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				if (size() > EntityCache.this.maxSize) {
+					evictionCount.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * キャッシュを有効化する
+	 * <p>
+	 * 既に有効化されている場合は破棄して作り直す。
+	 * </p>
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @param maxSize 件数上限
+	 * @param ttl 有効期間
+	 * @param unit 有効期間の単位
+	 * @return 有効化したキャッシュ
+	 */
+	public static EntityCache enable(String defName, int maxSize, long ttl, TimeUnit unit) {
+		return enable(defName, maxSize, unit.toMillis(ttl));
+	}
+
+	/**
+	 * キャッシュを有効化する
+	 * <p>
+	 * 現在のテナントのキャッシュを有効化する。既に有効化されている場合は破棄して作り直す。
+	 * </p>
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @param maxSize 件数上限
+	 * @param ttlMillis 有効期間(ミリ秒)
+	 * @return 有効化したキャッシュ
+	 */
+	public static EntityCache enable(String defName, int maxSize, long ttlMillis) {
+		if (maxSize <= 0 || ttlMillis <= 0) {
+			throw new IllegalArgumentException("maxSize and ttlMillis must be positive.");
+		}
+		EntityCache cache = new EntityCache(maxSize, ttlMillis);
+		caches.put(key(defName), cache);
+		return cache;
+	}
+
+	/**
+	 * 現在のテナントのキャッシュを無効化する
+	 *
+	 * @param defName EntityのdefinitionName
+	 */
+	public static void disable(String defName) {
+		caches.remove(key(defName));
+	}
+
+	/**
+	 * 現在のテナントのキャッシュを取得する
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @return キャッシュ、有効化されていない場合はnull
+	 */
+	public static EntityCache get(String defName) {
+		return caches.get(key(defName));
+	}
+
+	/**
+	 * キャッシュのキー
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @return テナントIDとdefinitionNameを連結したキー
+	 */
+	private static String key(String defName) {
+		return ContextPropagation.currentTenantId() + ":" + defName;
+	}
+
+	/**
+	 * キャッシュからEntityを取得する
+	 * <p>
+	 * 呼び出し元での変更がキャッシュに影響しないよう、複製したEntityを返す。
+	 * </p>
+	 *
+	 * @param oid Entityのoid
+	 * @param op Entityのload時のオプション
+	 * @param <E> Entityの型
+	 * @return キャッシュされたEntity、存在しない場合はnull
+	 */
+	public <E extends Entity> E get(String oid, LoadOption op) {
+		Entity entity = null;
+		synchronized (entries) {
+			CacheEntry entry = entries.get(oid);
+			if (entry != null) {
+				if (entry.expireAt < System.currentTimeMillis()) {
+					entries.remove(oid);
+					evictionCount.increment();
+				} else {
+					entity = entry.variants[variant(op)];
+				}
+			}
+		}
+		if (entity == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		return copy(entity);
+	}
+
+	/**
+	 * 指定oidの世代を取得する
+	 * <p>
+	 * Entityの読込前に取得し、{@link #put(Entity, LoadOption, long)}に渡す。
+	 * </p>
+	 *
+	 * @param oid Entityのoid
+	 * @return 世代
+	 */
+	public long token(String oid) {
+		return generations.get(stripe(oid));
+	}
+
+	/**
+	 * キャッシュにEntityを格納する
+	 * <p>
+	 * 世代を取得してから格納するまでに該当oidが破棄された場合、読み込んだEntityは破棄前のものの可能性があるため格納しない。
+	 * 格納済みのEntityより古いversionの場合も格納しない。
+	 * </p>
+	 *
+	 * @param entity Entity
+	 * @param op Entityのload時のオプション
+	 * @param token 読込前に{@link #token(String)}で取得した世代
+	 * @return 格納した場合true
+	 */
+	public boolean put(Entity entity, LoadOption op, long token) {
+		Entity copied = copy(entity);
+		synchronized (entries) {
+			if (generations.get(stripe(entity.getOid())) != token) {
+				return false;
+			}
+			CacheEntry entry = entries.get(entity.getOid());
+			if (entry != null && entry.expireAt >= System.currentTimeMillis()) {
+				int compared = compareVersion(entity, entry.version);
+				if (compared < 0) {
+					return false;
+				}
+				if (compared == 0) {
+					entry.variants[variant(op)] = copied;
+					return true;
+				}
+			}
+			entry = new CacheEntry(System.currentTimeMillis() + ttlMillis, entity);
+			entry.variants[variant(op)] = copied;
+			entries.put(entity.getOid(), entry);
+			return true;
+		}
+	}
+
+	/**
+	 * 指定oidのキャッシュを破棄する
+	 * <p>
+	 * 破棄と同時に世代を進め、破棄前に読み込みを開始したEntityが格納されないようにする。
+	 * </p>
+	 *
+	 * @param oid Entityのoid
+	 */
+	public void invalidate(String oid) {
+		if (oid == null) {
+			return;
+		}
+		synchronized (entries) {
+			generations.incrementAndGet(stripe(oid));
+			entries.remove(oid);
+		}
+	}
+
+	/**
+	 * 全てのキャッシュを破棄する
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			for (int i = 0; i < GENERATION_STRIPES; i++) {
+				generations.incrementAndGet(i);
+			}
+			entries.clear();
+		}
+	}
+
+	/**
+	 * キャッシュ件数を返します。
+	 *
+	 * @return キャッシュ件数(oid単位)
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * ヒット件数を返します。
+	 *
+	 * @return ヒット件数
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * ミス件数を返します。
+	 *
+	 * @return ミス件数
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * 件数上限、有効期限による破棄件数を返します。
+	 *
+	 * @return 破棄件数
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * LoadOptionに対応する格納位置
+	 *
+	 * @param op Entityのload時のオプション
+	 * @return 格納位置
+	 */
+	private static int variant(LoadOption op) {
+		return (op.isWithReference() ? 1 : 0) | (op.isWithMappedByReference() ? 2 : 0);
+	}
+
+	/**
+	 * oidに対応する世代の位置
+	 *
+	 * @param oid Entityのoid
+	 * @return 世代の位置
+	 */
+	private static int stripe(String oid) {
+		return (oid.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+	}
+
+	/**
+	 * Entityのversionを比較する
+	 * <p>
+	 * updateDate、versionの順に比較する。値がない場合は同じとみなす。
+	 * </p>
+	 *
+	 * @param entity 格納するEntity
+	 * @param cached 格納済みEntityのversion
+	 * @return 格納するEntityが新しい場合は正、古い場合は負、同じ場合は0
+	 */
+	private static int compareVersion(Entity entity, EntityVersion cached) {
+		if (entity.getUpdateDate() != null && cached.updateDate != null) {
+			int compared = entity.getUpdateDate().compareTo(cached.updateDate);
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		if (entity.getVersion() != null && cached.version != null) {
+			return entity.getVersion().compareTo(cached.version);
+		}
+		return 0;
+	}
+
+	/**
+	 * Entityの複製
+	 * <p>
+	 * referenceのEntity、配列、日時も複製する。{@link GenericEntity}以外のEntityは複製しない。
+	 * </p>
+	 *
+	 * @param entity Entity
+	 * @param <E> Entityの型
+	 * @return 複製したEntity
+	 */
+	private static <E extends Entity> E copy(Entity entity) {
+		return ObjectUtil.cast(copyValue(entity, new IdentityHashMap<>()));
+	}
+
+	/**
+	 * 値の複製
+	 *
+	 * @param value 値
+	 * @param copied 複製済みのEntity(循環参照の検出用)
+	 * @return 複製した値、変更不可の値はそのまま
+	 */
+	private static Object copyValue(Object value, Map<Object, Object> copied) {
+		if (value instanceof GenericEntity) {
+			Object done = copied.get(value);
+			if (done != null) {
+				return done;
+			}
+			GenericEntity copy = ((GenericEntity) value).copy();
+			copied.put(value, copy);
+			for (String name : new ArrayList<>(copy.getValueNames())) {
+				Object property = copy.getValue(name);
+				Object copiedProperty = copyValue(property, copied);
+				if (copiedProperty != property) {
+					copy.setValue(name, copiedProperty);
+				}
+			}
+			return copy;
+		} else if (value instanceof Object[]) {
+			Object[] array = ((Object[]) value).clone();
+			for (int i = 0; i < array.length; i++) {
+				array[i] = copyValue(array[i], copied);
+			}
+			return array;
+		} else if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		return value;
+	}
+
+	/**
+	 * キャッシュエントリ
+	 */
+	private static class CacheEntry {
+
+		/** 有効期限 */
+		private final long expireAt;
+		/** 保持しているEntityのversion */
+		private final EntityVersion version;
+		/** LoadOption毎のEntity */
+		private final Entity[] variants = new Entity[4];
+
+		CacheEntry(long expireAt, Entity entity) {
+			this.expireAt = expireAt;
+			this.version = new EntityVersion(entity);
+		}
+	}
+
+	/**
+	 * Entityのversion
+	 */
+	private static class EntityVersion {
+
+		/** 更新日時 */
+		private final Timestamp updateDate;
+		/** version */
+		private final Long version;
+
+		EntityVersion(Entity entity) {
+			this.updateDate = entity.getUpdateDate();
+			this.version = entity.getVersion();
+		}
+	}
+}
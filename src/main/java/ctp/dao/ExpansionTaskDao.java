@@ -0,0 +1,157 @@
+package ctp.dao;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.iplass.mtp.ManagerLocator;
+import org.iplass.mtp.definition.DefinitionModifyResult;
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.entity.definition.EntityDefinition;
+import org.iplass.mtp.entity.definition.EntityDefinitionManager;
+import org.iplass.mtp.entity.definition.PropertyDefinition;
+import org.iplass.mtp.entity.definition.properties.DateProperty;
+import org.iplass.mtp.entity.definition.properties.IntegerProperty;
+import org.iplass.mtp.entity.definition.properties.StringProperty;
+import org.iplass.mtp.entity.query.Query;
+import org.iplass.mtp.entity.query.condition.predicate.In;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.util.ContextPropagation;
+
+/**
+ * 定期予約展開タスクDao
+ * <p>
+ * 展開タスクの進捗を保持するEntity({@value #DEFINITION_NAME})を操作する。
+ * Entityはテナント毎に保持されるため、検索、ロードは現在のテナントのタスクのみを対象とする。<br>
+ * 進捗のみを保持するEntityのため、Entityクラスは生成せず{@link GenericEntity}で扱う。
+ * </p>
+ * <p>
+ * Entity定義のプロパティ
+ * </p>
+ * <ul>
+ * <li>{@value #FROM_DATE}、{@value #TO_DATE}:Date
+ * <li>{@value #CHUNK_DAYS}、{@value #PARALLELISM}、{@value #CHUNKS_DONE}、{@value #ROWS_WRITTEN}、{@value #ELAPSED_MILLIS}:Integer
+ * <li>{@value #STATUS}、{@value #ERROR_MESSAGE}、{@value #OWNER}:String
+ * </ul>
+ * <p>
+ * Entity定義は{@link #createDefinition()}で生成する。{@link #ensureDefinition()}は現在のテナントに定義がない場合に作成する。
+ * </p>
+ */
+public class ExpansionTaskDao extends Dao<GenericEntity> {
+
+	/** EntityのdefinitionName */
+	public static final String DEFINITION_NAME = "ctp.transaction.expansionTask";
+	/** 開始日 */
+	public static final String FROM_DATE = "fromDate";
+	/** 終了日(この日を含む) */
+	public static final String TO_DATE = "toDate";
+	/** チャンクの日数 */
+	public static final String CHUNK_DAYS = "chunkDays";
+	/** 並列数 */
+	public static final String PARALLELISM = "parallelism";
+	/** 状態 */
+	public static final String STATUS = "status";
+	/** 完了したチャンク数 */
+	public static final String CHUNKS_DONE = "chunksDone";
+	/** 登録・更新件数 */
+	public static final String ROWS_WRITTEN = "rowsWritten";
+	/** 処理時間(ミリ秒) */
+	public static final String ELAPSED_MILLIS = "elapsedMillis";
+	/** 失敗時のエラーメッセージ */
+	public static final String ERROR_MESSAGE = "errorMessage";
+	/** 実行中の処理の識別子 */
+	public static final String OWNER = "owner";
+
+	/** 全プロパティ */
+	public static final String[] PROPERTIES = { FROM_DATE, TO_DATE, CHUNK_DAYS, PARALLELISM, STATUS, CHUNKS_DONE,
+			ROWS_WRITTEN, ELAPSED_MILLIS, ERROR_MESSAGE, OWNER };
+
+	private static final Logger logger = LoggerFactory.getLogger(ExpansionTaskDao.class);
+
+	/** Entity定義を確認済みのテナントID */
+	private static final Set<Integer> definedTenants = ConcurrentHashMap.newKeySet();
+
+	/** Entity定義を作成するか(EntityManagerを指定した場合は作成しない) */
+	private final boolean managesDefinition;
+
+	public ExpansionTaskDao() {
+		super(DEFINITION_NAME);
+		this.managesDefinition = true;
+	}
+
+	public ExpansionTaskDao(EntityManager em) {
+		super(DEFINITION_NAME, em);
+		this.managesDefinition = false;
+	}
+
+	/**
+	 * Entity定義を生成する
+	 * <p>
+	 * プロパティは{@link #PROPERTIES}と同じ。全て多重度1、任意入力。
+	 * </p>
+	 *
+	 * @return Entity定義
+	 */
+	public static EntityDefinition createDefinition() {
+		EntityDefinition definition = new EntityDefinition();
+		definition.setName(DEFINITION_NAME);
+		definition.setDisplayName("定期予約展開タスク");
+		definition.addProperty(property(new DateProperty(), FROM_DATE, "開始日"));
+		definition.addProperty(property(new DateProperty(), TO_DATE, "終了日"));
+		definition.addProperty(property(new IntegerProperty(), CHUNK_DAYS, "チャンクの日数"));
+		definition.addProperty(property(new IntegerProperty(), PARALLELISM, "並列数"));
+		definition.addProperty(property(new StringProperty(), STATUS, "状態"));
+		definition.addProperty(property(new IntegerProperty(), CHUNKS_DONE, "完了したチャンク数"));
+		definition.addProperty(property(new IntegerProperty(), ROWS_WRITTEN, "登録・更新件数"));
+		definition.addProperty(property(new IntegerProperty(), ELAPSED_MILLIS, "処理時間(ミリ秒)"));
+		definition.addProperty(property(new StringProperty(), ERROR_MESSAGE, "エラーメッセージ"));
+		definition.addProperty(property(new StringProperty(), OWNER, "実行中の処理の識別子"));
+		return definition;
+	}
+
+	/**
+	 * 現在のテナントにEntity定義がない場合は作成する
+	 * <p>
+	 * テナント毎に初回のみ確認する。EntityManagerを指定して生成した場合(テストなど)は何もしない。
+	 * </p>
+	 *
+	 * @throws IllegalStateException Entity定義の作成に失敗した場合
+	 */
+	public void ensureDefinition() {
+		if (!managesDefinition || definedTenants.contains(ContextPropagation.currentTenantId())) {
+			return;
+		}
+		EntityDefinitionManager edm = ManagerLocator.getInstance().getManager(EntityDefinitionManager.class);
+		if (edm.get(DEFINITION_NAME) == null) {
+			DefinitionModifyResult result = edm.create(createDefinition());
+			if (!result.isSuccess()) {
+				throw new IllegalStateException("failed to create entity definition " + DEFINITION_NAME + ". " + result.getMessage());
+			}
+			logger.info("entity definition created. {}", DEFINITION_NAME);
+		}
+		definedTenants.add(ContextPropagation.currentTenantId());
+	}
+
+	private static PropertyDefinition property(PropertyDefinition property, String name, String displayName) {
+		property.setName(name);
+		property.setDisplayName(displayName);
+		property.setMultiplicity(1);
+		return property;
+	}
+
+	/**
+	 * 指定した状態のタスクを検索する
+	 * 
+	 * @param statuses 状態
+	 * @return タスクリスト
+	 */
+	public List<GenericEntity> findByStatus(String... statuses) {
+		Query query = new Query();
+		query.select((Object[]) PROPERTIES);
+		query.where(new In(STATUS, (Object[]) statuses));
+		return search(query);
+	}
+}
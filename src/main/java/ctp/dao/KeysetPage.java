@@ -0,0 +1,125 @@
+package ctp.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.iplass.mtp.entity.Entity;
+
+/**
+ * キーセットページングの検索結果
+ * <p>
+ * 1ページ分の結果と、次ページを取得するための継続トークンを保持する。<br>
+ * 継続トークンはページ末尾の(ソートキー, oid)を符号化したもので、
+ * 次ページは「そのキーより後」を条件として検索するため、ページの深さに関わらず一定の検索コストとなる。
+ * </p>
+ *
+ * @author lis93e
+ * @param <E> Entityを継承したクラス
+ */
+public class KeysetPage<E extends Entity> {
+
+	/** トークン内の区切り文字 */
+	private static final char SEPARATOR = ':';
+
+	/** ページ内容 */
+	private final List<E> list;
+	/** 次ページの継続トークン */
+	private final String nextToken;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param list ページ内容
+	 * @param nextToken 次ページの継続トークン、最終ページの場合はnull
+	 */
+	public KeysetPage(List<E> list, String nextToken) {
+		this.list = Collections.unmodifiableList(list);
+		this.nextToken = nextToken;
+	}
+
+	/**
+	 * ページ内容を返します。
+	 *
+	 * @return ページ内容
+	 */
+	public List<E> getList() {
+		return list;
+	}
+
+	/**
+	 * 次ページの継続トークンを返します。
+	 *
+	 * @return 継続トークン、最終ページの場合はnull
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	/**
+	 * 次ページが存在するかを返します。
+	 *
+	 * @return 次ページあり=true
+	 */
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+	/**
+	 * 継続トークンを生成する
+	 *
+	 * @param sortKey ソートキー(エポックミリ秒など)
+	 * @param oid oid
+	 * @return 継続トークン
+	 */
+	public static String encodeToken(long sortKey, String oid) {
+		String raw = Long.toString(sortKey) + SEPARATOR + oid;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 継続トークンのソートキーを返す
+	 *
+	 * @param token 継続トークン
+	 * @return ソートキー
+	 */
+	public static long decodeSortKey(String token) {
+		String raw = decode(token);
+		try {
+			return Long.parseLong(raw.substring(0, raw.indexOf(SEPARATOR)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid continuation token: " + token, e);
+		}
+	}
+
+	/**
+	 * 継続トークンのoidを返す
+	 *
+	 * @param token 継続トークン
+	 * @return oid
+	 */
+	public static String decodeOid(String token) {
+		String raw = decode(token);
+		return raw.substring(raw.indexOf(SEPARATOR) + 1);
+	}
+
+	/**
+	 * 継続トークンの復号
+	 *
+	 * @param token 継続トークン
+	 * @return 復号した文字列
+	 */
+	private static String decode(String token) {
+		String raw;
+		try {
+			raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid continuation token: " + token, e);
+		}
+		if (raw.indexOf(SEPARATOR) <= 0) {
+			throw new IllegalArgumentException("invalid continuation token: " + token);
+		}
+		return raw;
+	}
+}
@@ -0,0 +1,128 @@
+package ctp.dao;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 操作単位の計測値
+ * <p>
+ * 処理時間はナノ秒を2のべき乗で区切ったバケットのヒストグラムとして保持する。<br>
+ * 記録処理は配列、カウンタの加算のみでオブジェクトを生成しない。
+ * </p>
+ *
+ * @author lis93e
+ */
+final class OperationStats {
+
+	/** バケット数(2^40ナノ秒≒18分までを区別する) */
+	static final int BUCKET_COUNT = 41;
+
+	/** 処理時間ヒストグラム */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	/** 実行回数 */
+	private final LongAdder count = new LongAdder();
+	/** 処理件数 */
+	private final LongAdder rows = new LongAdder();
+	/** 合計処理時間(ナノ秒) */
+	private final LongAdder totalNanos = new LongAdder();
+	/** 最大処理時間(ナノ秒) */
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+	/**
+	 * 計測値を記録する
+	 *
+	 * @param nanos 処理時間(ナノ秒)
+	 * @param rowCount 処理件数
+	 */
+	void record(long nanos, long rowCount) {
+		long n = nanos > 0 ? nanos : 1;
+		int bucket = Math.min(63 - Long.numberOfLeadingZeros(n), BUCKET_COUNT - 1);
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalNanos.add(n);
+		maxNanos.accumulate(n);
+		if (rowCount > 0) {
+			rows.add(rowCount);
+		}
+	}
+
+	/**
+	 * 実行回数を返します。
+	 *
+	 * @return 実行回数
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 処理件数を返します。
+	 *
+	 * @return 処理件数
+	 */
+	long getRows() {
+		return rows.sum();
+	}
+
+	/**
+	 * 合計処理時間を返します。
+	 *
+	 * @return 合計処理時間(ナノ秒)
+	 */
+	long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * 最大処理時間を返します。
+	 *
+	 * @return 最大処理時間(ナノ秒)
+	 */
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * パーセンタイル値を返します。
+	 * <p>
+	 * 該当バケットの上限値を返すため、最大で2倍程度の誤差を含む。
+	 * </p>
+	 *
+	 * @param percentile パーセンタイル(0～100)
+	 * @return 処理時間(ナノ秒)
+	 */
+	long getPercentileNanos(double percentile) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(total * percentile / 100d);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= threshold) {
+				return Math.min((1L << (i + 1)) - 1, getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	 * 計測値を初期化する
+	 */
+	void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		rows.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+}
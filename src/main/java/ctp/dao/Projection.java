@@ -0,0 +1,107 @@
+package ctp.dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * 検索結果の射影定義
+ * <p>
+ * select句のプロパティと、その並び順と同じ引数を持つクラスのコンストラクタを対応付ける。<br>
+ * コンストラクタは生成時に一度だけ解決しておき、検索結果の1行(Object[])から直接インスタンスを生成する。
+ * {@link org.iplass.mtp.entity.GenericEntity}を経由しないため、一覧表示など列数の少ない検索で利用する。
+ * </p>
+ * <p>
+ * 値は型変換を行わずにコンストラクタへ渡すため、引数の型はEntityのプロパティ型
+ * (日時はTimestamp、選択値はSelectValue、参照はEntityなど)に合わせること。
+ * </p>
+ *
+ * @author lis93e
+ * @param <T> 射影先のクラス
+ */
+public final class Projection<T> {
+
+	/** select句のプロパティ */
+	private final String[] properties;
+	/** コンストラクタ((Object[])Object) */
+	private final MethodHandle constructor;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param properties select句のプロパティ
+	 * @param constructor コンストラクタ
+	 */
+	private Projection(String[] properties, MethodHandle constructor) {
+		this.properties = properties;
+		this.constructor = constructor;
+	}
+
+	/**
+	 * 射影定義を生成する
+	 * <p>
+	 * 引数の数がプロパティ数と一致するpublicコンストラクタが1つだけ存在すること。
+	 * </p>
+	 *
+	 * @param type 射影先のクラス
+	 * @param properties select句のプロパティ(コンストラクタ引数の順)
+	 * @param <T> 射影先のクラス
+	 * @return 射影定義
+	 */
+	public static <T> Projection<T> of(Class<T> type, String... properties) {
+		if (properties == null || properties.length == 0) {
+			throw new IllegalArgumentException("properties is empty.");
+		}
+
+		Constructor<?> target = null;
+		for (Constructor<?> c : type.getConstructors()) {
+			if (c.getParameterCount() == properties.length) {
+				if (target != null) {
+					throw new IllegalArgumentException(type.getName() + " has ambiguous constructors for " + Arrays.toString(properties));
+				}
+				target = c;
+			}
+		}
+		if (target == null || Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException(type.getName() + " has no public constructor for " + Arrays.toString(properties));
+		}
+
+		try {
+			MethodHandle mh = MethodHandles.publicLookup().unreflectConstructor(target)
+					.asSpreader(Object[].class, properties.length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+			return new Projection<>(properties.clone(), mh);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(type.getName() + " constructor is not accessible.", e);
+		}
+	}
+
+	/**
+	 * select句のプロパティを返します。
+	 *
+	 * @return select句のプロパティ
+	 */
+	public String[] getProperties() {
+		return properties.clone();
+	}
+
+	/**
+	 * 検索結果の1行からインスタンスを生成する
+	 *
+	 * @param row 検索結果の1行(select句の順)
+	 * @return 生成したインスタンス
+	 */
+	@SuppressWarnings("unchecked")
+	public T map(Object[] row) {
+		try {
+			return (T) (Object) constructor.invokeExact(row);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("failed to create projection: " + Arrays.toString(properties), e);
+		}
+	}
+}
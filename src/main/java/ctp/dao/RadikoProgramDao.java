@@ -1,20 +1,52 @@
 package ctp.dao;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.SelectValue;
 import org.iplass.mtp.entity.query.Query;
+import org.iplass.mtp.entity.query.SortSpec;
+import org.iplass.mtp.entity.query.SortSpec.SortType;
+import org.iplass.mtp.entity.query.condition.Condition;
+import org.iplass.mtp.entity.query.condition.expr.And;
+import org.iplass.mtp.entity.query.condition.expr.Or;
 import org.iplass.mtp.entity.query.condition.predicate.Between;
+import org.iplass.mtp.entity.query.condition.predicate.Equals;
+import org.iplass.mtp.entity.query.condition.predicate.Greater;
 
 import ctp.entity.RadikoProgram;
 
 
 public class RadikoProgramDao extends Dao<RadikoProgram> {
 
+	public RadikoProgramDao() {
+		super(RadikoProgram.DEFINITION_NAME);
+	}
+
 	protected RadikoProgramDao(String defName) {
 		super(RadikoProgram.DEFINITION_NAME);
 	}
 
+	public RadikoProgramDao(EntityManager em) {
+		super(RadikoProgram.DEFINITION_NAME, em);
+	}
+
+	@Override
+	protected String[] trackedProperties() {
+		return new String[] { RadikoProgram.PARENT_SCHEDULE, RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME,
+				RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE,
+				RadikoProgram.LISTEN_STATUS };
+	}
+
 	/**
 	 * 指定期間内に予約したラジオ番組を検索する
 	 * 
@@ -38,4 +70,347 @@ public class RadikoProgramDao extends Dao<RadikoProgram> {
 		return search(query);
 	}
 
+	/**
+	 * 指定期間内に予約したラジオ番組を検索する(ラジオ局付き)
+	 * <p>
+	 * ラジオ局はoidのみ取得し、略称、局名はスナップショットから設定するため、ラジオ局の参照先は検索しない。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param stations
+	 *            ラジオ局のスナップショット
+	 * @return 予約したラジオ番組リスト
+	 */
+	public List<RadikoProgram> findBetweenStartDate(Timestamp fromDate, Timestamp toDate, RadikoStationSnapshot stations) {
+		Query query = new Query();
+		query.select(RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME, RadikoProgram.START_DATETIME,
+				RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS)
+				.where(new Between(RadikoProgram.START_DATETIME, fromDate, toDate));
+		List<RadikoProgram> list = search(query);
+		stations.hydrate(list);
+		return list;
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を検索する(参照解決)
+	 * <p>
+	 * ラジオ局、スケジュール設定はoidのみ取得し、{@link ReferenceResolver}で参照先をまとめて取得して設定する。
+	 * 検索回数は番組の件数に関わらず、番組の検索1回と参照先のEntity定義毎に1回となる。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param resolver
+	 *            参照の解決({@link RadikoProgram#RADIKO_STATION}、{@link RadikoProgram#PARENT_SCHEDULE}を登録したもの)
+	 * @return 予約したラジオ番組リスト
+	 */
+	public List<RadikoProgram> findBetweenStartDate(Timestamp fromDate, Timestamp toDate, ReferenceResolver resolver) {
+		Query query = new Query();
+		query.select(RadikoProgram.PARENT_SCHEDULE, RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME,
+				RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE,
+				RadikoProgram.LISTEN_STATUS)
+				.where(new Between(RadikoProgram.START_DATETIME, fromDate, toDate));
+		List<RadikoProgram> list = search(query);
+		resolver.resolve(list);
+		return list;
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を並列に検索する
+	 * <p>
+	 * 期間を{@link #setSearchParallelism(int)}の分割数に等分して並列に検索する。結果は(開始日時, oid)の昇順となる。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @return 予約したラジオ番組リスト
+	 * @see #searchParallel(java.util.function.Function, String, Timestamp, Timestamp)
+	 */
+	public List<RadikoProgram> findBetweenStartDateParallel(Timestamp fromDate, Timestamp toDate) {
+		return searchParallel(range -> new Query()
+				.select(RadikoProgram.PROGRAM_NAME, RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL,
+						RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS)
+				.where(range)
+				.order(new SortSpec(RadikoProgram.START_DATETIME, SortType.ASC), new SortSpec(Entity.OID, SortType.ASC)),
+				RadikoProgram.START_DATETIME, fromDate, toDate);
+	}
+
+	/**
+	 * ラジオ局、期間を指定してラジオ番組を順に取得する
+	 * <p>
+	 * 全プロパティ(参照はoidのみ)を取得し、結果をListに保持せず1件ずつcallbackに渡す。
+	 * </p>
+	 * 
+	 * @param stationOid
+	 *            ラジオ局のoid
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param callback
+	 *            1件ごとの処理、falseを返した時点で打ち切る
+	 */
+	public void findByStationAndStartDate(String stationOid, Timestamp fromDate, Timestamp toDate,
+			Predicate<RadikoProgram> callback) {
+		Query query = new Query();
+		query.select(RadikoProgram.PARENT_SCHEDULE, RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME,
+				RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE,
+				RadikoProgram.LISTEN_STATUS)
+				.where(new And(new Equals(RadikoProgram.RADIKO_STATION + DOT + Entity.OID, stationOid),
+						new Between(RadikoProgram.START_DATETIME, fromDate, toDate)));
+		searchEntity(query, callback);
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を検索する(射影)
+	 * <p>
+	 * 番組Entityを生成せず、射影定義のプロパティのみを取得して射影先のクラスに詰める。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param projection
+	 *            射影定義
+	 * @param <T>
+	 *            射影先のクラス
+	 * @return 予約したラジオ番組リスト
+	 */
+	public <T> List<T> findBetweenStartDate(Timestamp fromDate, Timestamp toDate, Projection<T> projection) {
+		Query query = new Query().where(new Between(RadikoProgram.START_DATETIME, fromDate, toDate));
+		return searchProjection(query, projection);
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を検索する(キーセットページング)
+	 * <p>
+	 * (開始日時, oid)の昇順で1ページ分を取得する。
+	 * 継続トークンを指定した場合はそのキーより後から取得するため、ページの深さに関わらず検索コストは一定となる。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param continuationToken
+	 *            前ページの{@link KeysetPage#getNextToken()}、先頭ページの場合はnull
+	 * @param pageSize
+	 *            1ページの件数
+	 * @return 予約したラジオ番組の1ページ分
+	 */
+	public KeysetPage<RadikoProgram> findBetweenStartDate(Timestamp fromDate, Timestamp toDate, String continuationToken,
+			int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+
+		Condition condition = new Between(RadikoProgram.START_DATETIME, fromDate, toDate);
+		if (continuationToken != null) {
+			Timestamp lastStart = new Timestamp(KeysetPage.decodeSortKey(continuationToken));
+			String lastOid = KeysetPage.decodeOid(continuationToken);
+			condition = new And(condition,
+					new Or(new Greater(RadikoProgram.START_DATETIME, lastStart),
+							new And(new Equals(RadikoProgram.START_DATETIME, lastStart), new Greater(Entity.OID, lastOid))));
+		}
+
+		Query query = new Query();
+		query.select(RadikoProgram.PROGRAM_NAME, RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL,
+				RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS)
+				.where(condition)
+				.order(new SortSpec(RadikoProgram.START_DATETIME, SortType.ASC), new SortSpec(Entity.OID, SortType.ASC))
+				// 次ページの有無を判定するため1件多く取得する
+				.limit(pageSize + 1);
+		List<RadikoProgram> list = search(query);
+
+		if (list.size() <= pageSize) {
+			return new KeysetPage<>(list, null);
+		}
+		List<RadikoProgram> page = list.subList(0, pageSize);
+		RadikoProgram last = page.get(pageSize - 1);
+		return new KeysetPage<>(page, KeysetPage.encodeToken(last.getStartDatetime().getTime(), last.getOid()));
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を順に取得する
+	 * <p>
+	 * {@link #findBetweenStartDate(Timestamp, Timestamp, String, int)}でページ単位に取得しながら1件ずつ返す。
+	 * 保持するのは1ページ分のみとなる。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param pageSize
+	 *            1回の検索で取得する件数
+	 * @return 予約したラジオ番組のIterator
+	 */
+	public Iterator<RadikoProgram> iterateBetweenStartDate(Timestamp fromDate, Timestamp toDate, int pageSize) {
+		return new Iterator<RadikoProgram>() {
+			private Iterator<RadikoProgram> current = Collections.emptyIterator();
+			private String token = null;
+			private boolean last = false;
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && !last) {
+					KeysetPage<RadikoProgram> page = findBetweenStartDate(fromDate, toDate, token, pageSize);
+					current = page.getList().iterator();
+					token = page.getNextToken();
+					last = !page.hasNext();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public RadikoProgram next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+
+	/**
+	 * 指定期間内に予約したラジオ番組を検索する(開始日時インデックス利用)
+	 * <p>
+	 * インデックスで該当する番組のoidを求め、{@link #loadAll(java.util.Collection)}で取得する。
+	 * 結果は開始日時の昇順となる。
+	 * </p>
+	 * <p>
+	 * インデックスが最新の状態でない場合、fallbackToDatabaseがtrueであれば{@link #findBetweenStartDate(Timestamp, Timestamp)}で
+	 * DBを検索し、falseであれば{@link IllegalStateException}をスローする。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日
+	 * @param toDate
+	 *            終了日
+	 * @param index
+	 *            開始日時インデックス
+	 * @param fallbackToDatabase
+	 *            インデックスが最新の状態でない場合にDBを検索するか
+	 * @return 予約したラジオ番組リスト
+	 */
+	public List<RadikoProgram> findBetweenStartDate(Timestamp fromDate, Timestamp toDate, RadikoProgramStartIndex index,
+			boolean fallbackToDatabase) {
+		List<String> oids = index.findOids(fromDate, toDate);
+		if (oids == null) {
+			if (!fallbackToDatabase) {
+				throw new IllegalStateException("start index is not ready.");
+			}
+			return findBetweenStartDate(fromDate, toDate);
+		}
+		return new ArrayList<>(loadAll(oids).values());
+	}
+
+	/**
+	 * 全てのラジオ番組のoidと開始日時を順に取得する
+	 * <p>
+	 * (開始日時, oid)の昇順で、結果をListに保持せず1件ずつcallbackに渡す。{@link RadikoProgramStartIndex}の構築用。
+	 * </p>
+	 * 
+	 * @param callback
+	 *            1件ごとの処理(oid, 開始日時)、falseを返した時点で打ち切る
+	 */
+	public void scanStartDatetime(BiPredicate<String, Timestamp> callback) {
+		Query query = new Query();
+		query.select(Entity.OID, RadikoProgram.START_DATETIME)
+				.order(new SortSpec(RadikoProgram.START_DATETIME, SortType.ASC), new SortSpec(Entity.OID, SortType.ASC));
+		search2(query, DEFAULT_FETCH_SIZE, row -> callback.test((String) row[0], (Timestamp) row[1]));
+	}
+
+	/**
+	 * 視聴期限が指定期間内のラジオ番組のoid、視聴期限、視聴ステータスを順に取得する
+	 * <p>
+	 * 結果をListに保持せず1件ずつcallbackに渡す。{@link ctp.service.DeadlineProcessor}の構築用。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日時
+	 * @param toDate
+	 *            終了日時
+	 * @param callback
+	 *            1件ごとの処理({oid, 視聴期限, 視聴ステータス})、falseを返した時点で打ち切る
+	 */
+	public void scanDeadlineBetween(Timestamp fromDate, Timestamp toDate, Predicate<Object[]> callback) {
+		Query query = new Query();
+		query.select(Entity.OID, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS)
+				.where(new Between(RadikoProgram.DEADLINE, fromDate, toDate));
+		search2(query, DEFAULT_FETCH_SIZE, callback);
+	}
+
+	/**
+	 * 全てのラジオ番組を順に取得する
+	 * <p>
+	 * 指定したプロパティ(参照はoidのみ)を取得し、結果をListに保持せず1件ずつcallbackに渡す。
+	 * </p>
+	 * 
+	 * @param callback
+	 *            1件ごとの処理、falseを返した時点で打ち切る
+	 * @param properties
+	 *            取得するプロパティ
+	 */
+	public void scanAll(Predicate<RadikoProgram> callback, String... properties) {
+		Query query = new Query();
+		query.select((Object[]) properties);
+		searchEntity(query, DEFAULT_FETCH_SIZE, callback);
+	}
+
+	/**
+	 * 開始日時が指定期間内のラジオ番組の指定プロパティを順に取得する
+	 * <p>
+	 * (開始日時, oid)の昇順で、結果をListに保持せず1件ずつcallbackに渡す。エクスポート用。
+	 * </p>
+	 * 
+	 * @param fromDate
+	 *            開始日時(nullの場合は期間を指定しない)
+	 * @param toDate
+	 *            終了日時(nullの場合は期間を指定しない)
+	 * @param callback
+	 *            1件ごとの処理(プロパティの値の配列)、falseを返した時点で打ち切る
+	 * @param properties
+	 *            取得するプロパティ(参照先のプロパティはドット区切り)
+	 */
+	public void scanBetweenStartDate(Timestamp fromDate, Timestamp toDate, Predicate<Object[]> callback,
+			String... properties) {
+		Query query = new Query();
+		query.select((Object[]) properties)
+				.order(new SortSpec(RadikoProgram.START_DATETIME, SortType.ASC), new SortSpec(Entity.OID, SortType.ASC));
+		if (fromDate != null && toDate != null) {
+			query.where(new Between(RadikoProgram.START_DATETIME, fromDate, toDate));
+		}
+		search2(query, DEFAULT_FETCH_SIZE, callback);
+	}
+
+	/**
+	 * 視聴ステータスを更新する
+	 * <p>
+	 * 悲観ロックを取得せず、楽観ロック(他の処理と競合した場合はリトライ)で更新する。
+	 * </p>
+	 * 
+	 * @param oid
+	 *            ラジオ番組のoid
+	 * @param listenStatus
+	 *            視聴ステータス
+	 * @return 更新したラジオ番組、存在しない場合または同じ視聴ステータスの場合はnull
+	 */
+	public RadikoProgram updateListenStatus(String oid, SelectValue listenStatus) {
+		return updateIfVersion(oid, Collections.singletonList(RadikoProgram.LISTEN_STATUS), program -> {
+			if (Objects.equals(program.getListenStatus(), listenStatus)) {
+				return false;
+			}
+			program.setListenStatus(listenStatus);
+			return true;
+		});
+	}
 }
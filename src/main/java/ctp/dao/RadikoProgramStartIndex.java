@@ -0,0 +1,375 @@
+package ctp.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ctp.entity.RadikoProgram;
+
+/**
+ * 番組の開始日時インデックス
+ * <p>
+ * 番組の開始日時(エポックミリ秒)の昇順に並べたlong配列と、同じ位置に番組のoidを保持する。
+ * 期間検索は二分探索で開始位置を求め、配列を順に走査して該当するoidを返す。
+ * </p>
+ * <p>
+ * {@link #create(RadikoProgramDao)}で生成すると{@link DaoWriteListener}として登録され、
+ * Daoを経由した番組の登録、開始日時の更新、削除を順次反映する。
+ * Daoを経由しない更新、開始日時の条件指定の更新({@link Dao#updateAll(List, org.iplass.mtp.entity.query.Where)})があった場合は
+ * 最新ではない状態となり、{@link #rebuild(RadikoProgramDao)}で再構築するまで検索結果を返さない。
+ * DBへの切り替えは呼び出し側で明示的に行うこと({@link RadikoProgramDao#findBetweenStartDate(Timestamp, Timestamp, RadikoProgramStartIndex, boolean)})。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class RadikoProgramStartIndex implements DaoWriteListener<RadikoProgram> {
+
+	/** 初期容量 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** 配列、状態の更新用ロック */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** 開始日時(昇順) */
+	private long[] starts = new long[INITIAL_CAPACITY];
+	/** 開始日時と同じ位置の番組oid */
+	private String[] oids = new String[INITIAL_CAPACITY];
+	/** 保持件数 */
+	private int size;
+	/** oid -> 開始日時 */
+	private Map<String, Long> startByOid = new HashMap<>();
+	/** 最新の状態か */
+	private boolean ready;
+	/** 再構築中に受けた通知(再構築中以外はnull) */
+	private List<Runnable> pendingEvents;
+
+	/**
+	 * コンストラクタ
+	 */
+	protected RadikoProgramStartIndex() {
+	}
+
+	/**
+	 * インデックスを生成する
+	 * <p>
+	 * 更新通知リスナーとして登録した後、DBから全番組の開始日時を読み込む。
+	 * </p>
+	 *
+	 * @param dao 番組Dao
+	 * @return インデックス
+	 */
+	public static RadikoProgramStartIndex create(RadikoProgramDao dao) {
+		RadikoProgramStartIndex index = new RadikoProgramStartIndex();
+		DaoWriteListeners.add(RadikoProgram.DEFINITION_NAME, index);
+		index.rebuild(dao);
+		return index;
+	}
+
+	/**
+	 * 更新通知リスナーの登録を解除する
+	 * <p>
+	 * 以降は最新ではない状態となる。
+	 * </p>
+	 */
+	public void close() {
+		DaoWriteListeners.remove(RadikoProgram.DEFINITION_NAME, this);
+		lock.writeLock().lock();
+		try {
+			ready = false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * DBから全番組の開始日時を読み込み、インデックスを再構築する
+	 * <p>
+	 * 読み込み中にDaoから受けた通知は、読み込み完了後に反映する。
+	 * </p>
+	 *
+	 * @param dao 番組Dao
+	 */
+	public void rebuild(RadikoProgramDao dao) {
+		lock.writeLock().lock();
+		try {
+			ready = false;
+			pendingEvents = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		Loader loader = new Loader();
+		try {
+			dao.scanStartDatetime(loader::add);
+		} catch (RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				pendingEvents = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			throw e;
+		}
+
+		lock.writeLock().lock();
+		try {
+			starts = loader.starts;
+			oids = loader.oids;
+			size = loader.size;
+			startByOid = loader.startByOid;
+			if (!isSorted()) {
+				sort();
+			}
+			for (Runnable event : pendingEvents) {
+				event.run();
+			}
+			pendingEvents = null;
+			ready = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 最新の状態かを返します。
+	 *
+	 * @return 検索可能な場合true
+	 */
+	public boolean isReady() {
+		lock.readLock().lock();
+		try {
+			return ready;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 保持件数を返します。
+	 *
+	 * @return 保持件数
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 指定期間内に開始する番組のoidを返します。
+	 *
+	 * @param fromDate 開始日(この日時を含む)
+	 * @param toDate 終了日(この日時を含む)
+	 * @return 開始日時、oidの昇順のoidリスト、最新の状態でない場合はnull
+	 */
+	public List<String> findOids(Timestamp fromDate, Timestamp toDate) {
+		long from = fromDate.getTime();
+		long to = toDate.getTime();
+		lock.readLock().lock();
+		try {
+			if (!ready) {
+				return null;
+			}
+			if (from > to) {
+				return Collections.emptyList();
+			}
+			List<String> list = new ArrayList<>();
+			for (int i = lowerBound(from); i < size && starts[i] <= to; i++) {
+				list.add(oids[i]);
+			}
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void inserted(RadikoProgram entity) {
+		String oid = entity.getOid();
+		Timestamp start = entity.getStartDatetime();
+		apply(() -> put(oid, start));
+	}
+
+	@Override
+	public void updated(RadikoProgram entity, List<String> updateProperties) {
+		if (updateProperties == null || !updateProperties.contains(RadikoProgram.START_DATETIME)) {
+			return;
+		}
+		String oid = entity.getOid();
+		Timestamp start = entity.getStartDatetime();
+		apply(() -> put(oid, start));
+	}
+
+	@Override
+	public void deleted(RadikoProgram entity) {
+		String oid = entity.getOid();
+		apply(() -> remove(oid));
+	}
+
+	@Override
+	public void invalidated(List<String> updateProperties) {
+		if (!updateProperties.contains(RadikoProgram.START_DATETIME)) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			ready = false;
+			if (pendingEvents != null) {
+				// 再構築中の読み込み結果も最新とは限らないため、完了後も最新ではない状態とする
+				pendingEvents.add(() -> ready = false);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 通知を反映する
+	 * <p>
+	 * 再構築中は完了後に反映し、最新ではない状態の場合は無視する。
+	 * </p>
+	 */
+	private void apply(Runnable event) {
+		lock.writeLock().lock();
+		try {
+			if (pendingEvents != null) {
+				pendingEvents.add(event);
+			} else if (ready) {
+				event.run();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 番組を追加、または開始日時を変更する(書き込みロック取得済みであること)
+	 */
+	private void put(String oid, Timestamp start) {
+		remove(oid);
+		if (oid == null || start == null) {
+			return;
+		}
+		long value = start.getTime();
+		int pos = lowerBound(value);
+		while (pos < size && starts[pos] == value && oids[pos].compareTo(oid) < 0) {
+			pos++;
+		}
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			oids = Arrays.copyOf(oids, size * 2);
+		}
+		System.arraycopy(starts, pos, starts, pos + 1, size - pos);
+		System.arraycopy(oids, pos, oids, pos + 1, size - pos);
+		starts[pos] = value;
+		oids[pos] = oid;
+		size++;
+		startByOid.put(oid, value);
+	}
+
+	/**
+	 * 番組を削除する(書き込みロック取得済みであること)
+	 */
+	private void remove(String oid) {
+		Long value = oid != null ? startByOid.remove(oid) : null;
+		if (value == null) {
+			return;
+		}
+		for (int pos = lowerBound(value); pos < size && starts[pos] == value; pos++) {
+			if (oids[pos].equals(oid)) {
+				System.arraycopy(starts, pos + 1, starts, pos, size - pos - 1);
+				System.arraycopy(oids, pos + 1, oids, pos, size - pos - 1);
+				size--;
+				oids[size] = null;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 開始日時がvalue以上となる最初の位置を返します。
+	 */
+	private int lowerBound(long value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * (開始日時, oid)の昇順に並んでいるかを返します。
+	 */
+	private boolean isSorted() {
+		for (int i = 1; i < size; i++) {
+			if (compare(i - 1, i) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * (開始日時, oid)の昇順に並べ替える
+	 */
+	private void sort() {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, this::compare);
+		long[] sortedStarts = new long[starts.length];
+		String[] sortedOids = new String[oids.length];
+		for (int i = 0; i < size; i++) {
+			sortedStarts[i] = starts[order[i]];
+			sortedOids[i] = oids[order[i]];
+		}
+		starts = sortedStarts;
+		oids = sortedOids;
+	}
+
+	private int compare(int a, int b) {
+		int result = Long.compare(starts[a], starts[b]);
+		return result != 0 ? result : oids[a].compareTo(oids[b]);
+	}
+
+	/**
+	 * 再構築時の読み込み結果
+	 */
+	private static final class Loader {
+
+		private long[] starts = new long[INITIAL_CAPACITY];
+		private String[] oids = new String[INITIAL_CAPACITY];
+		private int size;
+		private final Map<String, Long> startByOid = new HashMap<>();
+
+		private boolean add(String oid, Timestamp start) {
+			if (oid == null || start == null) {
+				return true;
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				oids = Arrays.copyOf(oids, size * 2);
+			}
+			starts[size] = start.getTime();
+			oids[size] = oid;
+			startByOid.put(oid, starts[size]);
+			size++;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package ctp.dao;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.query.Query;
+import org.iplass.mtp.entity.query.SortSpec;
+import org.iplass.mtp.entity.query.SortSpec.SortType;
+
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+
+public class RadikoScheduleDao extends Dao<RadikoSchedule> {
+
+	public RadikoScheduleDao() {
+		super(RadikoSchedule.DEFINITION_NAME);
+	}
+
+	public RadikoScheduleDao(EntityManager em) {
+		super(RadikoSchedule.DEFINITION_NAME, em);
+	}
+
+	@Override
+	protected String[] trackedProperties() {
+		return new String[] { RadikoSchedule.STATION, RadikoSchedule.PROGRAM_NAME, RadikoSchedule.WEEK_DAY,
+				RadikoSchedule.START_TIME, RadikoSchedule.NOTES, RadikoSchedule.FAVO_RATE, RadikoSchedule.CHILD_PROGRAM };
+	}
+
+	/**
+	 * 全ての定期予約を検索する
+	 * <p>
+	 * ラジオ局は略称も合わせて取得する。
+	 * </p>
+	 * 
+	 * @return 定期予約リスト
+	 */
+	public List<RadikoSchedule> findAll() {
+		Query query = new Query();
+		query.select(RadikoSchedule.STATION, RadikoSchedule.STATION + DOT + RadikoStation.CALL_SIGN,
+				RadikoSchedule.PROGRAM_NAME, RadikoSchedule.WEEK_DAY, RadikoSchedule.START_TIME);
+		return search(query);
+	}
+
+	/**
+	 * 全ての定期予約の指定プロパティを順に取得する
+	 * <p>
+	 * oidの昇順で、結果をListに保持せず1件ずつcallbackに渡す。エクスポート用。
+	 * </p>
+	 * 
+	 * @param callback
+	 *            1件ごとの処理(プロパティの値の配列)、falseを返した時点で打ち切る
+	 * @param properties
+	 *            取得するプロパティ(参照先のプロパティはドット区切り)
+	 */
+	public void scanAll(Predicate<Object[]> callback, String... properties) {
+		Query query = new Query();
+		query.select((Object[]) properties).order(new SortSpec(Entity.OID, SortType.ASC));
+		search2(query, DEFAULT_FETCH_SIZE, callback);
+	}
+
+}
@@ -0,0 +1,36 @@
+package ctp.dao;
+
+import java.util.List;
+
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.query.Query;
+
+import ctp.entity.RadikoStation;
+
+public class RadikoStationDao extends Dao<RadikoStation> {
+
+	public RadikoStationDao() {
+		super(RadikoStation.DEFINITION_NAME);
+	}
+
+	public RadikoStationDao(EntityManager em) {
+		super(RadikoStation.DEFINITION_NAME, em);
+	}
+
+	@Override
+	protected String[] trackedProperties() {
+		return new String[] { RadikoStation.CALL_SIGN, RadikoStation.STATION_NAME };
+	}
+
+	/**
+	 * 全てのラジオ局を検索する
+	 * 
+	 * @return ラジオ局リスト
+	 */
+	public List<RadikoStation> findAll() {
+		Query query = new Query();
+		query.select(RadikoStation.CALL_SIGN, RadikoStation.STATION_NAME);
+		return search(query);
+	}
+
+}
@@ -0,0 +1,307 @@
+package ctp.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.GenericEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.util.ContextPropagation;
+import ctp.util.ObjectUtil;
+
+/**
+ * ラジオ局のスナップショット
+ * <p>
+ * 全ラジオ局をoid、略称で索引付けした変更不可のMapとして保持し、更新時は新しいMapを作成して参照を差し替える。
+ * 参照側はロックを取得せず、その時点のスナップショットを参照する。
+ * </p>
+ * <p>
+ * {@link #create(RadikoStationDao)}で生成すると{@link DaoWriteListener}として登録され、
+ * Daoを経由したラジオ局の登録、更新、削除をDB検索なしでスナップショットに反映する。
+ * Daoを経由しない更新は{@link #startRefresh(long, TimeUnit)}で指定した間隔、または{@link #refresh()}でDBから読み込み直す。
+ * </p>
+ * <p>
+ * 返すラジオ局はスナップショットのコピーのため、変更してもスナップショットには影響しない。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class RadikoStationSnapshot implements DaoWriteListener<RadikoStation> {
+
+	private static final Logger logger = LoggerFactory.getLogger(RadikoStationSnapshot.class);
+
+	/** 読み込み中の更新と競合した場合の読み込み回数の上限 */
+	private static final int MAX_REFRESH_ATTEMPTS = 3;
+
+	/** ラジオ局Dao */
+	private final RadikoStationDao dao;
+	/** 現在のスナップショット */
+	private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(Collections.emptyMap()));
+	/** 定期読み込み */
+	private ScheduledExecutorService executor;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao ラジオ局Dao
+	 */
+	protected RadikoStationSnapshot(RadikoStationDao dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * スナップショットを生成する
+	 * <p>
+	 * 更新通知リスナーとして登録した後、DBから全ラジオ局を読み込む。
+	 * </p>
+	 *
+	 * @param dao ラジオ局Dao
+	 * @return スナップショット
+	 */
+	public static RadikoStationSnapshot create(RadikoStationDao dao) {
+		RadikoStationSnapshot snapshot = new RadikoStationSnapshot(dao);
+		DaoWriteListeners.add(RadikoStation.DEFINITION_NAME, snapshot);
+		snapshot.refresh();
+		return snapshot;
+	}
+
+	/**
+	 * 指定間隔でのDBからの読み込みを開始する
+	 * <p>
+	 * 呼び出し元の実行コンテキストで実行する。
+	 * </p>
+	 *
+	 * @param interval 間隔
+	 * @param unit 間隔の単位
+	 */
+	public synchronized void startRefresh(long interval, TimeUnit unit) {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ctp-station-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Runnable task = ContextPropagation.wrap(() -> {
+			try {
+				refresh();
+			} catch (RuntimeException e) {
+				logger.warn("failed to refresh station snapshot.", e);
+			}
+		});
+		executor.scheduleWithFixedDelay(task, interval, interval, unit);
+	}
+
+	/**
+	 * 更新通知リスナーの登録を解除し、定期読み込みを停止する
+	 */
+	public synchronized void close() {
+		DaoWriteListeners.remove(RadikoStation.DEFINITION_NAME, this);
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * DBから全ラジオ局を読み込み、スナップショットを差し替える
+	 * <p>
+	 * 読み込み中に更新通知を反映した場合、読み込んだ内容には通知された更新が含まれない可能性があるため差し替えずに読み込み直す。
+	 * 読み込み直しても競合する場合は、通知を反映したスナップショットを残して差し替えない。
+	 * </p>
+	 *
+	 * @return 差し替えた場合true
+	 */
+	public boolean refresh() {
+		for (int attempt = 0; attempt < MAX_REFRESH_ATTEMPTS; attempt++) {
+			Snapshot snapshot = current.get();
+			Map<String, RadikoStation> byOid = new HashMap<>();
+			for (RadikoStation station : dao.findAll()) {
+				byOid.put(station.getOid(), station);
+			}
+			if (current.compareAndSet(snapshot, new Snapshot(byOid))) {
+				return true;
+			}
+		}
+		logger.debug("station snapshot refresh skipped due to concurrent updates.");
+		return false;
+	}
+
+	/**
+	 * ラジオ局を返します。
+	 *
+	 * @param oid ラジオ局のoid
+	 * @return ラジオ局(コピー)、存在しない場合はnull
+	 */
+	public RadikoStation getByOid(String oid) {
+		return copy(current.get().byOid.get(oid));
+	}
+
+	/**
+	 * ラジオ局を返します。
+	 *
+	 * @param callSign 略称
+	 * @return ラジオ局(コピー)、存在しない場合はnull
+	 */
+	public RadikoStation getByCallSign(String callSign) {
+		return copy(current.get().byCallSign.get(callSign));
+	}
+
+	/**
+	 * 全ラジオ局を返します。
+	 *
+	 * @return ラジオ局(コピー)のリスト
+	 */
+	public List<RadikoStation> getAll() {
+		Collection<RadikoStation> stations = current.get().byOid.values();
+		List<RadikoStation> list = new ArrayList<>(stations.size());
+		for (RadikoStation station : stations) {
+			list.add(copy(station));
+		}
+		return list;
+	}
+
+	/**
+	 * 保持しているラジオ局数を返します。
+	 *
+	 * @return ラジオ局数
+	 */
+	public int size() {
+		return current.get().byOid.size();
+	}
+
+	/**
+	 * 番組のラジオ局参照をスナップショットのラジオ局に置き換える
+	 * <p>
+	 * oidのみ設定された参照に略称、局名を設定する。スナップショットに存在しないラジオ局の参照はそのままとする。
+	 * </p>
+	 *
+	 * @param program 番組
+	 * @return 置き換えた場合true
+	 */
+	public boolean hydrate(RadikoProgram program) {
+		Entity ref = program.getRadikoStation();
+		RadikoStation station = ref != null ? getByOid(ref.getOid()) : null;
+		if (station == null) {
+			return false;
+		}
+		program.setValue(RadikoProgram.RADIKO_STATION, station);
+		return true;
+	}
+
+	/**
+	 * 番組のラジオ局参照をスナップショットのラジオ局に置き換える
+	 *
+	 * @param programs 番組
+	 * @see #hydrate(RadikoProgram)
+	 */
+	public void hydrate(Collection<RadikoProgram> programs) {
+		for (RadikoProgram program : programs) {
+			hydrate(program);
+		}
+	}
+
+	@Override
+	public void inserted(RadikoStation entity) {
+		RadikoStation station = copy(entity);
+		update(byOid -> {
+			byOid.put(station.getOid(), station);
+			return byOid;
+		});
+	}
+
+	@Override
+	public void updated(RadikoStation entity, List<String> updateProperties) {
+		update(byOid -> {
+			RadikoStation current = byOid.get(entity.getOid());
+			if (current == null) {
+				// 保持していないラジオ局は更新されなかったプロパティの値が不明
+				return null;
+			}
+			RadikoStation station = copy(current);
+			for (String property : updateProperties) {
+				station.setValue(property, entity.getValue(property));
+			}
+			byOid.put(station.getOid(), station);
+			return byOid;
+		});
+	}
+
+	@Override
+	public void deleted(RadikoStation entity) {
+		update(byOid -> {
+			byOid.remove(entity.getOid());
+			return byOid;
+		});
+	}
+
+	@Override
+	public void invalidated(List<String> updateProperties) {
+		refresh();
+	}
+
+	/**
+	 * 現在のスナップショットのコピーを変更して差し替える
+	 * <p>
+	 * 他の更新と競合した場合は最新のスナップショットで再度変更する。
+	 * </p>
+	 *
+	 * @param modifier 変更処理、nullを返した場合はDBから読み込み直す
+	 */
+	private void update(UnaryOperator<Map<String, RadikoStation>> modifier) {
+		while (true) {
+			Snapshot snapshot = current.get();
+			Map<String, RadikoStation> byOid = modifier.apply(new HashMap<>(snapshot.byOid));
+			if (byOid == null) {
+				refresh();
+				return;
+			}
+			if (current.compareAndSet(snapshot, new Snapshot(byOid))) {
+				return;
+			}
+		}
+	}
+
+	private static RadikoStation copy(Entity entity) {
+		if (entity instanceof GenericEntity) {
+			return ObjectUtil.cast(((GenericEntity) entity).copy());
+		}
+		return ObjectUtil.cast(entity);
+	}
+
+	/**
+	 * スナップショット(変更不可)
+	 */
+	private static final class Snapshot {
+
+		/** oid -> ラジオ局 */
+		private final Map<String, RadikoStation> byOid;
+		/** 略称 -> ラジオ局 */
+		private final Map<String, RadikoStation> byCallSign;
+
+		private Snapshot(Map<String, RadikoStation> byOid) {
+			Map<String, RadikoStation> callSigns = new HashMap<>();
+			for (RadikoStation station : byOid.values()) {
+				if (station.getCallSign() != null) {
+					callSigns.put(station.getCallSign(), station);
+				}
+			}
+			this.byOid = Collections.unmodifiableMap(new HashMap<>(byOid));
+			this.byCallSign = Collections.unmodifiableMap(callSigns);
+		}
+	}
+}
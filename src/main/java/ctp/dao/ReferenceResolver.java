@@ -0,0 +1,141 @@
+package ctp.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.LoadOption;
+
+/**
+ * 参照の一括解決
+ * <p>
+ * 検索結果の参照プロパティ(oidのみ設定された参照)を、参照先のEntityに置き換える。<br>
+ * 結果全体から参照先のoidを重複なく集め、参照先のEntity定義毎に{@link Dao#loadAll(Collection, LoadOption)}で
+ * まとめて取得するため、検索回数は結果の件数に関わらず参照先のEntity定義数(IN句の上限件数毎)となる。
+ * </p>
+ * <p>
+ * 同じoidを参照する行には同じインスタンスを設定する。参照先のEntityの参照は取得しない。
+ * </p>
+ *
+ * <pre>
+ * ReferenceResolver resolver = new ReferenceResolver()
+ * 		.register(RadikoProgram.RADIKO_STATION, new RadikoStationDao())
+ * 		.register(RadikoProgram.PARENT_SCHEDULE, new RadikoScheduleDao());
+ * resolver.resolve(programs);
+ * </pre>
+ *
+ * @author lis93e
+ */
+public class ReferenceResolver {
+
+	/** 参照先のreferenceを取得しないOption */
+	private static final LoadOption nonLoadRefOption = new LoadOption(false, false);
+
+	/** 参照プロパティ -> 参照先のDao */
+	private final Map<String, Dao<? extends Entity>> references = new LinkedHashMap<>();
+
+	/**
+	 * 解決する参照プロパティを登録する
+	 *
+	 * @param property 参照プロパティ名
+	 * @param dao 参照先のDao
+	 * @return this
+	 */
+	public ReferenceResolver register(String property, Dao<? extends Entity> dao) {
+		references.put(property, dao);
+		return this;
+	}
+
+	/**
+	 * 参照を解決する
+	 * <p>
+	 * 参照先が存在しない(削除済みなど)参照はそのままとする。
+	 * </p>
+	 *
+	 * @param entities 検索結果
+	 * @return 取得した参照先の件数
+	 */
+	public int resolve(Collection<? extends Entity> entities) {
+		if (entities == null || entities.isEmpty()) {
+			return 0;
+		}
+
+		// 参照先のEntity定義毎に参照先のoidを集める(同じ定義を参照するプロパティは1回で取得する)
+		Map<String, Dao<? extends Entity>> daos = new LinkedHashMap<>();
+		Map<String, Set<String>> oidsByDefinition = new HashMap<>();
+		for (Map.Entry<String, Dao<? extends Entity>> reference : references.entrySet()) {
+			String defName = reference.getValue().defName;
+			daos.putIfAbsent(defName, reference.getValue());
+			Set<String> oids = oidsByDefinition.computeIfAbsent(defName, key -> new LinkedHashSet<>());
+			for (Entity entity : entities) {
+				for (Entity ref : referencesOf(entity, reference.getKey())) {
+					if (ref.getOid() != null) {
+						oids.add(ref.getOid());
+					}
+				}
+			}
+		}
+
+		Map<String, Map<String, ? extends Entity>> loaded = new HashMap<>();
+		int count = 0;
+		for (Map.Entry<String, Dao<? extends Entity>> entry : daos.entrySet()) {
+			Set<String> oids = oidsByDefinition.get(entry.getKey());
+			if (oids.isEmpty()) {
+				continue;
+			}
+			Map<String, ? extends Entity> result = entry.getValue().loadAll(oids, nonLoadRefOption);
+			loaded.put(entry.getKey(), result);
+			count += result.size();
+		}
+
+		for (Map.Entry<String, Dao<? extends Entity>> reference : references.entrySet()) {
+			Map<String, ? extends Entity> result = loaded.get(reference.getValue().defName);
+			if (result == null) {
+				continue;
+			}
+			String property = reference.getKey();
+			for (Entity entity : entities) {
+				Object value = entity.getValue(property);
+				if (value instanceof Entity[]) {
+					Entity[] refs = ((Entity[]) value).clone();
+					for (int i = 0; i < refs.length; i++) {
+						refs[i] = replace(refs[i], result);
+					}
+					entity.setValue(property, refs);
+				} else if (value instanceof Entity) {
+					entity.setValue(property, replace((Entity) value, result));
+				}
+			}
+		}
+		return count;
+	}
+
+	private static List<Entity> referencesOf(Entity entity, String property) {
+		Object value = entity.getValue(property);
+		List<Entity> list = new ArrayList<>();
+		if (value instanceof Entity[]) {
+			for (Entity ref : (Entity[]) value) {
+				if (ref != null) {
+					list.add(ref);
+				}
+			}
+		} else if (value instanceof Entity) {
+			list.add((Entity) value);
+		}
+		return list;
+	}
+
+	private static Entity replace(Entity ref, Map<String, ? extends Entity> loaded) {
+		if (ref == null || ref.getOid() == null) {
+			return ref;
+		}
+		Entity entity = loaded.get(ref.getOid());
+		return entity != null ? entity : ref;
+	}
+}
@@ -0,0 +1,402 @@
+package ctp.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.UpdateCondition.UpdateValue;
+import org.iplass.mtp.entity.query.Where;
+import org.iplass.mtp.entity.query.condition.Condition;
+import org.iplass.mtp.entity.query.condition.expr.And;
+import org.iplass.mtp.entity.query.condition.predicate.Equals;
+import org.iplass.mtp.entity.query.condition.predicate.In;
+import org.iplass.mtp.entity.query.condition.predicate.IsNull;
+import org.iplass.mtp.entity.query.condition.predicate.LesserEqual;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.dao.DaoWriteListener;
+import ctp.dao.DaoWriteListeners;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.util.ContextPropagation;
+import ctp.util.TimingWheel;
+
+/**
+ * 視聴期限切れ処理
+ * <p>
+ * 番組の視聴期限を{@link TimingWheel}に保持し、期限を過ぎた番組の視聴ステータスを変更する。
+ * 変更は期限切れ前の視聴ステータス毎にまとめ、{@link RadikoProgramDao#updateAll(List, Where)}で一括更新する。
+ * 更新条件にはoidに加えて変更前の視聴ステータスと視聴期限を含めるため、期限後に視聴済みとなった番組、期限を延長した番組は変更しない。
+ * </p>
+ * <p>
+ * {@link #start()}で視聴期限が(現在時刻 - 遡る期間)～(現在時刻 + 保持期間)の番組を1回の範囲検索で読み込み、
+ * 以降はDaoを経由した番組の登録、視聴期限、視聴ステータスの更新を{@link DaoWriteListener}として反映する。
+ * 保持期間より先の視聴期限は、保持期間の1/2毎に読み込み直す。
+ * 条件指定の更新など、反映できない更新を受けた場合は次回の処理時に読み込み直す。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class DeadlineProcessor implements DaoWriteListener<RadikoProgram> {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeadlineProcessor.class);
+
+	/** デフォルトのtick(ミリ秒) */
+	public static final long DEFAULT_TICK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	/** 1階層のバケット数 */
+	private static final int WHEEL_SIZE = 64;
+	/** 階層数(tick1分で約4.5年) */
+	private static final int LEVEL_COUNT = 4;
+	/** デフォルトの遡る期間(ミリ秒) */
+	private static final long DEFAULT_LOOKBACK_MILLIS = TimeUnit.DAYS.toMillis(30);
+	/** デフォルトの保持期間(ミリ秒) */
+	private static final long DEFAULT_HORIZON_MILLIS = TimeUnit.DAYS.toMillis(60);
+	/** 1回の更新で指定するoidの最大件数 */
+	private static final int DEFAULT_BATCH_SIZE = 500;
+
+	/** 番組Dao */
+	private final RadikoProgramDao dao;
+	/** 変更前の視聴ステータス(未設定はnull) -> 期限切れ後の視聴ステータス */
+	private final Map<String, String> transitions;
+	/** tick(ミリ秒) */
+	private final long tickMillis;
+	/** 遡る期間(ミリ秒) */
+	private long lookbackMillis = DEFAULT_LOOKBACK_MILLIS;
+	/** 保持期間(ミリ秒) */
+	private long horizonMillis = DEFAULT_HORIZON_MILLIS;
+	/** 1回の更新で指定するoidの最大件数 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/** 期限のホイール(thisで同期) */
+	private TimingWheel<String> wheel;
+	/** 保持している番組(thisで同期) oid -> 期限、視聴ステータス */
+	private Map<String, Deadline> deadlines = new HashMap<>();
+	/** 読み込み済みの視聴期限の上限 */
+	private long loadedUntil;
+	/** 読み込み直しが必要か */
+	private volatile boolean reloadRequired;
+	/** 読み込み中に受けた通知(読み込み中以外はnull、thisで同期) */
+	private List<Runnable> pendingEvents;
+	/** 自身の更新処理中のスレッド(自身の更新による通知を無視する) */
+	private final ThreadLocal<Boolean> processing = new ThreadLocal<>();
+	/** 定期実行 */
+	private ScheduledExecutorService executor;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao 番組Dao
+	 * @param transitions 変更前の視聴ステータス(未設定はnull) -> 期限切れ後の視聴ステータス、含まれない視聴ステータスの番組は変更しない
+	 */
+	public DeadlineProcessor(RadikoProgramDao dao, Map<String, String> transitions) {
+		this(dao, transitions, DEFAULT_TICK_MILLIS);
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao 番組Dao
+	 * @param transitions 変更前の視聴ステータス(未設定はnull) -> 期限切れ後の視聴ステータス、含まれない視聴ステータスの番組は変更しない
+	 * @param tickMillis 処理間隔(ミリ秒)、期限切れの反映は最大でこの時間遅れる
+	 */
+	public DeadlineProcessor(RadikoProgramDao dao, Map<String, String> transitions, long tickMillis) {
+		this.dao = dao;
+		this.transitions = Collections.unmodifiableMap(new HashMap<>(transitions));
+		this.tickMillis = tickMillis;
+	}
+
+	/**
+	 * 遡る期間を設定します。
+	 * <p>
+	 * 停止中に期限を過ぎた番組は、視聴期限がこの期間内のもののみ処理する。
+	 * </p>
+	 *
+	 * @param lookback 遡る期間
+	 * @param unit 期間の単位
+	 */
+	public void setLookback(long lookback, TimeUnit unit) {
+		this.lookbackMillis = unit.toMillis(lookback);
+	}
+
+	/**
+	 * 保持期間を設定します。
+	 *
+	 * @param horizon 保持期間
+	 * @param unit 期間の単位
+	 */
+	public void setHorizon(long horizon, TimeUnit unit) {
+		if (horizon <= 0) {
+			throw new IllegalArgumentException("horizon must be positive: " + horizon);
+		}
+		this.horizonMillis = unit.toMillis(horizon);
+	}
+
+	/**
+	 * 1回の更新で指定するoidの最大件数を設定します。
+	 *
+	 * @param batchSize 最大件数
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * 番組を読み込み、tick毎の定期実行を開始する
+	 * <p>
+	 * 呼び出し元の実行コンテキストで実行する。
+	 * </p>
+	 */
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		DaoWriteListeners.add(RadikoProgram.DEFINITION_NAME, this);
+		reload(System.currentTimeMillis());
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ctp-deadline-processor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Runnable task = ContextPropagation.wrap(() -> {
+			try {
+				process(System.currentTimeMillis());
+			} catch (RuntimeException e) {
+				logger.error("deadline processing failed.", e);
+			}
+		});
+		executor.scheduleWithFixedDelay(task, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 定期実行を停止する
+	 */
+	public synchronized void stop() {
+		DaoWriteListeners.remove(RadikoProgram.DEFINITION_NAME, this);
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * 視聴期限が(現在時刻 - 遡る期間)～(現在時刻 + 保持期間)の番組を読み込み直す
+	 *
+	 * @param now 現在時刻(エポックミリ秒)
+	 */
+	public void reload(long now) {
+		synchronized (this) {
+			reloadRequired = false;
+			pendingEvents = new ArrayList<>();
+		}
+		long until = now + horizonMillis;
+		TimingWheel<String> newWheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, LEVEL_COUNT, now);
+		Map<String, Deadline> newDeadlines = new HashMap<>();
+		try {
+			dao.scanDeadlineBetween(new Timestamp(now - lookbackMillis), new Timestamp(until), row -> {
+				Deadline deadline = new Deadline(((Timestamp) row[1]).getTime(), statusValue(row[2]));
+				if (transitions.containsKey(deadline.status)) {
+					newDeadlines.put((String) row[0], deadline);
+					newWheel.add((String) row[0], deadline.expireAt);
+				}
+				return true;
+			});
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				pendingEvents = null;
+				reloadRequired = true;
+			}
+			throw e;
+		}
+		synchronized (this) {
+			wheel = newWheel;
+			deadlines = newDeadlines;
+			loadedUntil = until;
+			// 読み込み中に受けた通知を反映する
+			for (Runnable event : pendingEvents) {
+				event.run();
+			}
+			pendingEvents = null;
+		}
+		logger.info("deadlines loaded. size={}", newDeadlines.size());
+	}
+
+	/**
+	 * 期限を過ぎた番組の視聴ステータスを変更する
+	 *
+	 * @param now 現在時刻(エポックミリ秒)
+	 * @return 変更件数
+	 */
+	public int process(long now) {
+		boolean reload;
+		synchronized (this) {
+			reload = wheel == null || reloadRequired || now + horizonMillis / 2 > loadedUntil;
+		}
+		if (reload) {
+			reload(now);
+		}
+
+		// 変更前の視聴ステータス -> oid
+		Map<String, List<String>> expired = new LinkedHashMap<>();
+		synchronized (this) {
+			wheel.advance(now, oid -> {
+				Deadline deadline = deadlines.get(oid);
+				// 期限を変更した番組は新しい期限の要素で処理する
+				if (deadline != null && deadline.expireAt < now) {
+					deadlines.remove(oid);
+					expired.computeIfAbsent(deadline.status, key -> new ArrayList<>()).add(oid);
+				}
+			});
+		}
+
+		int count = 0;
+		processing.set(Boolean.TRUE);
+		try {
+			for (Map.Entry<String, List<String>> entry : expired.entrySet()) {
+				List<UpdateValue> values = Collections.singletonList(
+						new UpdateValue(RadikoProgram.LISTEN_STATUS, new SelectValue(transitions.get(entry.getKey()))));
+				Condition statusCondition = entry.getKey() != null ? new Equals(RadikoProgram.LISTEN_STATUS, entry.getKey())
+						: new IsNull(RadikoProgram.LISTEN_STATUS);
+				List<String> oids = entry.getValue();
+				for (int from = 0; from < oids.size(); from += batchSize) {
+					List<String> chunk = oids.subList(from, Math.min(from + batchSize, oids.size()));
+					count += dao.updateAll(values, new Where(new And(new In(RadikoProgram.OID, chunk.toArray()), statusCondition,
+							new LesserEqual(RadikoProgram.DEADLINE, new Timestamp(now)))));
+				}
+			}
+		} finally {
+			processing.remove();
+		}
+		if (count > 0) {
+			logger.info("listen status expired. count={}", count);
+		}
+		return count;
+	}
+
+	/**
+	 * 保持している番組数を返します。
+	 *
+	 * @return 番組数
+	 */
+	public synchronized int size() {
+		return deadlines.size();
+	}
+
+	@Override
+	public void inserted(RadikoProgram entity) {
+		String oid = entity.getOid();
+		Timestamp deadline = entity.getDeadline();
+		String status = statusValue(entity.getListenStatus());
+		if (deadline != null) {
+			apply(() -> schedule(oid, deadline.getTime(), status));
+		}
+	}
+
+	@Override
+	public void updated(RadikoProgram entity, List<String> updateProperties) {
+		if (updateProperties == null) {
+			return;
+		}
+		boolean deadlineUpdated = updateProperties.contains(RadikoProgram.DEADLINE);
+		boolean statusUpdated = updateProperties.contains(RadikoProgram.LISTEN_STATUS);
+		if (!deadlineUpdated && !statusUpdated) {
+			return;
+		}
+		String oid = entity.getOid();
+		Timestamp deadline = entity.getDeadline();
+		String status = statusValue(entity.getListenStatus());
+		apply(() -> {
+			Deadline current = deadlines.get(oid);
+			Long expireAt = deadlineUpdated ? (deadline != null ? deadline.getTime() : null)
+					: (current != null ? current.expireAt : null);
+			if (expireAt == null) {
+				deadlines.remove(oid);
+			} else if (statusUpdated) {
+				schedule(oid, expireAt, status);
+			} else if (current != null) {
+				schedule(oid, expireAt, current.status);
+			} else if (expireAt <= loadedUntil) {
+				// 保持していない番組の視聴ステータスは不明のため読み込み直す
+				reloadRequired = true;
+			}
+		});
+	}
+
+	@Override
+	public void deleted(RadikoProgram entity) {
+		String oid = entity.getOid();
+		apply(() -> deadlines.remove(oid));
+	}
+
+	@Override
+	public void invalidated(List<String> updateProperties) {
+		if (processing.get() == null && (updateProperties.contains(RadikoProgram.DEADLINE)
+				|| updateProperties.contains(RadikoProgram.LISTEN_STATUS))) {
+			reloadRequired = true;
+		}
+	}
+
+	/**
+	 * 通知を反映する
+	 * <p>
+	 * 読み込み中は読み込み完了後に反映する。
+	 * </p>
+	 */
+	private synchronized void apply(Runnable event) {
+		if (pendingEvents != null) {
+			pendingEvents.add(event);
+		} else if (wheel != null) {
+			event.run();
+		}
+	}
+
+	/**
+	 * 期限を登録する(thisで同期していること)
+	 */
+	private void schedule(String oid, long expireAt, String status) {
+		if (oid == null) {
+			return;
+		}
+		if (expireAt > loadedUntil || !transitions.containsKey(status)) {
+			// 保持期間外の期限は読み込み直しで登録する
+			deadlines.remove(oid);
+			return;
+		}
+		Deadline current = deadlines.put(oid, new Deadline(expireAt, status));
+		if (current == null || current.expireAt != expireAt) {
+			wheel.add(oid, expireAt);
+		}
+	}
+
+	private static String statusValue(Object value) {
+		if (value instanceof SelectValue) {
+			return ((SelectValue) value).getValue();
+		}
+		return (String) value;
+	}
+
+	/**
+	 * 期限と視聴ステータス
+	 */
+	private static final class Deadline {
+
+		private final long expireAt;
+		private final String status;
+
+		private Deadline(long expireAt, String status) {
+			this.expireAt = expireAt;
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package ctp.service;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.iplass.mtp.ManagerLocator;
+import org.iplass.mtp.async.AsyncTaskManager;
+import org.iplass.mtp.async.AsyncTaskOption;
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.impl.async.rdb.RdbQueueService;
+import org.iplass.mtp.spi.ServiceRegistry;
+import org.iplass.mtp.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.dao.ExpansionTaskDao;
+import ctp.service.ExpansionTaskProgress.Status;
+
+/**
+ * 定期予約展開タスクの管理
+ * <p>
+ * 定期予約の展開をiPLAssの非同期タスク(キュー)で実行し、タスクIDで進捗を参照する。<br>
+ * 期間はチャンク(デフォルト{@value #DEFAULT_CHUNK_DAYS}日)に分割して展開し、チャンク完了毎に進捗を
+ * {@link ExpansionTaskDao}のEntityに保存する。進捗はテナント毎にDBに保持されるため、どのノードからも参照、再開できる。
+ * 中断したタスクは最後に完了したチャンクの次から再開する。
+ * 展開処理は同じ期間を再実行しても重複登録しないため、中断したチャンクはそのまま再実行する。
+ * </p>
+ * <p>
+ * 実行するキューはシステムプロパティ{@value #QUEUE_PROPERTY}で指定する(デフォルトは{@value #DEFAULT_QUEUE})。
+ * キューを利用するため、mtp-service-config.xmlのRdbQueueServiceのuseQueueをtrueとする必要がある。
+ * falseの場合、タスクの登録、再開は{@link IllegalStateException}となる。
+ * 同じタスクはタスクIDをグルーピングキーとして順に実行する。
+ * タスクは実行開始時に実行中の処理の識別子を記録し、識別子が変わった(再開により別の処理が実行を始めた)場合は
+ * 次のチャンクの保存時に処理を終了する。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class ExpansionTaskManager {
+
+	/** 実行するキューを指定するシステムプロパティ */
+	public static final String QUEUE_PROPERTY = "ctp.expansion.queue";
+	/** デフォルトの実行キュー */
+	public static final String DEFAULT_QUEUE = "defaultQueue";
+	/** デフォルトのチャンクの日数 */
+	public static final int DEFAULT_CHUNK_DAYS = 7;
+
+	/** 実行開始時に更新するプロパティ */
+	private static final List<String> CLAIM_PROPERTIES = Arrays.asList(ExpansionTaskDao.STATUS, ExpansionTaskDao.OWNER,
+			ExpansionTaskDao.ERROR_MESSAGE);
+	/** 進捗の保存時に更新するプロパティ */
+	private static final List<String> PROGRESS_PROPERTIES = Arrays.asList(ExpansionTaskDao.STATUS,
+			ExpansionTaskDao.CHUNKS_DONE, ExpansionTaskDao.ROWS_WRITTEN, ExpansionTaskDao.ELAPSED_MILLIS,
+			ExpansionTaskDao.ERROR_MESSAGE);
+	/** 再開時に更新するプロパティ */
+	private static final List<String> RESUME_PROPERTIES = Arrays.asList(ExpansionTaskDao.STATUS,
+			ExpansionTaskDao.ERROR_MESSAGE);
+
+	private static final Logger logger = LoggerFactory.getLogger(ExpansionTaskManager.class);
+
+	/** インスタンス */
+	private static volatile ExpansionTaskManager instance;
+
+	/** 展開タスクDao */
+	private final ExpansionTaskDao dao;
+	/** 展開処理 */
+	private final Supplier<ScheduleExpansionService> serviceFactory;
+	/** タスクの実行依頼(タスクIDを受け取り、{@link #execute(String)}を呼び出す) */
+	private final Consumer<String> dispatcher;
+
+	/**
+	 * コンストラクタ
+	 * <p>
+	 * 通常は{@link #getInstance()}を利用する。Dao、展開処理、実行依頼を差し替える場合(単体テストなど)に利用する。
+	 * </p>
+	 *
+	 * @param dao 展開タスクDao
+	 * @param serviceFactory 展開処理の生成処理
+	 * @param dispatcher タスクの実行依頼(タスクIDを受け取り、{@link #execute(String)}を呼び出す)
+	 */
+	public ExpansionTaskManager(ExpansionTaskDao dao, Supplier<ScheduleExpansionService> serviceFactory,
+			Consumer<String> dispatcher) {
+		this.dao = dao;
+		this.serviceFactory = serviceFactory;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * インスタンスを返します。
+	 *
+	 * @return インスタンス
+	 */
+	public static ExpansionTaskManager getInstance() {
+		if (instance == null) {
+			synchronized (ExpansionTaskManager.class) {
+				if (instance == null) {
+					instance = new ExpansionTaskManager(new ExpansionTaskDao(), ScheduleExpansionService::new,
+							ExpansionTaskManager::enqueue);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * 定期予約の展開タスクを登録する
+	 * <p>
+	 * 現在のテナントの非同期タスクとして実行する。
+	 * </p>
+	 *
+	 * @param fromDate 開始日
+	 * @param toDate 終了日(この日を含む)
+	 * @param chunkDays チャンクの日数
+	 * @param parallelism 並列数(ラジオ局単位)
+	 * @return 進捗
+	 * @throws IllegalStateException 非同期タスクのキューを利用しない設定の場合(タスクは登録しない)
+	 */
+	public ExpansionTaskProgress submit(LocalDate fromDate, LocalDate toDate, int chunkDays, int parallelism) {
+		if (fromDate.isAfter(toDate)) {
+			throw new IllegalArgumentException("fromDate is after toDate: " + fromDate + " > " + toDate);
+		}
+		if (chunkDays <= 0) {
+			throw new IllegalArgumentException("chunkDays must be positive: " + chunkDays);
+		}
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		dao.ensureDefinition();
+		GenericEntity entity = new GenericEntity(ExpansionTaskDao.DEFINITION_NAME);
+		new ExpansionTaskProgress(null, fromDate, toDate, chunkDays, parallelism).copyTo(entity);
+		String taskId = dao.insert(entity);
+		try {
+			dispatcher.accept(taskId);
+		} catch (RuntimeException e) {
+			// 実行されないタスクを実行待ちのまま残さない
+			dao.delete(entity);
+			throw e;
+		}
+		return ExpansionTaskProgress.fromEntity(entity);
+	}
+
+	/**
+	 * タスクの進捗を返します。
+	 *
+	 * @param taskId タスクID
+	 * @return 進捗(参照時点のもの)、現在のテナントに存在しない場合はnull
+	 */
+	public ExpansionTaskProgress getProgress(String taskId) {
+		if (StringUtil.isBlank(taskId)) {
+			return null;
+		}
+		dao.ensureDefinition();
+		GenericEntity entity = dao.loadNonRef(taskId);
+		return entity != null ? ExpansionTaskProgress.fromEntity(entity) : null;
+	}
+
+	/**
+	 * 中断したタスクを再開する
+	 * <p>
+	 * 失敗したタスクは最後に完了したチャンクの次から再実行する。
+	 * 実行中のタスクを指定した場合は、再開した処理が実行を引き継ぐ。
+	 * </p>
+	 *
+	 * @param taskId タスクID
+	 * @return 進捗、存在しない、または完了済みの場合はnull
+	 */
+	public ExpansionTaskProgress resume(String taskId) {
+		if (StringUtil.isBlank(taskId)) {
+			return null;
+		}
+		dao.ensureDefinition();
+		GenericEntity entity = dao.updateIfVersion(taskId, RESUME_PROPERTIES, task -> {
+			if (Status.COMPLETED.name().equals(task.getValue(ExpansionTaskDao.STATUS))) {
+				return false;
+			}
+			task.setValue(ExpansionTaskDao.STATUS, Status.QUEUED.name());
+			task.setValue(ExpansionTaskDao.ERROR_MESSAGE, null);
+			return true;
+		});
+		if (entity == null) {
+			return null;
+		}
+		dispatcher.accept(taskId);
+		return ExpansionTaskProgress.fromEntity(entity);
+	}
+
+	/**
+	 * 現在のテナントの未完了のタスクを全て再開する
+	 * <p>
+	 * 実行待ち、実行中のまま残っているタスクを再開する。失敗したタスクは対象外。
+	 * 非同期タスクの実行が失われた場合(キューのクリアなど)に利用する。
+	 * </p>
+	 *
+	 * @return 再開したタスク数
+	 */
+	public int resumeIncomplete() {
+		dao.ensureDefinition();
+		int count = 0;
+		for (GenericEntity entity : dao.findByStatus(Status.QUEUED.name(), Status.RUNNING.name())) {
+			logger.info("resume schedule expansion. {}", ExpansionTaskProgress.fromEntity(entity));
+			dispatcher.accept(entity.getOid());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * タスクを実行する
+	 * <p>
+	 * 非同期タスクから呼び出す。未完了のチャンクを順に展開する。
+	 * </p>
+	 *
+	 * @param taskId タスクID
+	 */
+	public void execute(String taskId) {
+		String owner = UUID.randomUUID().toString();
+		GenericEntity claimed = dao.updateIfVersion(taskId, CLAIM_PROPERTIES, task -> {
+			Status status = Status.valueOf(task.getValue(ExpansionTaskDao.STATUS));
+			if (status == Status.COMPLETED || status == Status.FAILED) {
+				return false;
+			}
+			task.setValue(ExpansionTaskDao.STATUS, Status.RUNNING.name());
+			task.setValue(ExpansionTaskDao.OWNER, owner);
+			task.setValue(ExpansionTaskDao.ERROR_MESSAGE, null);
+			return true;
+		});
+		if (claimed == null) {
+			return;
+		}
+
+		ExpansionTaskProgress progress = ExpansionTaskProgress.fromEntity(claimed);
+		try {
+			ScheduleExpansionService service = serviceFactory.get();
+			service.setParallelism(progress.getParallelism());
+			for (int chunk = progress.getChunksDone(); chunk < progress.getTotalChunks(); chunk++) {
+				long start = System.currentTimeMillis();
+				ScheduleExpansionResult result = service.expand(progress.getChunkFrom(chunk), progress.getChunkTo(chunk));
+				if (!result.isSuccess()) {
+					progress.setStatus(Status.FAILED);
+					progress.setErrorMessage("chunk " + chunk + " failed. " + result);
+					save(progress, owner);
+					logger.warn("schedule expansion failed. {}", progress);
+					return;
+				}
+				progress.chunkCompleted(result.getInsertCount() + result.getUpdateCount(), System.currentTimeMillis() - start);
+				if (!save(progress, owner)) {
+					logger.info("schedule expansion taken over. {}", progress);
+					return;
+				}
+			}
+
+			progress.setStatus(Status.COMPLETED);
+			save(progress, owner);
+			logger.info("schedule expansion completed. {}", progress);
+		} catch (RuntimeException e) {
+			progress.setStatus(Status.FAILED);
+			progress.setErrorMessage(e.toString());
+			logger.error("schedule expansion failed. " + progress, e);
+			try {
+				save(progress, owner);
+			} catch (RuntimeException saveError) {
+				logger.error("failed to save progress. " + progress, saveError);
+			}
+		}
+	}
+
+	/**
+	 * 進捗を保存する
+	 * <p>
+	 * 新規トランザクションで保存するため、チャンク完了後に停止しても直前の進捗は失われない。
+	 * </p>
+	 *
+	 * @return 保存した=true、他の処理が実行を引き継いだ(または削除された)=false
+	 */
+	private boolean save(ExpansionTaskProgress progress, String owner) {
+		return dao.updateIfVersion(progress.getTaskId(), PROGRESS_PROPERTIES, task -> {
+			if (!owner.equals(task.getValue(ExpansionTaskDao.OWNER))) {
+				return false;
+			}
+			progress.copyTo(task);
+			return true;
+		}) != null;
+	}
+
+	/**
+	 * 非同期タスクとして実行を依頼する
+	 *
+	 * @throws IllegalStateException キューを利用しない設定の場合
+	 */
+	private static void enqueue(String taskId) {
+		if (!ServiceRegistry.getRegistry().getService(RdbQueueService.class).isUseQueue()) {
+			throw new IllegalStateException(
+					"async task queue is disabled. set useQueue of RdbQueueService to true in mtp-service-config.xml.");
+		}
+		AsyncTaskOption option = new AsyncTaskOption();
+		option.setQueue(System.getProperty(QUEUE_PROPERTY, DEFAULT_QUEUE));
+		option.setGroupingKey(taskId);
+		ManagerLocator.getInstance().getManager(AsyncTaskManager.class).execute(option, new ExpansionTask(taskId));
+	}
+
+	/**
+	 * 非同期タスク(キューに保存されるためタスクIDのみを保持する)
+	 */
+	private static final class ExpansionTask implements Callable<Void>, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String taskId;
+
+		private ExpansionTask(String taskId) {
+			this.taskId = taskId;
+		}
+
+		@Override
+		public Void call() {
+			getInstance().execute(taskId);
+			return null;
+		}
+	}
+}
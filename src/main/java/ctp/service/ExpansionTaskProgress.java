@@ -0,0 +1,280 @@
+package ctp.service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import org.iplass.mtp.entity.Entity;
+
+import ctp.dao.ExpansionTaskDao;
+
+/**
+ * 定期予約展開タスクの進捗
+ * <p>
+ * 期間をチャンク(日数単位)に分割し、完了したチャンク数と登録・更新件数を保持する。<br>
+ * チャンク完了毎に{@link ExpansionTaskDao}のEntityに保存し、中断後は最後に完了したチャンクの次から再開する。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class ExpansionTaskProgress {
+
+	/** タスクの状態 */
+	public enum Status {
+		/** 実行待ち */
+		QUEUED,
+		/** 実行中 */
+		RUNNING,
+		/** 完了 */
+		COMPLETED,
+		/** 失敗 */
+		FAILED
+	}
+
+	/** タスクID */
+	private final String taskId;
+	/** 開始日 */
+	private final LocalDate fromDate;
+	/** 終了日(この日を含む) */
+	private final LocalDate toDate;
+	/** チャンクの日数 */
+	private final int chunkDays;
+	/** 並列数 */
+	private final int parallelism;
+
+	/** 状態 */
+	private volatile Status status = Status.QUEUED;
+	/** 完了したチャンク数 */
+	private volatile int chunksDone;
+	/** 登録・更新件数 */
+	private volatile long rowsWritten;
+	/** 処理時間(ミリ秒、再開前の処理時間を含む) */
+	private volatile long elapsedMillis;
+	/** 失敗時のエラーメッセージ */
+	private volatile String errorMessage;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param taskId タスクID
+	 * @param fromDate 開始日
+	 * @param toDate 終了日(この日を含む)
+	 * @param chunkDays チャンクの日数
+	 * @param parallelism 並列数
+	 */
+	public ExpansionTaskProgress(String taskId, LocalDate fromDate, LocalDate toDate, int chunkDays, int parallelism) {
+		this.taskId = taskId;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.chunkDays = chunkDays;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * タスクIDを返します。
+	 *
+	 * @return タスクID
+	 */
+	public String getTaskId() {
+		return taskId;
+	}
+
+	/**
+	 * 開始日を返します。
+	 *
+	 * @return 開始日
+	 */
+	public LocalDate getFromDate() {
+		return fromDate;
+	}
+
+	/**
+	 * 終了日(この日を含む)を返します。
+	 *
+	 * @return 終了日(この日を含む)
+	 */
+	public LocalDate getToDate() {
+		return toDate;
+	}
+
+	/**
+	 * チャンクの日数を返します。
+	 *
+	 * @return チャンクの日数
+	 */
+	public int getChunkDays() {
+		return chunkDays;
+	}
+
+	/**
+	 * 並列数を返します。
+	 *
+	 * @return 並列数
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * 状態を返します。
+	 *
+	 * @return 状態
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	void setStatus(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * 完了したチャンク数を返します。
+	 *
+	 * @return 完了したチャンク数
+	 */
+	public int getChunksDone() {
+		return chunksDone;
+	}
+
+	/**
+	 * 登録・更新件数を返します。
+	 *
+	 * @return 登録・更新件数
+	 */
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	/**
+	 * 処理時間(ミリ秒)を返します。
+	 *
+	 * @return 処理時間(ミリ秒)
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 失敗時のエラーメッセージを返します。
+	 *
+	 * @return 失敗時のエラーメッセージ
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * チャンク数を返します。
+	 *
+	 * @return チャンク数
+	 */
+	public int getTotalChunks() {
+		long days = toDate.toEpochDay() - fromDate.toEpochDay() + 1;
+		return (int) ((days + chunkDays - 1) / chunkDays);
+	}
+
+	/**
+	 * チャンクの開始日を返します。
+	 *
+	 * @param chunk チャンク番号(0～)
+	 * @return 開始日
+	 */
+	public LocalDate getChunkFrom(int chunk) {
+		return fromDate.plusDays((long) chunk * chunkDays);
+	}
+
+	/**
+	 * チャンクの終了日を返します。
+	 *
+	 * @param chunk チャンク番号(0～)
+	 * @return 終了日(この日を含む)
+	 */
+	public LocalDate getChunkTo(int chunk) {
+		LocalDate chunkTo = getChunkFrom(chunk).plusDays(chunkDays - 1L);
+		return chunkTo.isAfter(toDate) ? toDate : chunkTo;
+	}
+
+	/**
+	 * スループットを返します。
+	 *
+	 * @return 1秒あたりの登録・更新件数
+	 */
+	public double getRowsPerSecond() {
+		return elapsedMillis > 0 ? rowsWritten * 1000d / elapsedMillis : 0d;
+	}
+
+	/**
+	 * チャンクの完了を記録する
+	 *
+	 * @param rows チャンクの登録・更新件数
+	 * @param millis チャンクの処理時間(ミリ秒)
+	 */
+	synchronized void chunkCompleted(long rows, long millis) {
+		chunksDone++;
+		rowsWritten += rows;
+		elapsedMillis += millis;
+	}
+
+	/**
+	 * 終了したかを返します。
+	 *
+	 * @return 完了、または失敗=true
+	 */
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	/**
+	 * Entityに進捗を設定する
+	 *
+	 * @param entity 展開タスクのEntity
+	 */
+	synchronized void copyTo(Entity entity) {
+		entity.setValue(ExpansionTaskDao.FROM_DATE, Date.valueOf(fromDate));
+		entity.setValue(ExpansionTaskDao.TO_DATE, Date.valueOf(toDate));
+		entity.setValue(ExpansionTaskDao.CHUNK_DAYS, (long) chunkDays);
+		entity.setValue(ExpansionTaskDao.PARALLELISM, (long) parallelism);
+		entity.setValue(ExpansionTaskDao.STATUS, status.name());
+		entity.setValue(ExpansionTaskDao.CHUNKS_DONE, (long) chunksDone);
+		entity.setValue(ExpansionTaskDao.ROWS_WRITTEN, rowsWritten);
+		entity.setValue(ExpansionTaskDao.ELAPSED_MILLIS, elapsedMillis);
+		entity.setValue(ExpansionTaskDao.ERROR_MESSAGE, errorMessage);
+	}
+
+	/**
+	 * Entityから復元する
+	 *
+	 * @param entity 展開タスクのEntity
+	 * @return 進捗
+	 */
+	static ExpansionTaskProgress fromEntity(Entity entity) {
+		ExpansionTaskProgress progress = new ExpansionTaskProgress(entity.getOid(),
+				entity.<Date> getValue(ExpansionTaskDao.FROM_DATE).toLocalDate(),
+				entity.<Date> getValue(ExpansionTaskDao.TO_DATE).toLocalDate(),
+				toInt(entity.getValue(ExpansionTaskDao.CHUNK_DAYS)), toInt(entity.getValue(ExpansionTaskDao.PARALLELISM)));
+		progress.status = Status.valueOf(entity.getValue(ExpansionTaskDao.STATUS));
+		progress.chunksDone = toInt(entity.getValue(ExpansionTaskDao.CHUNKS_DONE));
+		progress.rowsWritten = toLong(entity.getValue(ExpansionTaskDao.ROWS_WRITTEN));
+		progress.elapsedMillis = toLong(entity.getValue(ExpansionTaskDao.ELAPSED_MILLIS));
+		progress.errorMessage = entity.getValue(ExpansionTaskDao.ERROR_MESSAGE);
+		return progress;
+	}
+
+	private static int toInt(Long value) {
+		return value != null ? value.intValue() : 0;
+	}
+
+	private static long toLong(Long value) {
+		return value != null ? value : 0L;
+	}
+
+	@Override
+	public String toString() {
+		return "taskId=" + taskId + ", status=" + status + ", chunks=" + chunksDone + "/" + getTotalChunks() + ", rows="
+				+ rowsWritten + ", elapsed=" + elapsedMillis + "ms";
+	}
+}
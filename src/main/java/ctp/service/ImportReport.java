@@ -0,0 +1,116 @@
+package ctp.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一括取込の結果
+ * <p>
+ * 件数と、段階(読込、解析、検証、登録)毎の処理時間を保持する。
+ * 解析、検証、登録は並行して処理するため、段階毎の処理時間の合計は全体の処理時間より長くなる。
+ * </p>
+ */
+public class ImportReport {
+
+	/** 読込件数 */
+	final AtomicLong readCount = new AtomicLong();
+	/** 登録件数 */
+	final AtomicLong insertedCount = new AtomicLong();
+	/** 解析エラー件数 */
+	final AtomicLong parseErrorCount = new AtomicLong();
+	/** 検証エラー件数 */
+	final AtomicLong validationErrorCount = new AtomicLong();
+	/** 登録エラー件数 */
+	final AtomicLong insertErrorCount = new AtomicLong();
+	/** 読込時間(ナノ秒) */
+	final AtomicLong readNanos = new AtomicLong();
+	/** 解析時間(ナノ秒、全スレッドの合計) */
+	final AtomicLong parseNanos = new AtomicLong();
+	/** 検証時間(ナノ秒) */
+	final AtomicLong validateNanos = new AtomicLong();
+	/** 登録時間(ナノ秒) */
+	final AtomicLong insertNanos = new AtomicLong();
+	/** 処理時間(ミリ秒) */
+	private long elapsedMillis;
+
+	void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * 読込件数を返します。
+	 * @return ヘッダを除くレコード数
+	 */
+	public long getReadCount() {
+		return readCount.get();
+	}
+
+	/**
+	 * 登録件数を返します。
+	 * @return 登録件数
+	 */
+	public long getInsertedCount() {
+		return insertedCount.get();
+	}
+
+	/**
+	 * エラー件数を返します。
+	 * @return 解析、検証、登録のいずれかでエラーとなりエラーファイルに出力した件数
+	 */
+	public long getErrorCount() {
+		return parseErrorCount.get() + validationErrorCount.get() + insertErrorCount.get();
+	}
+
+	/**
+	 * 解析エラー件数を返します。
+	 * @return 解析エラー件数
+	 */
+	public long getParseErrorCount() {
+		return parseErrorCount.get();
+	}
+
+	/**
+	 * 検証エラー件数を返します。
+	 * @return 検証エラー件数
+	 */
+	public long getValidationErrorCount() {
+		return validationErrorCount.get();
+	}
+
+	/**
+	 * 登録エラー件数を返します。
+	 * @return 登録エラー件数
+	 */
+	public long getInsertErrorCount() {
+		return insertErrorCount.get();
+	}
+
+	/**
+	 * 処理時間を返します。
+	 * @return 処理時間(ミリ秒)
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 1秒あたりの読込件数を返します。
+	 * @return 1秒あたりの読込件数
+	 */
+	public double getRowsPerSecond() {
+		return elapsedMillis > 0 ? readCount.get() * 1000d / elapsedMillis : 0d;
+	}
+
+	@Override
+	public String toString() {
+		return "read=" + readCount + ", inserted=" + insertedCount + ", parseError=" + parseErrorCount
+				+ ", validationError=" + validationErrorCount + ", insertError=" + insertErrorCount + ", elapsed="
+				+ elapsedMillis + "ms" + ", rows/s=" + String.format("%.1f", getRowsPerSecond()) + ", stage(read="
+				+ millis(readNanos) + "ms, parse=" + millis(parseNanos) + "ms, validate=" + millis(validateNanos)
+				+ "ms, insert=" + millis(insertNanos) + "ms)";
+	}
+
+	private static long millis(AtomicLong nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+	}
+}
@@ -0,0 +1,350 @@
+package ctp.service;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.web.ResultStreamWriter;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+
+/**
+ * 番組、定期予約のエクスポート
+ * <p>
+ * 検索結果をListに保持せず、カーソルから1行ずつ出力先に書き込む。
+ * 書き込みは固定サイズのバッファを経由するため、件数に関係なくヒープ使用量は一定となる。
+ * </p>
+ * <p>
+ * CSVはGEMのCSVダウンロードと同じく、カンマ、ダブルクォート、改行を含む値(常時ダブルクォート出力の場合は全ての値)を
+ * ダブルクォートで囲む。文字コードがUTF-8の場合は先頭にBOMを出力する。
+ * NDJSONは1行に1件のJSONオブジェクトを出力する。
+ * </p>
+ */
+public class RadikoExportWriter implements ResultStreamWriter {
+
+	/** 書き込みバッファサイズのデフォルト値 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/** 番組の出力項目 */
+	private static final String[] PROGRAM_COLUMNS = { Entity.OID, RadikoProgram.RADIKO_STATION + "." + RadikoStation.CALL_SIGN,
+			RadikoProgram.PROGRAM_NAME, RadikoProgram.START_DATETIME, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS,
+			RadikoProgram.RADIKO_URL, RadikoProgram.NOTE };
+	/** 定期予約の出力項目 */
+	private static final String[] SCHEDULE_COLUMNS = { Entity.OID, RadikoSchedule.STATION + "." + RadikoStation.CALL_SIGN,
+			RadikoSchedule.PROGRAM_NAME, RadikoSchedule.WEEK_DAY, RadikoSchedule.START_TIME, RadikoSchedule.NOTES };
+
+	private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+	private static final char BOM = '\uFEFF';
+	private static final String LINE_SEPARATOR = "\r\n";
+
+	/**
+	 * 出力対象
+	 */
+	public enum Target {
+		/** 番組 */
+		PROGRAM,
+		/** 定期予約 */
+		SCHEDULE
+	}
+
+	/**
+	 * 出力形式
+	 */
+	public enum Format {
+		/** CSV */
+		CSV("text/csv", "csv"),
+		/** 改行区切りJSON */
+		NDJSON("application/x-ndjson", "ndjson");
+
+		private final String contentType;
+		private final String extension;
+
+		private Format(String contentType, String extension) {
+			this.contentType = contentType;
+			this.extension = extension;
+		}
+	}
+
+	private final Target target;
+	private final Format format;
+	private final RadikoProgramDao programDao;
+	private final RadikoScheduleDao scheduleDao;
+
+	private Timestamp fromDate;
+	private Timestamp toDate;
+	private Charset charset = StandardCharsets.UTF_8;
+	private boolean quoteAll;
+	private boolean gzip;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private long rowCount;
+
+	public RadikoExportWriter(Target target, Format format) {
+		this(target, format, new RadikoProgramDao(), new RadikoScheduleDao());
+	}
+
+	public RadikoExportWriter(Target target, Format format, RadikoProgramDao programDao, RadikoScheduleDao scheduleDao) {
+		this.target = target;
+		this.format = format;
+		this.programDao = programDao;
+		this.scheduleDao = scheduleDao;
+	}
+
+	/**
+	 * 番組の開始日時の期間を設定します。
+	 *
+	 * @param fromDate 開始日時(nullの場合は全件)
+	 * @param toDate 終了日時(nullの場合は全件)
+	 */
+	public void setPeriod(Timestamp fromDate, Timestamp toDate) {
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+	}
+
+	/**
+	 * 文字コードを設定します。(NDJSONは常にUTF-8)
+	 *
+	 * @param charset 文字コード
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * CSVで常にダブルクォートを出力するかを設定します。
+	 *
+	 * @param quoteAll 常にダブルクォートを出力するか
+	 */
+	public void setQuoteAll(boolean quoteAll) {
+		this.quoteAll = quoteAll;
+	}
+
+	/**
+	 * gzip圧縮するかを設定します。
+	 *
+	 * @param gzip gzip圧縮するか
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * 書き込みバッファサイズを設定します。
+	 *
+	 * @param bufferSize 書き込みバッファサイズ(バイト)
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Content-Typeを返します。
+	 *
+	 * @return Content-Type
+	 */
+	public String getContentType() {
+		if (gzip) {
+			return "application/gzip";
+		}
+		return format.contentType + "; charset=" + outputCharset().name();
+	}
+
+	/**
+	 * ファイル名を返します。
+	 *
+	 * @return ファイル名
+	 */
+	public String getFileName() {
+		String name = (target == Target.PROGRAM ? "radikoProgram" : "radikoSchedule") + "." + format.extension;
+		return gzip ? name + ".gz" : name;
+	}
+
+	/**
+	 * 出力した件数を返します。
+	 *
+	 * @return 出力した件数(ヘッダを除く)
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * 出力先に書き込む
+	 * <p>
+	 * 出力先はクローズしない(gzipの場合は圧縮を完了する)。
+	 * </p>
+	 */
+	@Override
+	public void write(OutputStream out) throws IOException {
+		rowCount = 0;
+		// 出力先はサーブレットコンテナが管理するため、Writerのクローズで閉じない
+		OutputStream stream = new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+		if (gzip) {
+			stream = new GZIPOutputStream(stream, bufferSize);
+		}
+		String[] columns = target == Target.PROGRAM ? PROGRAM_COLUMNS : SCHEDULE_COLUMNS;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, outputCharset()), bufferSize)) {
+			if (format == Format.CSV) {
+				if (StandardCharsets.UTF_8.equals(charset)) {
+					writer.write(BOM);
+				}
+				writeCsvRow(writer, columns);
+			}
+			try {
+				scan(columns, row -> {
+					try {
+						if (format == Format.CSV) {
+							writeCsvRow(writer, row);
+						} else {
+							writeJsonRow(writer, columns, row);
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					rowCount++;
+					return true;
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private void scan(String[] columns, Predicate<Object[]> callback) {
+		if (target == Target.PROGRAM) {
+			programDao.scanBetweenStartDate(fromDate, toDate, callback, columns);
+		} else {
+			scheduleDao.scanAll(callback, columns);
+		}
+	}
+
+	private Charset outputCharset() {
+		return format == Format.CSV ? charset : StandardCharsets.UTF_8;
+	}
+
+	private void writeCsvRow(Writer writer, Object[] row) throws IOException {
+		for (int i = 0; i < row.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String value = format(row[i]);
+			if (quoteAll || needsQuote(value)) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+		writer.write(LINE_SEPARATOR);
+	}
+
+	private void writeJsonRow(Writer writer, String[] columns, Object[] row) throws IOException {
+		writer.write('{');
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			writeJsonString(writer, columns[i]);
+			writer.write(':');
+			if (row[i] == null) {
+				writer.write("null");
+			} else {
+				writeJsonString(writer, format(row[i]));
+			}
+		}
+		writer.write("}\n");
+	}
+
+	private static boolean needsQuote(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void writeJsonString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+
+	private static String format(Object value) {
+		if (value == null) {
+			return "";
+		}
+		if (value instanceof Timestamp) {
+			return DATETIME_FORMAT.format(((Timestamp) value).toLocalDateTime());
+		}
+		if (value instanceof Time) {
+			return TIME_FORMAT.format(((Time) value).toLocalTime());
+		}
+		if (value instanceof SelectValue) {
+			String selected = ((SelectValue) value).getValue();
+			return selected != null ? selected : "";
+		}
+		if (value instanceof Entity) {
+			return ((Entity) value).getOid();
+		}
+		return value.toString();
+	}
+}
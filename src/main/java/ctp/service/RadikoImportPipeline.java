@@ -0,0 +1,692 @@
+package ctp.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.ValidateError;
+import org.iplass.mtp.entity.ValidateResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctp.dao.BulkResult;
+import ctp.dao.BulkResult.ChunkFailure;
+import ctp.dao.BulkValidateResult;
+import ctp.dao.Dao;
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.dao.RadikoStationSnapshot;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+import ctp.service.RadikoExportWriter.Target;
+import ctp.util.ContextPropagation;
+
+/**
+ * 番組、定期予約の一括取込
+ * <p>
+ * {@link RadikoExportWriter}が出力する形式のCSV(1行目はヘッダ、oid列は無視する)を以下の段階で取り込む。
+ * 段階の間は容量を制限したキューで受け渡すため、後段が遅い場合は前段が待機し、ファイルサイズに関係なくメモリ使用量は一定となる。
+ * </p>
+ * <ol>
+ * <li>読込:ファイルをメモリマップし、ダブルクォート内の改行を考慮してレコードに分割する(呼び出しスレッド)
+ * <li>解析:レコードを項目に分割してEntityに変換する。ラジオ局は{@link RadikoStationSnapshot}から略称で解決する(複数スレッド)
+ * <li>検証、登録:{@link Dao#validateAll(List, List)}でバッチ単位に並列で検証し、エラーのないEntityを
+ * {@link Dao#insertAll(List, boolean)}(forceInsert)でチャンク単位に登録する(1スレッド)
+ * </ol>
+ * <p>
+ * 解析、検証、登録でエラーとなったレコードは行番号、エラー内容とともにエラーファイル(CSV)に出力し、残りのレコードの処理を継続する。
+ * 件数と段階毎の処理時間を{@link ImportReport}で返す。
+ * </p>
+ */
+public class RadikoImportPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(RadikoImportPipeline.class);
+
+	/** 解析スレッド数のデフォルト値 */
+	public static final int DEFAULT_PARSER_THREADS = 4;
+	/** バッチサイズのデフォルト値 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	/** キュー容量(バッチ数)のデフォルト値 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+	/** 1回にメモリマップするサイズ */
+	private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+	/** キューの待機を中断するか確認する間隔(ミリ秒) */
+	private static final long POLL_MILLIS = 100;
+
+	private static final String OID_COLUMN = Entity.OID;
+	private static final String CALL_SIGN_SUFFIX = "." + RadikoStation.CALL_SIGN;
+	private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final List<String> DATETIME_PROPERTIES = Arrays.asList(RadikoProgram.START_DATETIME, RadikoProgram.DEADLINE);
+	private static final List<String> SELECT_PROPERTIES = Arrays.asList(RadikoProgram.LISTEN_STATUS, RadikoSchedule.WEEK_DAY);
+	private static final List<String> TIME_PROPERTIES = Collections.singletonList(RadikoSchedule.START_TIME);
+
+	/** 番組の取込項目(参照はラジオ局のみ) */
+	private static final List<String> PROGRAM_PROPERTIES = Arrays.asList(RadikoProgram.RADIKO_STATION,
+			RadikoProgram.PROGRAM_NAME, RadikoProgram.START_DATETIME, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS,
+			RadikoProgram.RADIKO_URL, RadikoProgram.NOTE);
+	/** 定期予約の取込項目(参照はラジオ局のみ) */
+	private static final List<String> SCHEDULE_PROPERTIES = Arrays.asList(RadikoSchedule.STATION,
+			RadikoSchedule.PROGRAM_NAME, RadikoSchedule.WEEK_DAY, RadikoSchedule.START_TIME, RadikoSchedule.NOTES);
+
+	/** 読込の終了 */
+	private static final List<Line> END_OF_LINES = Collections.emptyList();
+	/** 解析の終了 */
+	private static final List<Row> END_OF_ROWS = Collections.emptyList();
+
+	private final Target target;
+	private final Dao<Entity> dao;
+	private final RadikoStationSnapshot stations;
+
+	private Charset charset = StandardCharsets.UTF_8;
+	private int parserThreads = DEFAULT_PARSER_THREADS;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao 番組Dao
+	 * @param stations ラジオ局のスナップショット
+	 */
+	public RadikoImportPipeline(RadikoProgramDao dao, RadikoStationSnapshot stations) {
+		this(Target.PROGRAM, dao, stations);
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao 定期予約Dao
+	 * @param stations ラジオ局のスナップショット
+	 */
+	public RadikoImportPipeline(RadikoScheduleDao dao, RadikoStationSnapshot stations) {
+		this(Target.SCHEDULE, dao, stations);
+	}
+
+	@SuppressWarnings("unchecked")
+	private RadikoImportPipeline(Target target, Dao<? extends Entity> dao, RadikoStationSnapshot stations) {
+		this.target = target;
+		this.dao = (Dao<Entity>) dao;
+		this.stations = stations;
+	}
+
+	/**
+	 * ファイルの文字コードを設定します。
+	 *
+	 * @param charset 文字コード(UTF-8の場合は先頭のBOMを無視する)
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * 解析スレッド数を設定します。
+	 *
+	 * @param parserThreads 解析スレッド数
+	 */
+	public void setParserThreads(int parserThreads) {
+		if (parserThreads <= 0) {
+			throw new IllegalArgumentException("parserThreads must be positive: " + parserThreads);
+		}
+		this.parserThreads = parserThreads;
+	}
+
+	/**
+	 * バッチサイズを設定します。
+	 * <p>
+	 * 段階間の受け渡し、検証、登録の単位となる。
+	 * </p>
+	 *
+	 * @param batchSize バッチサイズ
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * 段階間のキュー容量を設定します。
+	 *
+	 * @param queueCapacity キュー容量(バッチ数)
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * 取り込む
+	 *
+	 * @param file 取込ファイル
+	 * @param errorFile エラーファイル(エラーがない場合もヘッダのみ出力する)
+	 * @return 取込結果
+	 * @throws IOException ファイルの読み書きに失敗した場合
+	 * @throws IllegalArgumentException ヘッダに取り込めない項目がある場合
+	 */
+	public ImportReport run(Path file, Path errorFile) throws IOException {
+		long start = System.nanoTime();
+		ImportReport report = new ImportReport();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+				Writer errorWriter = Files.newBufferedWriter(errorFile, StandardCharsets.UTF_8)) {
+			ErrorSink errors = new ErrorSink(errorWriter);
+			LineReader reader = new LineReader(channel);
+			Line header = reader.next();
+			if (header != null) {
+				String text = decode(header);
+				if (text.startsWith("\uFEFF")) {
+					text = text.substring(1);
+				}
+				Mapper mapper = new Mapper(parseCsv(text));
+				new Execution(reader, mapper, errors, report).run();
+			}
+		}
+		report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		logger.info("import {} from {}. {}", target, file, report);
+		return report;
+	}
+
+	private String decode(Line line) {
+		return new String(line.bytes, charset);
+	}
+
+	/**
+	 * CSVの1レコードを項目に分割する
+	 *
+	 * @param record レコード
+	 * @return 項目
+	 */
+	static List<String> parseCsv(String record) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * 1回の取込処理
+	 */
+	private final class Execution {
+
+		private final LineReader reader;
+		private final Mapper mapper;
+		private final ErrorSink errors;
+		private final ImportReport report;
+
+		private final BlockingQueue<List<Line>> lineQueue = new ArrayBlockingQueue<>(queueCapacity);
+		private final BlockingQueue<List<Row>> rowQueue = new ArrayBlockingQueue<>(queueCapacity);
+		private final AtomicInteger activeParsers = new AtomicInteger(parserThreads);
+		/** 最初に発生した異常、発生した時点で全段階を中断する */
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		private Execution(LineReader reader, Mapper mapper, ErrorSink errors, ImportReport report) {
+			this.reader = reader;
+			this.mapper = mapper;
+			this.errors = errors;
+			this.report = report;
+		}
+
+		private void run() throws IOException {
+			AtomicInteger threadCount = new AtomicInteger();
+			ExecutorService executor = Executors.newFixedThreadPool(parserThreads + 1, runnable -> {
+				Thread thread = new Thread(runnable, "ctp-import-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			try {
+				for (int i = 0; i < parserThreads; i++) {
+					executor.execute(this::parse);
+				}
+				executor.execute(ContextPropagation.wrap((Runnable) this::write));
+				read();
+				executor.shutdown();
+				while (!executor.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (failure.get() != null) {
+						break;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort(e);
+			} catch (CancellationException e) {
+				// 他の段階の異常で中断
+			} finally {
+				executor.shutdownNow();
+			}
+
+			Throwable cause = failure.get();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause != null) {
+				throw new IllegalStateException("import failed.", cause);
+			}
+		}
+
+		/**
+		 * 読込段階
+		 */
+		private void read() throws IOException {
+			long start = System.nanoTime();
+			try {
+				List<Line> batch = new ArrayList<>(batchSize);
+				Line line;
+				while ((line = reader.next()) != null) {
+					batch.add(line);
+					report.readCount.incrementAndGet();
+					if (batch.size() == batchSize) {
+						put(lineQueue, batch);
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+				if (!batch.isEmpty()) {
+					put(lineQueue, batch);
+				}
+				for (int i = 0; i < parserThreads; i++) {
+					put(lineQueue, END_OF_LINES);
+				}
+			} catch (IOException | RuntimeException e) {
+				abort(e);
+				throw e;
+			} finally {
+				report.readNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * 解析段階
+		 */
+		private void parse() {
+			try {
+				List<Line> lines;
+				while ((lines = take(lineQueue)) != END_OF_LINES) {
+					long start = System.nanoTime();
+					List<Row> rows = new ArrayList<>(lines.size());
+					for (Line line : lines) {
+						String text = decode(line);
+						try {
+							rows.add(new Row(line.number, text, mapper.map(parseCsv(text))));
+						} catch (IllegalArgumentException e) {
+							report.parseErrorCount.incrementAndGet();
+							errors.write(line.number, e.getMessage(), text);
+						}
+					}
+					report.parseNanos.addAndGet(System.nanoTime() - start);
+					if (!rows.isEmpty()) {
+						put(rowQueue, rows);
+					}
+				}
+				if (activeParsers.decrementAndGet() == 0) {
+					put(rowQueue, END_OF_ROWS);
+				}
+			} catch (CancellationException e) {
+				// 他の段階の異常で中断
+			} catch (Throwable e) {
+				abort(e);
+			}
+		}
+
+		/**
+		 * 検証、登録段階
+		 */
+		private void write() {
+			try {
+				List<Row> rows;
+				while ((rows = take(rowQueue)) != END_OF_ROWS) {
+					long start = System.nanoTime();
+					List<Entity> entities = new ArrayList<>(rows.size());
+					for (Row row : rows) {
+						entities.add(row.entity);
+					}
+					BulkValidateResult validateResult = dao.validateAll(entities, null);
+					List<Row> valid = new ArrayList<>(rows.size());
+					for (int i = 0; i < rows.size(); i++) {
+						Row row = rows.get(i);
+						ValidateResult result = validateResult.getResult(i);
+						if (result != null) {
+							report.validationErrorCount.incrementAndGet();
+							errors.write(row.number, toMessage(result), row.text);
+						} else {
+							valid.add(row);
+						}
+					}
+					long validated = System.nanoTime();
+					report.validateNanos.addAndGet(validated - start);
+					if (valid.isEmpty()) {
+						continue;
+					}
+
+					entities = new ArrayList<>(valid.size());
+					for (Row row : valid) {
+						entities.add(row.entity);
+					}
+					BulkResult result = dao.insertAll(entities, true);
+					report.insertedCount.addAndGet(result.getSuccessCount());
+					for (ChunkFailure chunk : result.getFailures()) {
+						String message = String.valueOf(chunk.getCause());
+						for (int i = chunk.getFromIndex(); i < chunk.getToIndex(); i++) {
+							report.insertErrorCount.incrementAndGet();
+							errors.write(valid.get(i).number, message, valid.get(i).text);
+						}
+					}
+					report.insertNanos.addAndGet(System.nanoTime() - validated);
+				}
+			} catch (CancellationException e) {
+				// 他の段階の異常で中断
+			} catch (Throwable e) {
+				abort(e);
+			}
+		}
+
+		private void abort(Throwable cause) {
+			if (failure.compareAndSet(null, cause)) {
+				logger.error("import aborted.", cause);
+			}
+		}
+
+		private <T> void put(BlockingQueue<T> queue, T item) {
+			try {
+				while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (failure.get() != null) {
+						throw new CancellationException();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+
+		private <T> T take(BlockingQueue<T> queue) {
+			try {
+				T item;
+				while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+					if (failure.get() != null) {
+						throw new CancellationException();
+					}
+				}
+				return item;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+	}
+
+	private static String toMessage(ValidateResult result) {
+		StringBuilder message = new StringBuilder();
+		for (ValidateError error : result.getErrors()) {
+			if (message.length() > 0) {
+				message.append(' ');
+			}
+			message.append(error.getPropertyName()).append(':').append(error.getErrorMessages());
+		}
+		return message.toString();
+	}
+
+	/**
+	 * ヘッダの項目からEntityへの変換
+	 */
+	private final class Mapper {
+
+		/** 項目毎の設定先プロパティ(nullは無視する項目) */
+		private final String[] properties;
+		/** 項目毎に参照を解決するか */
+		private final boolean[] references;
+
+		private Mapper(List<String> header) {
+			List<String> allowed = target == Target.PROGRAM ? PROGRAM_PROPERTIES : SCHEDULE_PROPERTIES;
+			properties = new String[header.size()];
+			references = new boolean[header.size()];
+			for (int i = 0; i < header.size(); i++) {
+				String column = header.get(i);
+				if (OID_COLUMN.equals(column)) {
+					continue;
+				}
+				if (column.endsWith(CALL_SIGN_SUFFIX)) {
+					column = column.substring(0, column.length() - CALL_SIGN_SUFFIX.length());
+					references[i] = true;
+				}
+				if (!allowed.contains(column) || (references[i] != isReference(column))) {
+					throw new IllegalArgumentException("unsupported column: " + header.get(i));
+				}
+				properties[i] = column;
+			}
+		}
+
+		private Entity map(List<String> fields) {
+			if (fields.size() != properties.length) {
+				throw new IllegalArgumentException("column count mismatch. expected=" + properties.length + ", actual=" + fields.size());
+			}
+			Entity entity = target == Target.PROGRAM ? new RadikoProgram() : new RadikoSchedule();
+			for (int i = 0; i < properties.length; i++) {
+				String value = fields.get(i);
+				if (properties[i] == null || value.isEmpty()) {
+					continue;
+				}
+				entity.setValue(properties[i], convert(properties[i], references[i], value));
+			}
+			return entity;
+		}
+
+		private boolean isReference(String property) {
+			return RadikoProgram.RADIKO_STATION.equals(property) || RadikoSchedule.STATION.equals(property);
+		}
+
+		private Object convert(String property, boolean reference, String value) {
+			if (reference) {
+				RadikoStation station = stations.getByCallSign(value);
+				if (station == null) {
+					throw new IllegalArgumentException("unknown callSign: " + value);
+				}
+				RadikoStation ref = new RadikoStation();
+				ref.setOid(station.getOid());
+				return ref;
+			}
+			try {
+				if (DATETIME_PROPERTIES.contains(property)) {
+					return Timestamp.valueOf(LocalDateTime.parse(value, DATETIME_FORMAT));
+				}
+				if (TIME_PROPERTIES.contains(property)) {
+					return Time.valueOf(LocalTime.parse(value));
+				}
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("invalid " + property + ": " + value, e);
+			}
+			if (SELECT_PROPERTIES.contains(property)) {
+				return new SelectValue(value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * メモリマップしたファイルからのレコードの読込
+	 * <p>
+	 * ダブルクォート内の改行はレコードの区切りとしない。空行は読み飛ばす。
+	 * UTF-8、Shift_JIS系の文字コードはマルチバイト文字にダブルクォート、改行のバイトを含まないため、バイト単位で分割できる。
+	 * </p>
+	 */
+	private static final class LineReader {
+
+		private final FileChannel channel;
+		private final long size;
+		private long position;
+		private MappedByteBuffer buffer;
+
+		private byte[] record = new byte[256];
+		private int length;
+		/** 次に読む行の行番号 */
+		private long lineNumber = 1;
+
+		private LineReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		private Line next() throws IOException {
+			length = 0;
+			long start = lineNumber;
+			boolean quoted = false;
+			while (true) {
+				if (buffer == null || !buffer.hasRemaining()) {
+					if (position >= size) {
+						break;
+					}
+					long window = Math.min(MAP_WINDOW_SIZE, size - position);
+					buffer = channel.map(MapMode.READ_ONLY, position, window);
+					position += window;
+				}
+				byte b = buffer.get();
+				if (b == '\n') {
+					lineNumber++;
+					if (!quoted) {
+						if (length == 0 || (length == 1 && record[0] == '\r')) {
+							length = 0;
+							start = lineNumber;
+							continue;
+						}
+						return line(start);
+					}
+				} else if (b == '"') {
+					quoted = !quoted;
+				}
+				append(b);
+			}
+			return length > 0 ? line(start) : null;
+		}
+
+		private void append(byte b) {
+			if (length == record.length) {
+				record = Arrays.copyOf(record, length * 2);
+			}
+			record[length++] = b;
+		}
+
+		private Line line(long number) {
+			int end = length > 0 && record[length - 1] == '\r' ? length - 1 : length;
+			return new Line(number, Arrays.copyOf(record, end));
+		}
+	}
+
+	/**
+	 * エラーファイルへの出力
+	 */
+	private static final class ErrorSink {
+
+		private final Writer writer;
+
+		private ErrorSink(Writer writer) throws IOException {
+			this.writer = writer;
+			writer.write("line,message,record\r\n");
+		}
+
+		private synchronized void write(long lineNumber, String message, String record) {
+			try {
+				writer.write(Long.toString(lineNumber));
+				writer.write(',');
+				writer.write(quote(message));
+				writer.write(',');
+				writer.write(quote(record));
+				writer.write("\r\n");
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private static String quote(String value) {
+			return "\"" + String.valueOf(value).replace("\"", "\"\"") + "\"";
+		}
+	}
+
+	/**
+	 * 読み込んだレコード
+	 */
+	private static final class Line {
+
+		/** 行番号(レコードの開始行) */
+		private final long number;
+		private final byte[] bytes;
+
+		private Line(long number, byte[] bytes) {
+			this.number = number;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * 解析したレコード
+	 */
+	private static final class Row {
+
+		/** 行番号(レコードの開始行) */
+		private final long number;
+		private final String text;
+		private final Entity entity;
+
+		private Row(long number, String text, Entity entity) {
+			this.number = number;
+			this.text = text;
+			this.entity = entity;
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package ctp.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.SelectValue;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+
+/**
+ * 番組の列指向スナップショット(分析用)
+ * <p>
+ * 番組をEntityとして保持せず、プロパティ毎のプリミティブ配列(列)として保持する。
+ * </p>
+ * <ul>
+ * <li>開始日時、視聴期限:エポックミリ秒のlong配列(未設定は{@link #NULL_TIME})
+ * <li>ラジオ局:ラジオ局oidの辞書の位置のint配列(未設定は-1)
+ * <li>視聴ステータス:視聴ステータスの辞書の位置のbyte配列(0は未設定、空文字も未設定として扱う)
+ * <li>番組名:番組名の辞書の位置のint配列(未設定は-1)
+ * </ul>
+ * <p>
+ * 絞り込みは行毎の選択状態(boolean配列)に対して列を順に走査し、分岐のない比較で選択状態を更新する。
+ * 集計は選択状態と辞書の位置で配列を加算する。いずれもJITによるループのベクトル化の対象となる。
+ * </p>
+ * <p>
+ * 生成後は変更しない。{@link #getFootprint()}で列毎のメモリ使用量(推定)を返す。
+ * </p>
+ *
+ * <pre>
+ * RadikoProgramColumns columns = RadikoProgramColumns.build(dao);
+ * boolean[] selection = columns.selectAll();
+ * columns.filterStartBetween(selection, from, to);
+ * Map&lt;String, Long&gt; counts = columns.countByStatus(selection);
+ * </pre>
+ *
+ * @author lis93e
+ */
+public final class RadikoProgramColumns {
+
+	/** 日時の未設定値 */
+	public static final long NULL_TIME = Long.MIN_VALUE;
+	/** 視聴ステータスの最大種類数(未設定を除く) */
+	private static final int MAX_STATUS_COUNT = Byte.MAX_VALUE;
+	/** 読み込むプロパティ */
+	private static final String[] PROPERTIES = { RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME,
+			RadikoProgram.START_DATETIME, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS };
+
+	/** 件数 */
+	private final int size;
+	/** 番組oid */
+	private final String[] oids;
+	/** 開始日時 */
+	private final long[] starts;
+	/** 視聴期限 */
+	private final long[] deadlines;
+	/** ラジオ局(辞書の位置) */
+	private final int[] stations;
+	/** 視聴ステータス(辞書の位置) */
+	private final byte[] statuses;
+	/** 番組名(辞書の位置) */
+	private final int[] names;
+	/** ラジオ局oidの辞書 */
+	private final String[] stationDictionary;
+	/** 視聴ステータスの辞書(0は未設定) */
+	private final String[] statusDictionary;
+	/** 番組名の辞書 */
+	private final String[] nameDictionary;
+
+	private RadikoProgramColumns(Builder builder) {
+		this.size = builder.size;
+		this.oids = Arrays.copyOf(builder.oids, size);
+		this.starts = Arrays.copyOf(builder.starts, size);
+		this.deadlines = Arrays.copyOf(builder.deadlines, size);
+		this.stations = Arrays.copyOf(builder.stations, size);
+		this.statuses = Arrays.copyOf(builder.statuses, size);
+		this.names = Arrays.copyOf(builder.names, size);
+		this.stationDictionary = builder.stationDictionary.toArray(new String[0]);
+		this.statusDictionary = builder.statusDictionary.toArray(new String[0]);
+		this.nameDictionary = builder.nameDictionary.toArray(new String[0]);
+	}
+
+	/**
+	 * 全番組を読み込んでスナップショットを生成する
+	 * <p>
+	 * 番組は1件ずつ列に追加し、Entityは保持しない。
+	 * </p>
+	 *
+	 * @param dao 番組Dao
+	 * @return スナップショット
+	 */
+	public static RadikoProgramColumns build(RadikoProgramDao dao) {
+		Builder builder = new Builder();
+		dao.scanAll(program -> {
+			builder.add(program);
+			return true;
+		}, PROPERTIES);
+		return builder.build();
+	}
+
+	/**
+	 * 件数を返します。
+	 *
+	 * @return 件数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 番組のoidを返します。
+	 *
+	 * @param row 行
+	 * @return 番組のoid
+	 */
+	public String getOid(int row) {
+		return oids[row];
+	}
+
+	/**
+	 * 全行を選択した選択状態を返します。
+	 *
+	 * @return 選択状態
+	 */
+	public boolean[] selectAll() {
+		boolean[] selection = new boolean[size];
+		Arrays.fill(selection, true);
+		return selection;
+	}
+
+	/**
+	 * 開始日時が期間内の行に絞り込む
+	 *
+	 * @param selection 選択状態
+	 * @param from 開始日時(この日時を含む)
+	 * @param to 終了日時(この日時を含む)
+	 */
+	public void filterStartBetween(boolean[] selection, Timestamp from, Timestamp to) {
+		filterBetween(selection, starts, from.getTime(), to.getTime());
+	}
+
+	/**
+	 * 視聴期限が期間内の行に絞り込む
+	 *
+	 * @param selection 選択状態
+	 * @param from 開始日時(この日時を含む)
+	 * @param to 終了日時(この日時を含む)
+	 */
+	public void filterDeadlineBetween(boolean[] selection, Timestamp from, Timestamp to) {
+		filterBetween(selection, deadlines, from.getTime(), to.getTime());
+	}
+
+	/**
+	 * ラジオ局で絞り込む
+	 *
+	 * @param selection 選択状態
+	 * @param stationOid ラジオ局のoid
+	 */
+	public void filterStation(boolean[] selection, String stationOid) {
+		int code = indexOf(stationDictionary, stationOid);
+		int[] column = stations;
+		for (int i = 0; i < size; i++) {
+			selection[i] &= column[i] == code;
+		}
+	}
+
+	/**
+	 * 視聴ステータスで絞り込む
+	 *
+	 * @param selection 選択状態
+	 * @param status 視聴ステータス(未設定はnullまたは{@link RadikoProgramService#NO_STATUS})
+	 */
+	public void filterStatus(boolean[] selection, String status) {
+		int code = isNoStatus(status) ? 0 : indexOf(statusDictionary, status);
+		byte[] column = statuses;
+		for (int i = 0; i < size; i++) {
+			selection[i] &= column[i] == code;
+		}
+	}
+
+	/**
+	 * 選択した行数を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return 行数
+	 */
+	public int count(boolean[] selection) {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			count += selection[i] ? 1 : 0;
+		}
+		return count;
+	}
+
+	/**
+	 * 選択した行の視聴ステータス毎の件数を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return 視聴ステータス(未設定は{@link RadikoProgramService#NO_STATUS}) -> 件数
+	 */
+	public Map<String, Long> countByStatus(boolean[] selection) {
+		long[] counts = new long[statusDictionary.length];
+		byte[] column = statuses;
+		for (int i = 0; i < size; i++) {
+			counts[column[i]] += selection[i] ? 1 : 0;
+		}
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (int code = 0; code < counts.length; code++) {
+			if (counts[code] > 0) {
+				result.put(code == 0 ? RadikoProgramService.NO_STATUS : statusDictionary[code], counts[code]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 選択した行のラジオ局毎の件数を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return ラジオ局のoid -> 件数(ラジオ局未設定の行は含まない)
+	 */
+	public Map<String, Long> countByStation(boolean[] selection) {
+		// 未設定(-1)を0番目に集計する
+		long[] counts = new long[stationDictionary.length + 1];
+		int[] column = stations;
+		for (int i = 0; i < size; i++) {
+			counts[column[i] + 1] += selection[i] ? 1 : 0;
+		}
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (int code = 0; code < stationDictionary.length; code++) {
+			if (counts[code + 1] > 0) {
+				result.put(stationDictionary[code], counts[code + 1]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 選択した行の番組名毎の件数を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return 番組名 -> 件数(番組名未設定の行は含まない)
+	 */
+	public Map<String, Long> countByName(boolean[] selection) {
+		long[] counts = new long[nameDictionary.length + 1];
+		int[] column = names;
+		for (int i = 0; i < size; i++) {
+			counts[column[i] + 1] += selection[i] ? 1 : 0;
+		}
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (int code = 0; code < nameDictionary.length; code++) {
+			if (counts[code + 1] > 0) {
+				result.put(nameDictionary[code], counts[code + 1]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 選択した行の開始日時の最小値を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return 開始日時の最小値(エポックミリ秒)、該当なしの場合は{@link #NULL_TIME}
+	 */
+	public long minStart(boolean[] selection) {
+		long min = Long.MAX_VALUE;
+		long[] column = starts;
+		for (int i = 0; i < size; i++) {
+			long value = selection[i] && column[i] != NULL_TIME ? column[i] : Long.MAX_VALUE;
+			min = Math.min(min, value);
+		}
+		return min == Long.MAX_VALUE ? NULL_TIME : min;
+	}
+
+	/**
+	 * 選択した行の開始日時の最大値を返します。
+	 *
+	 * @param selection 選択状態
+	 * @return 開始日時の最大値(エポックミリ秒)、該当なしの場合は{@link #NULL_TIME}
+	 */
+	public long maxStart(boolean[] selection) {
+		long max = NULL_TIME;
+		long[] column = starts;
+		for (int i = 0; i < size; i++) {
+			long value = selection[i] ? column[i] : NULL_TIME;
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+
+	/**
+	 * 列毎のメモリ使用量(推定)を返します。
+	 * <p>
+	 * 配列は配列ヘッダ16バイト+要素、文字列は1文字2バイトとして推定する(Compact Stringsの場合は実際より大きくなる)。
+	 * </p>
+	 *
+	 * @return 列名 -> バイト数(total:合計)
+	 */
+	public Map<String, Long> getFootprint() {
+		Map<String, Long> footprint = new LinkedHashMap<>();
+		footprint.put("oid", arrayBytes(size, 4) + stringBytes(oids));
+		footprint.put(RadikoProgram.START_DATETIME, arrayBytes(size, 8));
+		footprint.put(RadikoProgram.DEADLINE, arrayBytes(size, 8));
+		footprint.put(RadikoProgram.RADIKO_STATION, arrayBytes(size, 4) + arrayBytes(stationDictionary.length, 4)
+				+ stringBytes(stationDictionary));
+		footprint.put(RadikoProgram.LISTEN_STATUS, arrayBytes(size, 1) + arrayBytes(statusDictionary.length, 4)
+				+ stringBytes(statusDictionary));
+		footprint.put(RadikoProgram.PROGRAM_NAME, arrayBytes(size, 4) + arrayBytes(nameDictionary.length, 4)
+				+ stringBytes(nameDictionary));
+		long total = 0;
+		for (long bytes : footprint.values()) {
+			total += bytes;
+		}
+		footprint.put("total", total);
+		return Collections.unmodifiableMap(footprint);
+	}
+
+	private void filterBetween(boolean[] selection, long[] column, long from, long to) {
+		for (int i = 0; i < size; i++) {
+			long value = column[i];
+			selection[i] &= (value >= from) & (value <= to);
+		}
+	}
+
+	/**
+	 * 視聴ステータスが未設定か
+	 */
+	private static boolean isNoStatus(String status) {
+		return status == null || RadikoProgramService.NO_STATUS.equals(status);
+	}
+
+	private static int indexOf(String[] dictionary, String value) {
+		for (int i = 0; i < dictionary.length; i++) {
+			if (dictionary[i] != null && dictionary[i].equals(value)) {
+				return i;
+			}
+		}
+		// 辞書にない値はどの行とも一致しない
+		return Integer.MIN_VALUE;
+	}
+
+	private static long arrayBytes(int length, int elementBytes) {
+		return 16L + (long) length * elementBytes;
+	}
+
+	private static long stringBytes(String[] values) {
+		long bytes = 0;
+		for (String value : values) {
+			if (value != null) {
+				// Stringオブジェクト24バイト + char配列
+				bytes += 24L + arrayBytes(value.length(), 2);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * スナップショットの生成
+	 */
+	public static final class Builder {
+
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private int size;
+		private String[] oids = new String[INITIAL_CAPACITY];
+		private long[] starts = new long[INITIAL_CAPACITY];
+		private long[] deadlines = new long[INITIAL_CAPACITY];
+		private int[] stations = new int[INITIAL_CAPACITY];
+		private byte[] statuses = new byte[INITIAL_CAPACITY];
+		private int[] names = new int[INITIAL_CAPACITY];
+
+		private final List<String> stationDictionary = new ArrayList<>();
+		private final Map<String, Integer> stationCodes = new HashMap<>();
+		private final List<String> statusDictionary = new ArrayList<>(Collections.singletonList(null));
+		private final Map<String, Integer> statusCodes = new HashMap<>();
+		private final List<String> nameDictionary = new ArrayList<>();
+		private final Map<String, Integer> nameCodes = new HashMap<>();
+
+		/**
+		 * 番組を追加する
+		 *
+		 * @param program 番組
+		 * @return this
+		 */
+		public Builder add(RadikoProgram program) {
+			if (size == starts.length) {
+				int capacity = size * 2;
+				oids = Arrays.copyOf(oids, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				deadlines = Arrays.copyOf(deadlines, capacity);
+				stations = Arrays.copyOf(stations, capacity);
+				statuses = Arrays.copyOf(statuses, capacity);
+				names = Arrays.copyOf(names, capacity);
+			}
+			Entity station = program.getRadikoStation();
+			SelectValue status = program.getListenStatus();
+			oids[size] = program.getOid();
+			starts[size] = time(program.getStartDatetime());
+			deadlines[size] = time(program.getDeadline());
+			stations[size] = code(station != null ? station.getOid() : null, stationDictionary, stationCodes);
+			statuses[size] = statusCode(status != null ? status.getValue() : null);
+			names[size] = code(program.getProgramName(), nameDictionary, nameCodes);
+			size++;
+			return this;
+		}
+
+		/**
+		 * スナップショットを生成する
+		 *
+		 * @return スナップショット
+		 */
+		public RadikoProgramColumns build() {
+			return new RadikoProgramColumns(this);
+		}
+
+		private byte statusCode(String status) {
+			if (isNoStatus(status)) {
+				return 0;
+			}
+			Integer code = statusCodes.get(status);
+			if (code == null) {
+				if (statusDictionary.size() > MAX_STATUS_COUNT) {
+					throw new IllegalStateException("too many listen status values: " + statusDictionary.size());
+				}
+				code = statusDictionary.size();
+				statusDictionary.add(status);
+				statusCodes.put(status, code);
+			}
+			return code.byteValue();
+		}
+
+		private static int code(String value, List<String> dictionary, Map<String, Integer> codes) {
+			if (value == null) {
+				return -1;
+			}
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				codes.put(value, code);
+			}
+			return code;
+		}
+
+		private static long time(Timestamp timestamp) {
+			return timestamp != null ? timestamp.getTime() : NULL_TIME;
+		}
+	}
+}
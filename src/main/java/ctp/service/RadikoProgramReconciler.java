@@ -0,0 +1,211 @@
+package ctp.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.UpdateOption;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.util.ObjectUtil;
+
+/**
+ * 番組の同期処理
+ * <p>
+ * ラジオ局と期間で指定した範囲について、あるべき番組のリストと登録済みの番組を
+ * (ラジオ局, 開始日時)で突き合わせ、最小限の登録、更新、削除を行う。<br>
+ * 登録済みの番組は1回の検索で取得し、ハッシュで突き合わせる。
+ * </p>
+ * <p>
+ * 更新は比較対象プロパティのうち値が異なるもののみを対象とし、更新プロパティの組み合わせ毎にまとめて一括更新する。
+ * 同じ(ラジオ局, 開始日時)の番組が複数登録されている場合は1件を更新し、残りは削除する。
+ * </p>
+ */
+public class RadikoProgramReconciler {
+
+	/** デフォルトの比較対象プロパティ */
+	private static final String[] DEFAULT_COMPARE_PROPERTIES = { RadikoProgram.PARENT_SCHEDULE, RadikoProgram.PROGRAM_NAME,
+			RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE, RadikoProgram.LISTEN_STATUS };
+
+	/** 番組Dao */
+	private final RadikoProgramDao dao;
+	/** 比較対象プロパティ */
+	private final List<String> compareProperties;
+	/** あるべき番組に存在しない登録済みの番組を削除するか */
+	private boolean deleteMissing = true;
+
+	/**
+	 * コンストラクタ
+	 * <p>
+	 * 開始日時、ラジオ局以外の全プロパティを比較対象とする。
+	 * </p>
+	 * 
+	 * @param dao 番組Dao
+	 */
+	public RadikoProgramReconciler(RadikoProgramDao dao) {
+		this(dao, DEFAULT_COMPARE_PROPERTIES);
+	}
+
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param dao 番組Dao
+	 * @param compareProperties 比較対象プロパティ(このプロパティのみ更新する)
+	 */
+	public RadikoProgramReconciler(RadikoProgramDao dao, String... compareProperties) {
+		this.dao = dao;
+		this.compareProperties = Arrays.asList(compareProperties.clone());
+	}
+
+	/**
+	 * あるべき番組に存在しない登録済みの番組を削除するかを設定します。
+	 * 
+	 * @param deleteMissing 削除する=true(デフォルト)
+	 */
+	public void setDeleteMissing(boolean deleteMissing) {
+		this.deleteMissing = deleteMissing;
+	}
+
+	/**
+	 * 同期内容を算出する(dry run)
+	 * <p>
+	 * DBへの反映は行わない。あるべき番組は全件をチェックしてから突き合わせ、引数のEntityは変更しない。
+	 * ラジオ局が未設定の番組は、ラジオ局を設定したコピーを登録対象とする。
+	 * </p>
+	 * 
+	 * @param stationOid ラジオ局のoid
+	 * @param fromDate 開始日
+	 * @param toDate 終了日
+	 * @param desired あるべき番組(範囲外のラジオ局、開始日時を含まないこと)
+	 * @return 同期内容
+	 */
+	public ReconcileResult plan(String stationOid, Timestamp fromDate, Timestamp toDate, List<RadikoProgram> desired) {
+		// 全件をチェックしてから突き合わせる
+		Map<String, RadikoProgram> desiredMap = new LinkedHashMap<>();
+		for (RadikoProgram program : desired) {
+			Timestamp start = program.getStartDatetime();
+			if (start == null || start.before(fromDate) || start.after(toDate)) {
+				throw new IllegalArgumentException("startDatetime is out of range: " + start);
+			}
+			Entity station = program.getRadikoStation();
+			if (station != null && !stationOid.equals(station.getOid())) {
+				throw new IllegalArgumentException("radikoStation is out of scope: " + station.getOid());
+			}
+			if (desiredMap.put(naturalKey(stationOid, start), program) != null) {
+				throw new IllegalArgumentException("duplicate program: " + start);
+			}
+		}
+
+		// 登録済みの番組を1回の検索で取得
+		Map<String, List<RadikoProgram>> current = new HashMap<>();
+		dao.findByStationAndStartDate(stationOid, fromDate, toDate, program -> {
+			current.computeIfAbsent(naturalKey(stationOid, program.getStartDatetime()), key -> new ArrayList<>(1)).add(program);
+			return true;
+		});
+
+		List<RadikoProgram> inserts = new ArrayList<>();
+		Map<List<String>, List<RadikoProgram>> updates = new LinkedHashMap<>();
+		List<RadikoProgram> deletes = new ArrayList<>();
+		int unchanged = 0;
+		for (Map.Entry<String, RadikoProgram> entry : desiredMap.entrySet()) {
+			List<RadikoProgram> matched = current.remove(entry.getKey());
+			if (matched == null) {
+				inserts.add(withStation(entry.getValue(), stationOid));
+				continue;
+			}
+			// 重複して登録されている番組は1件のみ残す
+			RadikoProgram existing = matched.get(0);
+			deletes.addAll(matched.subList(1, matched.size()));
+
+			List<String> changed = new ArrayList<>();
+			for (String property : compareProperties) {
+				Object value = entry.getValue().getValue(property);
+				if (!ObjectUtil.equals(existing.getValue(property), value)) {
+					existing.setValue(property, value);
+					changed.add(property);
+				}
+			}
+			if (changed.isEmpty()) {
+				unchanged++;
+			} else {
+				updates.computeIfAbsent(changed, key -> new ArrayList<>()).add(existing);
+			}
+		}
+
+		if (deleteMissing) {
+			for (List<RadikoProgram> missing : current.values()) {
+				deletes.addAll(missing);
+			}
+		}
+		return new ReconcileResult(inserts, updates, deletes, unchanged);
+	}
+
+	/**
+	 * 同期を行う
+	 * 
+	 * @param stationOid ラジオ局のoid
+	 * @param fromDate 開始日
+	 * @param toDate 終了日
+	 * @param desired あるべき番組(範囲外のラジオ局、開始日時を含まないこと)
+	 * @return 同期結果
+	 */
+	public ReconcileResult reconcile(String stationOid, Timestamp fromDate, Timestamp toDate, List<RadikoProgram> desired) {
+		ReconcileResult result = plan(stationOid, fromDate, toDate, desired);
+		apply(result);
+		return result;
+	}
+
+	/**
+	 * 算出した同期内容を反映する
+	 * 
+	 * @param result {@link #plan(String, Timestamp, Timestamp, List)}の結果
+	 */
+	public void apply(ReconcileResult result) {
+		if (result.isApplied()) {
+			throw new IllegalStateException("already applied.");
+		}
+		result.addBulkResult(dao.insertAll(new ArrayList<>(result.getInserts())));
+		for (Map.Entry<List<String>, List<RadikoProgram>> entry : result.getUpdates().entrySet()) {
+			UpdateOption option = new UpdateOption(false);
+			option.setUpdateProperties(entry.getKey());
+			result.addBulkResult(dao.updateAll(entry.getValue(), option));
+		}
+		result.addBulkResult(dao.deleteAll(new ArrayList<>(result.getDeletes())));
+	}
+
+	/**
+	 * 登録対象の番組
+	 *
+	 * @param program あるべき番組
+	 * @param stationOid ラジオ局のoid
+	 * @return ラジオ局が未設定の場合はラジオ局を設定したコピー、それ以外は引数の番組
+	 */
+	private static RadikoProgram withStation(RadikoProgram program, String stationOid) {
+		if (program.getRadikoStation() != null) {
+			return program;
+		}
+		RadikoProgram copied = program.copy();
+		RadikoStation ref = new RadikoStation();
+		ref.setOid(stationOid);
+		copied.setRadikoStation(ref);
+		return copied;
+	}
+
+	/**
+	 * 突き合わせのキー
+	 * 
+	 * @param stationOid ラジオ局のoid
+	 * @param start 開始日時
+	 * @return キー
+	 */
+	private static String naturalKey(String stationOid, Timestamp start) {
+		return stationOid + "/" + start.getTime();
+	}
+}
@@ -1,7 +1,433 @@
 package ctp.service;
 
-public class RadikoProgramService {
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.SelectValue;
+
+import ctp.dao.DaoWriteListener;
+import ctp.dao.DaoWriteListeners;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+
+/**
+ * ラジオ番組サービス
+ * <p>
+ * 視聴ステータス毎の番組数を、ラジオ局、週(月曜始まり)、定期予約の単位で集計して保持する。<br>
+ * {@link #start()}でDBから全件を集計した後は、Daoを経由した番組の更新通知(コミット後)を{@link DaoWriteListener}として受ける。
+ * 登録、更新、削除は通知された更新前の状態({@link DaoWriteListener#requiresPrevious()})から集計キーを求め、集計値を増減する。
+ * 参照は集計値を返すのみで、番組の件数によらない。
+ * </p>
+ * <p>
+ * 更新対象を特定できない条件指定の更新、更新前の状態が不明な通知を受けた場合のみ集計値を最新でない状態とし、
+ * 次の参照時に集計し直してから返すため、古い集計値を返すことはない。
+ * </p>
+ * <p>
+ * 集計値は集計単位毎の件数のみで、保持するメモリは番組の件数に比例しない。
+ * 集計値の検証用に{@link #verify()}でDBから集計し直した結果と比較できる。
+ * </p>
+ */
+public class RadikoProgramService implements DaoWriteListener<RadikoProgram> {
+
+	/** 視聴ステータス未設定の集計キー */
+	public static final String NO_STATUS = "";
+
+	/** 集計に利用するプロパティ */
+	private static final String[] STATISTICS_PROPERTIES = { RadikoProgram.RADIKO_STATION, RadikoProgram.PARENT_SCHEDULE,
+			RadikoProgram.START_DATETIME, RadikoProgram.LISTEN_STATUS };
+
+	/** 番組Dao */
+	private final RadikoProgramDao dao;
+	/** 集計値 */
+	private volatile Statistics statistics = new Statistics();
+	/** 世代(増減できない通知を受ける度に加算) */
+	private final AtomicLong generation = new AtomicLong();
+	/** 集計値を集計した時点の世代(未集計は-1) */
+	private volatile long computedGeneration = -1;
+	/** 集計中か(thisで同期) */
+	private boolean computing;
+	/** 集計の排他 */
+	private final Object computeLock = new Object();
+
 	public static int calc() {
 		return 100;
 	}
+
+	/**
+	 * コンストラクタ
+	 */
+	public RadikoProgramService() {
+		this(new RadikoProgramDao());
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param dao 番組Dao
+	 */
+	public RadikoProgramService(RadikoProgramDao dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * 更新通知リスナーとして登録し、全件を集計する
+	 */
+	public void start() {
+		DaoWriteListeners.add(RadikoProgram.DEFINITION_NAME, this);
+		recompute();
+	}
+
+	/**
+	 * 更新通知リスナーの登録を解除する
+	 */
+	public void close() {
+		DaoWriteListeners.remove(RadikoProgram.DEFINITION_NAME, this);
+		markInconsistent();
+	}
+
+	/**
+	 * DBから全件を集計し直す
+	 * <p>
+	 * 集計中に受けた通知は集計結果に含まれるか判断できないため、集計後も最新でない状態とする。
+	 * </p>
+	 */
+	public void recompute() {
+		synchronized (computeLock) {
+			long current;
+			synchronized (this) {
+				computing = true;
+				current = generation.get();
+			}
+			try {
+				Statistics loaded = load();
+				synchronized (this) {
+					statistics = loaded;
+					computedGeneration = current;
+				}
+			} finally {
+				synchronized (this) {
+					computing = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 保持している集計値とDBから集計した結果を比較する
+	 * <p>
+	 * 比較中も更新は反映されるため、更新中に実行した場合は差異が出る場合がある。
+	 * </p>
+	 *
+	 * @return 差異(集計単位:キー:視聴ステータス=保持値/集計値)、一致する場合は空
+	 */
+	public List<String> verify() {
+		Statistics expected = load();
+		Statistics actual = statistics;
+		List<String> differences = new ArrayList<>();
+		compare("station", actual.byStation, expected.byStation, differences);
+		compare("week", actual.byWeek, expected.byWeek, differences);
+		compare("schedule", actual.bySchedule, expected.bySchedule, differences);
+		return differences;
+	}
+
+	/**
+	 * 集計値が最新かを返します。
+	 *
+	 * @return Daoを経由した更新を全て反映している場合true
+	 */
+	public boolean isConsistent() {
+		return computedGeneration == generation.get();
+	}
+
+	/**
+	 * ラジオ局の視聴ステータス毎の番組数を返します。
+	 *
+	 * @param stationOid ラジオ局のoid
+	 * @return 視聴ステータス(未設定は{@value #NO_STATUS}) -> 番組数
+	 */
+	public Map<String, Long> getStatusCountsByStation(String stationOid) {
+		return snapshot(current().byStation.get(stationOid));
+	}
+
+	/**
+	 * 週の視聴ステータス毎の番組数を返します。
+	 *
+	 * @param date 週に含まれる日
+	 * @return 視聴ステータス(未設定は{@value #NO_STATUS}) -> 番組数
+	 */
+	public Map<String, Long> getStatusCountsByWeek(LocalDate date) {
+		return snapshot(current().byWeek.get(weekOf(date)));
+	}
+
+	/**
+	 * 定期予約の視聴ステータス毎の番組数を返します。
+	 *
+	 * @param scheduleOid 定期予約のoid
+	 * @return 視聴ステータス(未設定は{@value #NO_STATUS}) -> 番組数
+	 */
+	public Map<String, Long> getStatusCountsBySchedule(String scheduleOid) {
+		return snapshot(current().bySchedule.get(scheduleOid));
+	}
+
+	/**
+	 * 集計している番組数を返します。
+	 *
+	 * @return 番組数
+	 */
+	public int getProgramCount() {
+		return (int) current().programCount.get();
+	}
+
+	@Override
+	public boolean requiresPrevious() {
+		return true;
+	}
+
+	@Override
+	public void inserted(RadikoProgram entity) {
+		apply(null, Key.of(entity));
+	}
+
+	@Override
+	public void updated(RadikoProgram entity, List<String> updateProperties, RadikoProgram previous) {
+		if (updateProperties == null || !containsStatisticsProperty(updateProperties)) {
+			return;
+		}
+		if (previous == null) {
+			markInconsistent();
+			return;
+		}
+		Key before = Key.of(previous);
+		Key after = Key.of(previous, entity, updateProperties);
+		if (!before.equals(after)) {
+			apply(before, after);
+		}
+	}
+
+	@Override
+	public void deleted(RadikoProgram entity, RadikoProgram previous) {
+		if (previous == null) {
+			markInconsistent();
+			return;
+		}
+		apply(Key.of(previous), null);
+	}
+
+	@Override
+	public void invalidated(List<String> updateProperties) {
+		if (containsStatisticsProperty(updateProperties)) {
+			markInconsistent();
+		}
+	}
+
+	/**
+	 * 集計値を増減する
+	 * <p>
+	 * 集計中の通知は集計結果に含まれる場合があるため増減せず、集計値を最新でない状態とする。
+	 * </p>
+	 *
+	 * @param removed 減算する集計キー(ない場合はnull)
+	 * @param added 加算する集計キー(ない場合はnull)
+	 */
+	private synchronized void apply(Key removed, Key added) {
+		if (computing) {
+			generation.incrementAndGet();
+			return;
+		}
+		if (removed != null) {
+			statistics.add(removed, -1);
+		}
+		if (added != null) {
+			statistics.add(added, 1);
+		}
+	}
+
+	private static boolean containsStatisticsProperty(List<String> properties) {
+		for (String property : STATISTICS_PROPERTIES) {
+			if (properties.contains(property)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 集計値を最新でない状態とする
+	 */
+	private void markInconsistent() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * 最新の集計値を返す
+	 * <p>
+	 * 最新でない場合は集計し直す。集計中に他の通知を受けた場合も、参照を開始した時点以降の集計値を返す。
+	 * </p>
+	 */
+	private Statistics current() {
+		long requested = generation.get();
+		if (computedGeneration < requested) {
+			synchronized (computeLock) {
+				if (computedGeneration < requested) {
+					recompute();
+				}
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * DBから全件を集計する
+	 */
+	private Statistics load() {
+		Statistics loaded = new Statistics();
+		dao.scanAll(program -> {
+			loaded.add(Key.of(program), 1);
+			return true;
+		}, STATISTICS_PROPERTIES);
+		return loaded;
+	}
+
+	private static void compare(String name, Map<?, Map<String, AtomicLong>> actual, Map<?, Map<String, AtomicLong>> expected,
+			List<String> differences) {
+		Set<Object> keys = new HashSet<>(actual.keySet());
+		keys.addAll(expected.keySet());
+		for (Object key : keys) {
+			Map<String, Long> a = snapshot(actual.get(key));
+			Map<String, Long> e = snapshot(expected.get(key));
+			Set<String> statuses = new HashSet<>(a.keySet());
+			statuses.addAll(e.keySet());
+			for (String status : statuses) {
+				long actualCount = a.getOrDefault(status, 0L);
+				long expectedCount = e.getOrDefault(status, 0L);
+				if (actualCount != expectedCount) {
+					differences.add(name + ":" + key + ":" + status + "=" + actualCount + "/" + expectedCount);
+				}
+			}
+		}
+	}
+
+	private static Map<String, Long> snapshot(Map<String, AtomicLong> counts) {
+		if (counts == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, Long> snapshot = new HashMap<>();
+		counts.forEach((status, count) -> {
+			long value = count.get();
+			if (value != 0) {
+				snapshot.put(status, value);
+			}
+		});
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	private static LocalDate weekOf(LocalDate date) {
+		return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+	}
+
+	/**
+	 * 集計値
+	 */
+	private static final class Statistics {
+
+		/** 番組数 */
+		private final AtomicLong programCount = new AtomicLong();
+		/** ラジオ局oid -> 視聴ステータス -> 番組数 */
+		private final Map<String, Map<String, AtomicLong>> byStation = new ConcurrentHashMap<>();
+		/** 週の月曜日 -> 視聴ステータス -> 番組数 */
+		private final Map<LocalDate, Map<String, AtomicLong>> byWeek = new ConcurrentHashMap<>();
+		/** 定期予約oid -> 視聴ステータス -> 番組数 */
+		private final Map<String, Map<String, AtomicLong>> bySchedule = new ConcurrentHashMap<>();
+
+		/**
+		 * 番組の集計キーの集計値を増減する
+		 */
+		private void add(Key key, long delta) {
+			programCount.addAndGet(delta);
+			add(byStation, key.stationOid, key.status, delta);
+			add(byWeek, key.week, key.status, delta);
+			add(bySchedule, key.scheduleOid, key.status, delta);
+		}
+
+		private static <K> void add(Map<K, Map<String, AtomicLong>> counts, K key, String status, long delta) {
+			if (key != null) {
+				counts.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).computeIfAbsent(status, s -> new AtomicLong())
+						.addAndGet(delta);
+			}
+		}
+	}
+
+	/**
+	 * 番組の集計キー
+	 */
+	private static final class Key {
+
+		private final String stationOid;
+		private final LocalDate week;
+		private final String scheduleOid;
+		private final String status;
+
+		private Key(String stationOid, LocalDate week, String scheduleOid, String status) {
+			this.stationOid = stationOid;
+			this.week = week;
+			this.scheduleOid = scheduleOid;
+			this.status = status;
+		}
+
+		private static Key of(RadikoProgram program) {
+			return of(program, program, Collections.emptyList());
+		}
+
+		/**
+		 * 更新後の集計キー
+		 *
+		 * @param previous 更新前の状態
+		 * @param updated 更新したEntity
+		 * @param updateProperties 更新したプロパティ(updatedの値を利用する)
+		 */
+		private static Key of(RadikoProgram previous, RadikoProgram updated, List<String> updateProperties) {
+			Timestamp start = pick(RadikoProgram.START_DATETIME, previous, updated, updateProperties);
+			SelectValue status = pick(RadikoProgram.LISTEN_STATUS, previous, updated, updateProperties);
+			Entity station = pick(RadikoProgram.RADIKO_STATION, previous, updated, updateProperties);
+			Entity schedule = pick(RadikoProgram.PARENT_SCHEDULE, previous, updated, updateProperties);
+			return new Key(oidOf(station), start != null ? weekOf(start.toLocalDateTime().toLocalDate()) : null,
+					oidOf(schedule), status != null && status.getValue() != null ? status.getValue() : NO_STATUS);
+		}
+
+		private static <T> T pick(String property, RadikoProgram previous, RadikoProgram updated, List<String> updateProperties) {
+			return updateProperties.contains(property) ? updated.getValue(property) : previous.getValue(property);
+		}
+
+		private static String oidOf(Entity entity) {
+			return entity != null ? entity.getOid() : null;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return Objects.equals(stationOid, other.stationOid) && Objects.equals(week, other.week)
+					&& Objects.equals(scheduleOid, other.scheduleOid) && status.equals(other.status);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(stationOid, week, scheduleOid, status);
+		}
+	}
 }
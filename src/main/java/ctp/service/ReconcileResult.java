@@ -0,0 +1,156 @@
+package ctp.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import ctp.dao.BulkResult;
+import ctp.entity.RadikoProgram;
+
+/**
+ * 番組の同期結果
+ * <p>
+ * 登録、更新、削除の対象と、反映した場合はその処理結果を保持する。<br>
+ * 更新対象は更新プロパティの組み合わせ毎にまとめている。
+ * </p>
+ */
+public class ReconcileResult {
+
+	/** 登録対象 */
+	private final List<RadikoProgram> inserts;
+	/** 更新対象(更新プロパティ -> 対象) */
+	private final Map<List<String>, List<RadikoProgram>> updates;
+	/** 削除対象 */
+	private final List<RadikoProgram> deletes;
+	/** 変更なし件数 */
+	private final int unchangedCount;
+
+	/** 反映時の処理結果 */
+	private final List<BulkResult> bulkResults = new ArrayList<>();
+	/** 反映済みか */
+	private boolean applied;
+
+	ReconcileResult(List<RadikoProgram> inserts, Map<List<String>, List<RadikoProgram>> updates, List<RadikoProgram> deletes,
+			int unchangedCount) {
+		this.inserts = inserts;
+		this.updates = updates;
+		this.deletes = deletes;
+		this.unchangedCount = unchangedCount;
+	}
+
+	/**
+	 * 処理結果を追加します。
+	 * 
+	 * @param result 処理結果
+	 */
+	void addBulkResult(BulkResult result) {
+		bulkResults.add(result);
+		applied = true;
+	}
+
+	/**
+	 * 登録対象を返します。
+	 * 
+	 * @return 登録対象
+	 */
+	public List<RadikoProgram> getInserts() {
+		return Collections.unmodifiableList(inserts);
+	}
+
+	/**
+	 * 更新対象を返します。
+	 * 
+	 * @return 更新プロパティ毎の更新対象
+	 */
+	public Map<List<String>, List<RadikoProgram>> getUpdates() {
+		return Collections.unmodifiableMap(updates);
+	}
+
+	/**
+	 * 削除対象を返します。
+	 * 
+	 * @return 削除対象
+	 */
+	public List<RadikoProgram> getDeletes() {
+		return Collections.unmodifiableList(deletes);
+	}
+
+	/**
+	 * 登録件数を返します。
+	 * 
+	 * @return 登録件数
+	 */
+	public int getInsertCount() {
+		return inserts.size();
+	}
+
+	/**
+	 * 更新件数を返します。
+	 * 
+	 * @return 更新件数
+	 */
+	public int getUpdateCount() {
+		int count = 0;
+		for (List<RadikoProgram> list : updates.values()) {
+			count += list.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 削除件数を返します。
+	 * 
+	 * @return 削除件数
+	 */
+	public int getDeleteCount() {
+		return deletes.size();
+	}
+
+	/**
+	 * 変更なし件数を返します。
+	 * 
+	 * @return 変更なし件数
+	 */
+	public int getUnchangedCount() {
+		return unchangedCount;
+	}
+
+	/**
+	 * 反映済みかを返します。
+	 * 
+	 * @return 反映済み=true、dry runの場合false
+	 */
+	public boolean isApplied() {
+		return applied;
+	}
+
+	/**
+	 * 反映時に全て成功したかを返します。
+	 * 
+	 * @return 全件成功=true
+	 */
+	public boolean isSuccess() {
+		for (BulkResult result : bulkResults) {
+			if (!result.isSuccess()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 反映時の処理結果を返します。
+	 * 
+	 * @return 処理結果(登録、更新プロパティ毎の更新、削除の順)
+	 */
+	public List<BulkResult> getBulkResults() {
+		return Collections.unmodifiableList(bulkResults);
+	}
+
+	@Override
+	public String toString() {
+		return "insert=" + getInsertCount() + ", update=" + getUpdateCount() + ", delete=" + getDeleteCount()
+				+ ", unchanged=" + getUnchangedCount() + (applied ? "" : " (dry run)");
+	}
+}
@@ -0,0 +1,119 @@
+package ctp.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 定期予約の展開結果
+ * <p>
+ * ラジオ局毎の同期結果と、曜日が解釈できずに展開しなかった定期予約の件数を保持する。
+ * </p>
+ */
+public class ScheduleExpansionResult {
+
+	/** ラジオ局のoid -> 同期結果 */
+	private final Map<String, ReconcileResult> stationResults = new LinkedHashMap<>();
+	/** 展開しなかった定期予約の件数 */
+	private int skippedScheduleCount;
+	/** 処理時間(ミリ秒) */
+	private long elapsedMillis;
+
+	void putStationResult(String stationOid, ReconcileResult result) {
+		stationResults.put(stationOid, result);
+	}
+
+	void setSkippedScheduleCount(int skippedScheduleCount) {
+		this.skippedScheduleCount = skippedScheduleCount;
+	}
+
+	void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * ラジオ局毎の同期結果を返します。
+	 * 
+	 * @return ラジオ局のoid -> 同期結果
+	 */
+	public Map<String, ReconcileResult> getStationResults() {
+		return Collections.unmodifiableMap(stationResults);
+	}
+
+	/**
+	 * 登録件数を返します。
+	 * 
+	 * @return 登録件数
+	 */
+	public int getInsertCount() {
+		int count = 0;
+		for (ReconcileResult result : stationResults.values()) {
+			count += result.getInsertCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 更新件数を返します。
+	 * 
+	 * @return 更新件数
+	 */
+	public int getUpdateCount() {
+		int count = 0;
+		for (ReconcileResult result : stationResults.values()) {
+			count += result.getUpdateCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 変更なし件数を返します。
+	 * 
+	 * @return 変更なし件数
+	 */
+	public int getUnchangedCount() {
+		int count = 0;
+		for (ReconcileResult result : stationResults.values()) {
+			count += result.getUnchangedCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 展開しなかった定期予約の件数を返します。
+	 * 
+	 * @return 曜日、開始時刻、ラジオ局が不正な定期予約の件数
+	 */
+	public int getSkippedScheduleCount() {
+		return skippedScheduleCount;
+	}
+
+	/**
+	 * 処理時間を返します。
+	 * 
+	 * @return 処理時間(ミリ秒)
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 全て成功したかを返します。
+	 * 
+	 * @return 全件成功=true
+	 */
+	public boolean isSuccess() {
+		for (ReconcileResult result : stationResults.values()) {
+			if (!result.isSuccess()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "stations=" + stationResults.size() + ", insert=" + getInsertCount() + ", update=" + getUpdateCount()
+				+ ", unchanged=" + getUnchangedCount() + ", skipped=" + skippedScheduleCount + ", elapsed=" + elapsedMillis + "ms";
+	}
+}
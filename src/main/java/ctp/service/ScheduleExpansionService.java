@@ -0,0 +1,285 @@
+package ctp.service;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.util.StringUtil;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+import ctp.util.ContextPropagation;
+import ctp.util.ObjectUtil;
+import ctp.util.SharedExecutors;
+
+/**
+ * 定期予約の展開処理
+ * <p>
+ * 定期予約(曜日、開始時刻、ラジオ局)を指定期間の番組に展開し、番組として登録する。<br>
+ * 番組は(ラジオ局, 開始日時)で登録済みのものと突き合わせるため、同じ期間で再実行しても重複登録しない。
+ * 登録済みの番組は番組名、視聴用URL、スケジュール設定のみ更新し、視聴ステータス、メモなどは変更しない。
+ * </p>
+ * <p>
+ * ラジオ局単位に並列で処理する。スレッドは全ての展開処理で共有するスレッドプール(スレッド数はシステムプロパティ
+ * {@value #THREADS_PROPERTY}、デフォルト{@value #DEFAULT_THREADS})を使用し、1回の展開処理の同時実行数を並列数に制限する。
+ * </p>
+ * <p>
+ * 次の業務ルールは本リポジトリに根拠がないため、システムプロパティまたはsetterで変更できるようにしている。
+ * </p>
+ * <ul>
+ * <li>視聴期限:開始日時から{@value #DEFAULT_DEADLINE_DAYS}日後(radikoタイムフリーの聴取可能期間)。{@value #DEADLINE_DAYS_PROPERTY}で変更する。
+ * <li>視聴用URL:{@value #DEFAULT_RADIKO_URL_TEMPLATE}。{@value #RADIKO_URL_TEMPLATE_PROPERTY}で変更する。
+ * <li>曜日の選択値:{@link WeekDayMapping}を参照。
+ * </ul>
+ */
+public class ScheduleExpansionService {
+
+	/** デフォルトの並列数 */
+	public static final int DEFAULT_PARALLELISM = 4;
+	/** 共有スレッドプールのスレッド数を指定するシステムプロパティ */
+	public static final String THREADS_PROPERTY = "ctp.expansion.threads";
+	/** 共有スレッドプールのデフォルトのスレッド数 */
+	public static final int DEFAULT_THREADS = 8;
+	/** 視聴期限(開始日時からの日数)を指定するシステムプロパティ */
+	public static final String DEADLINE_DAYS_PROPERTY = "ctp.expansion.deadlineDays";
+	/** デフォルトの視聴期限(開始日時からの日数) */
+	public static final int DEFAULT_DEADLINE_DAYS = 7;
+	/** 視聴用URLのテンプレートを指定するシステムプロパティ */
+	public static final String RADIKO_URL_TEMPLATE_PROPERTY = "ctp.expansion.radikoUrlTemplate";
+	/** デフォルトの視聴用URLのテンプレート({callSign}、{startDatetime}を置換) */
+	public static final String DEFAULT_RADIKO_URL_TEMPLATE = "http://radiko.jp/#!/ts/{callSign}/{startDatetime}";
+	/** 視聴用URLの日時書式 */
+	private static final DateTimeFormatter URL_DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+	/** 更新対象プロパティ */
+	private static final String[] EXPANDED_PROPERTIES = { RadikoProgram.PARENT_SCHEDULE, RadikoProgram.PROGRAM_NAME,
+			RadikoProgram.RADIKO_URL };
+
+	/** 定期予約Dao */
+	private final RadikoScheduleDao scheduleDao;
+	/** 番組Dao */
+	private final RadikoProgramDao programDao;
+	/** 並列数 */
+	private int parallelism = DEFAULT_PARALLELISM;
+	/** 視聴期限(開始日時からの日数) */
+	private int deadlineDays = Integer.getInteger(DEADLINE_DAYS_PROPERTY, DEFAULT_DEADLINE_DAYS);
+	/** 視聴用URLのテンプレート */
+	private String radikoUrlTemplate = System.getProperty(RADIKO_URL_TEMPLATE_PROPERTY, DEFAULT_RADIKO_URL_TEMPLATE);
+	/** 曜日の対応(nullの場合は展開時に{@link WeekDayMapping#load()}で取得) */
+	private WeekDayMapping weekDayMapping;
+
+	/**
+	 * コンストラクタ
+	 */
+	public ScheduleExpansionService() {
+		this(new RadikoScheduleDao(), new RadikoProgramDao());
+	}
+
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param scheduleDao 定期予約Dao
+	 * @param programDao 番組Dao
+	 */
+	public ScheduleExpansionService(RadikoScheduleDao scheduleDao, RadikoProgramDao programDao) {
+		this.scheduleDao = scheduleDao;
+		this.programDao = programDao;
+	}
+
+	/**
+	 * 並列数を設定します。
+	 * 
+	 * @param parallelism 並列数(ラジオ局単位)
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * 視聴期限を設定します。
+	 * 
+	 * @param deadlineDays 開始日時からの日数
+	 */
+	public void setDeadlineDays(int deadlineDays) {
+		if (deadlineDays < 0) {
+			throw new IllegalArgumentException("deadlineDays must not be negative: " + deadlineDays);
+		}
+		this.deadlineDays = deadlineDays;
+	}
+
+	/**
+	 * 視聴用URLのテンプレートを設定します。
+	 * 
+	 * @param radikoUrlTemplate テンプレート({callSign}、{startDatetime}を置換)
+	 */
+	public void setRadikoUrlTemplate(String radikoUrlTemplate) {
+		this.radikoUrlTemplate = radikoUrlTemplate;
+	}
+
+	/**
+	 * 曜日の対応を設定します。
+	 * 
+	 * @param weekDayMapping 曜日の対応、nullの場合は展開時に{@link WeekDayMapping#load()}で取得する
+	 */
+	public void setWeekDayMapping(WeekDayMapping weekDayMapping) {
+		this.weekDayMapping = weekDayMapping;
+	}
+
+	/**
+	 * 全ての定期予約を指定期間の番組に展開する
+	 * 
+	 * @param fromDate 開始日
+	 * @param toDate 終了日(この日を含む)
+	 * @return 展開結果
+	 */
+	public ScheduleExpansionResult expand(LocalDate fromDate, LocalDate toDate) {
+		long start = System.currentTimeMillis();
+		ScheduleExpansionResult result = new ScheduleExpansionResult();
+		WeekDayMapping weekDays = weekDays();
+
+		// 定期予約は1回で取得し、ラジオ局単位にまとめる
+		Map<String, List<RadikoSchedule>> byStation = new LinkedHashMap<>();
+		int skipped = 0;
+		for (RadikoSchedule schedule : scheduleDao.findAll()) {
+			if (ObjectUtil.isBlank(schedule.getStation()) || schedule.getStartTime() == null
+					|| weekDays.toDayOfWeek(schedule.getWeekDay()) == null) {
+				skipped++;
+				continue;
+			}
+			byStation.computeIfAbsent(schedule.getStation().getOid(), key -> new ArrayList<>()).add(schedule);
+		}
+		result.setSkippedScheduleCount(skipped);
+
+		Timestamp from = Timestamp.valueOf(fromDate.atStartOfDay());
+		Timestamp to = Timestamp.valueOf(toDate.atTime(LocalTime.MAX));
+
+		ExecutorService executor = SharedExecutors.get("ctp-schedule-expansion",
+				Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+		// 共有スレッドプールのうち、この展開処理で同時に使用するスレッド数を制限する
+		Semaphore permits = new Semaphore(parallelism);
+		Map<String, Future<ReconcileResult>> futures = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<String, List<RadikoSchedule>> entry : byStation.entrySet()) {
+				permits.acquire();
+				try {
+					futures.put(entry.getKey(), executor.submit(ContextPropagation.wrap(() -> {
+						try {
+							List<RadikoProgram> desired = new ArrayList<>();
+							for (RadikoSchedule schedule : entry.getValue()) {
+								desired.addAll(expand(schedule, fromDate, toDate, weekDays));
+							}
+							RadikoProgramReconciler reconciler = new RadikoProgramReconciler(programDao, EXPANDED_PROPERTIES);
+							reconciler.setDeleteMissing(false);
+							return reconciler.reconcile(entry.getKey(), from, to, desired);
+						} finally {
+							permits.release();
+						}
+					})));
+				} catch (RuntimeException e) {
+					permits.release();
+					throw e;
+				}
+			}
+			for (Map.Entry<String, Future<ReconcileResult>> entry : futures.entrySet()) {
+				result.putStationResult(entry.getKey(), entry.getValue().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("schedule expansion interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// 失敗時は未完了のタスクを中断する(完了済みの場合は何もしない)
+			for (Future<ReconcileResult> future : futures.values()) {
+				future.cancel(true);
+			}
+		}
+
+		result.setElapsedMillis(System.currentTimeMillis() - start);
+		return result;
+	}
+
+	/**
+	 * 定期予約を指定期間の番組に展開する
+	 * <p>
+	 * DBへの登録は行わない。曜日、開始時刻が不正な場合は空のリストを返す。
+	 * </p>
+	 * 
+	 * @param schedule 定期予約
+	 * @param fromDate 開始日
+	 * @param toDate 終了日(この日を含む)
+	 * @return 番組リスト
+	 */
+	public List<RadikoProgram> expand(RadikoSchedule schedule, LocalDate fromDate, LocalDate toDate) {
+		return expand(schedule, fromDate, toDate, weekDays());
+	}
+
+	/**
+	 * 定期予約を指定期間の番組に展開する
+	 */
+	private List<RadikoProgram> expand(RadikoSchedule schedule, LocalDate fromDate, LocalDate toDate,
+			WeekDayMapping weekDays) {
+		List<RadikoProgram> list = new ArrayList<>();
+		DayOfWeek dayOfWeek = weekDays.toDayOfWeek(schedule.getWeekDay());
+		if (dayOfWeek == null || schedule.getStartTime() == null) {
+			return list;
+		}
+
+		Entity station = schedule.getStation();
+		String callSign = station != null ? station.getValue(RadikoStation.CALL_SIGN) : null;
+		LocalTime startTime = schedule.getStartTime().toLocalTime();
+		Map<String, String> bindData = new HashMap<>();
+		bindData.put("callSign", callSign);
+
+		for (LocalDate date = fromDate.with(TemporalAdjusters.nextOrSame(dayOfWeek)); !date.isAfter(toDate); date = date.plusWeeks(1)) {
+			LocalDateTime start = date.atTime(startTime);
+
+			RadikoSchedule parent = new RadikoSchedule();
+			parent.setOid(schedule.getOid());
+			RadikoStation ref = new RadikoStation();
+			ref.setOid(station != null ? station.getOid() : null);
+
+			RadikoProgram program = new RadikoProgram();
+			program.setParentSchedule(parent);
+			program.setRadikoStation(ref);
+			program.setProgramName(schedule.getProgramName());
+			program.setStartDatetime(Timestamp.valueOf(start));
+			program.setDeadline(Timestamp.valueOf(start.plusDays(deadlineDays)));
+			if (StringUtil.isNotBlank(callSign)) {
+				bindData.put("startDatetime", URL_DATETIME_FORMAT.format(start));
+				program.setRadikoUrl(ObjectUtil.replace(radikoUrlTemplate, bindData));
+			}
+			list.add(program);
+		}
+		return list;
+	}
+
+	/**
+	 * 曜日の対応を返します。
+	 */
+	private WeekDayMapping weekDays() {
+		return weekDayMapping != null ? weekDayMapping : WeekDayMapping.load();
+	}
+}
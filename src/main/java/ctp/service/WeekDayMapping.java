@@ -0,0 +1,177 @@
+package ctp.service;
+
+import java.time.DayOfWeek;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.iplass.mtp.ManagerLocator;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.definition.EntityDefinition;
+import org.iplass.mtp.entity.definition.EntityDefinitionManager;
+import org.iplass.mtp.entity.definition.PropertyDefinition;
+import org.iplass.mtp.entity.definition.properties.SelectProperty;
+import org.iplass.mtp.impl.core.ExecuteContext;
+import org.iplass.mtp.util.StringUtil;
+
+import ctp.entity.RadikoSchedule;
+import ctp.util.ObjectUtil;
+
+/**
+ * 定期予約の曜日(選択値)と曜日の対応
+ * <p>
+ * 曜日の選択肢の値はEntity定義で決まるため、コードでは固定しない。対応は次の順に決定する。
+ * </p>
+ * <ol>
+ * <li>システムプロパティ{@value #MAPPING_PROPERTY}(例:{@code 0=SUNDAY,1=MONDAY,...,6=SATURDAY})
+ * <li>定期予約のEntity定義の{@value ctp.entity.RadikoSchedule#WEEK_DAY}プロパティの選択肢
+ * <li>Entity定義を参照できない場合(実行コンテキストがない単体テストなど)は、選択値の値のみから判定する
+ * </ol>
+ * <p>
+ * 選択肢は表示名(「月」「月曜」「月曜日」、MONDAY、Monなど)で判定し、判定できない場合は値で判定する。
+ * 値が数値の場合、選択肢に0がある場合は0:日曜～6:土曜、ない場合はISO-8601の1:月曜～7:日曜とする。
+ * いずれでも判定できない選択肢の定期予約は展開しない(展開結果のスキップ件数に含める)。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class WeekDayMapping {
+
+	/** 選択値と曜日の対応を指定するシステムプロパティ */
+	public static final String MAPPING_PROPERTY = "ctp.expansion.weekDays";
+
+	/** 日本語の曜日名(月曜始まり) */
+	private static final String JAPANESE_DAYS = "月火水木金土日";
+
+	/** 選択値 -> 曜日(nullの場合は選択値の値のみから判定) */
+	private final Map<String, DayOfWeek> mapping;
+
+	private WeekDayMapping(Map<String, DayOfWeek> mapping) {
+		this.mapping = mapping;
+	}
+
+	/**
+	 * 現在のテナントの設定から対応を生成する
+	 *
+	 * @return 曜日の対応
+	 * @throws IllegalArgumentException システムプロパティの書式が不正な場合
+	 */
+	public static WeekDayMapping load() {
+		String spec = System.getProperty(MAPPING_PROPERTY);
+		if (StringUtil.isNotBlank(spec)) {
+			return parse(spec);
+		}
+		if (ExecuteContext.getCurrentContext() != null) {
+			EntityDefinition definition = ManagerLocator.getInstance().getManager(EntityDefinitionManager.class)
+					.get(RadikoSchedule.DEFINITION_NAME);
+			PropertyDefinition property = definition != null ? definition.getProperty(RadikoSchedule.WEEK_DAY) : null;
+			if (property instanceof SelectProperty) {
+				return fromOptions(((SelectProperty) property).getSelectValueList());
+			}
+		}
+		return new WeekDayMapping(null);
+	}
+
+	/**
+	 * 「選択値=曜日」のカンマ区切りから対応を生成する
+	 *
+	 * @param spec 対応(例:{@code 1=MONDAY,2=TUESDAY})、曜日は{@link DayOfWeek}の名前
+	 * @return 曜日の対応
+	 * @throws IllegalArgumentException 書式が不正な場合
+	 */
+	public static WeekDayMapping parse(String spec) {
+		Map<String, DayOfWeek> mapping = new HashMap<>();
+		for (String entry : spec.split(",")) {
+			int separator = entry.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("invalid week day mapping: " + entry);
+			}
+			mapping.put(entry.substring(0, separator).trim(),
+					DayOfWeek.valueOf(entry.substring(separator + 1).trim().toUpperCase(Locale.ROOT)));
+		}
+		return new WeekDayMapping(Collections.unmodifiableMap(mapping));
+	}
+
+	/**
+	 * 選択肢から対応を生成する
+	 *
+	 * @param options 曜日プロパティの選択肢
+	 * @return 曜日の対応(判定できない選択肢は含まない)
+	 */
+	public static WeekDayMapping fromOptions(List<SelectValue> options) {
+		boolean zeroIsSunday = false;
+		for (SelectValue option : options) {
+			if (option.getValue() != null && "0".equals(option.getValue().trim())) {
+				zeroIsSunday = true;
+			}
+		}
+		Map<String, DayOfWeek> mapping = new HashMap<>();
+		for (SelectValue option : options) {
+			DayOfWeek dayOfWeek = fromName(option.getDisplayName());
+			if (dayOfWeek == null) {
+				dayOfWeek = fromValue(option.getValue(), zeroIsSunday);
+			}
+			if (dayOfWeek != null && option.getValue() != null) {
+				mapping.put(option.getValue(), dayOfWeek);
+			}
+		}
+		return new WeekDayMapping(Collections.unmodifiableMap(mapping));
+	}
+
+	/**
+	 * 曜日の選択値を曜日に変換する
+	 *
+	 * @param weekDay 曜日の選択値
+	 * @return 曜日、対応がない場合はnull
+	 */
+	public DayOfWeek toDayOfWeek(SelectValue weekDay) {
+		if (ObjectUtil.isBlank(weekDay) || weekDay.getValue() == null) {
+			return null;
+		}
+		if (mapping != null) {
+			return mapping.get(weekDay.getValue());
+		}
+		return fromValue(weekDay.getValue(), false);
+	}
+
+	/**
+	 * 値から判定する(数値、または曜日名)
+	 */
+	private static DayOfWeek fromValue(String value, boolean zeroIsSunday) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			int number = Integer.parseInt(value.trim());
+			if (zeroIsSunday) {
+				return number >= 0 && number <= 6 ? DayOfWeek.SUNDAY.plus(number) : null;
+			}
+			return number >= 1 && number <= 7 ? DayOfWeek.of(number) : null;
+		} catch (NumberFormatException e) {
+			return fromName(value);
+		}
+	}
+
+	/**
+	 * 曜日名(日本語、英語)から判定する
+	 */
+	private static DayOfWeek fromName(String name) {
+		if (StringUtil.isBlank(name)) {
+			return null;
+		}
+		String value = name.trim();
+		int japanese = JAPANESE_DAYS.indexOf(value.charAt(0));
+		if (japanese >= 0 && (value.length() == 1 || value.startsWith("曜", 1))) {
+			return DayOfWeek.of(japanese + 1);
+		}
+		String upper = value.toUpperCase(Locale.ROOT);
+		for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+			if (upper.length() >= 3 && dayOfWeek.name().startsWith(upper)) {
+				return dayOfWeek;
+			}
+		}
+		return null;
+	}
+}
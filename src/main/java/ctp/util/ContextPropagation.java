@@ -0,0 +1,132 @@
+package ctp.util;
+
+import java.util.concurrent.Callable;
+
+import org.iplass.mtp.impl.auth.AuthContextHolder;
+import org.iplass.mtp.impl.auth.AuthService;
+import org.iplass.mtp.impl.auth.UserContext;
+import org.iplass.mtp.impl.core.ExecuteContext;
+import org.iplass.mtp.impl.core.TenantContext;
+import org.iplass.mtp.impl.core.TenantContextService;
+import org.iplass.mtp.spi.ServiceRegistry;
+
+/**
+ * 実行コンテキストの引き継ぎ
+ * <p>
+ * 別スレッドで処理する際に、呼び出し元のテナント、ユーザで処理する。<br>
+ * Entity操作はテナントの実行コンテキストが必要なため、ExecutorServiceに渡す処理は本クラスでラップすること。
+ * </p>
+ * <p>
+ * 呼び出し元の実行コンテキスト(リクエスト毎に変更される)は共有せず、テナントIDとユーザのみを保持する。
+ * 処理毎にテナントIDから新しい実行コンテキストを生成し、処理の終了時に破棄する。
+ * そのため、リクエストの終了後も動作し続けるスレッドで利用してもリクエストの実行コンテキストを保持しない。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class ContextPropagation {
+
+	/**
+	 * コンストラクタ
+	 */
+	private ContextPropagation() {
+	}
+
+	/**
+	 * 呼び出し元のテナント、ユーザで処理するようラップする
+	 * <p>
+	 * 本メソッドを呼び出したスレッドのテナントIDとユーザを取得し、処理の実行毎に新しい実行コンテキストを生成して処理する。
+	 * 実行コンテキストがない(プラットフォーム外の)場合は何もしない。
+	 * </p>
+	 *
+	 * @param task 処理
+	 * @param <T> 処理結果の型
+	 * @return ラップした処理
+	 */
+	public static <T> Callable<T> wrap(Callable<T> task) {
+		ExecuteContext context = ExecuteContext.getCurrentContext();
+		if (context == null) {
+			return task;
+		}
+		int tenantId = context.getClientTenantId();
+		UserContext user = AuthContextHolder.getAuthContext().getUserContext();
+		Thread caller = Thread.currentThread();
+		return () -> {
+			if (Thread.currentThread() == caller) {
+				// 呼び出し元スレッドで実行する場合(CallerRunsPolicyなど)はそのまま実行する
+				return task.call();
+			}
+			TenantContext tenant = ServiceRegistry.getRegistry().getService(TenantContextService.class).getTenantContext(tenantId);
+			try {
+				return ExecuteContext.executeAs(tenant, () -> {
+					if (user == null) {
+						return call(task);
+					}
+					return ServiceRegistry.getRegistry().getService(AuthService.class).doSecuredAction(user, () -> call(task));
+				});
+			} catch (TaskException e) {
+				throw e.getCause();
+			}
+		};
+	}
+
+	/**
+	 * 現在のテナントIDを返します。
+	 *
+	 * @return テナントID、実行コンテキストがない場合は0
+	 */
+	public static int currentTenantId() {
+		ExecuteContext context = ExecuteContext.getCurrentContext();
+		return context != null ? context.getClientTenantId() : 0;
+	}
+
+	/**
+	 * 呼び出し元のテナント、ユーザで処理するようラップする
+	 *
+	 * @param task 処理
+	 * @return ラップした処理
+	 * @see #wrap(Callable)
+	 */
+	public static Runnable wrap(Runnable task) {
+		Callable<Object> callable = wrap(() -> {
+			task.run();
+			return null;
+		});
+		return () -> {
+			try {
+				callable.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new TaskException(e);
+		}
+	}
+
+	/**
+	 * 処理の検査例外を実行コンテキストの外に伝える
+	 */
+	private static final class TaskException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private TaskException(Exception cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized Exception getCause() {
+			return (Exception) super.getCause();
+		}
+	}
+}
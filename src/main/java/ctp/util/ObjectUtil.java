@@ -4,7 +4,6 @@ import java.math.BigDecimal;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
 
 import org.iplass.mtp.entity.Entity;
 import org.iplass.mtp.entity.SelectValue;
@@ -216,7 +215,8 @@ public final class ObjectUtil {
 	 * 第一引数の文字列に対し、第二引数のkey値を第二引数のvalue値へ置き換える。<br />
 	 * 第一引数の文字列で、置き換えたい文字は以下のように設定してください。<br />
 	 * <br />
-	 * {第二引数のkey値}
+	 * {第二引数のkey値}<br />
+	 * 解析結果は{@link Template}にキャッシュされる。
 	 *
 	 * @param baseStr バインド前の文字列
 	 * @param bindData バインド情報
@@ -226,13 +226,6 @@ public final class ObjectUtil {
 	    if (StringUtil.isBlank(baseStr) || CollectionUtil.isEmpty(bindData)) {
 	        return baseStr;
 	    }
-	    String result = baseStr;
-	    for (Map.Entry<String, String> data : bindData.entrySet()) {
-	        if (StringUtil.isNotBlank(data.getKey())) {
-	            result = result.replaceAll("\\{" + data.getKey() + "\\}"
-	                    , StringUtil.isNotBlank(data.getValue()) ? Matcher.quoteReplacement(data.getValue()) : "");
-	        }
-	    }
-	    return result;
+	    return Template.of(baseStr).render(bindData);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package ctp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 共有スレッドプール
+ * <p>
+ * 名前毎にスレッド数を制限したスレッドプールを保持する。
+ * スレッドはデーモンスレッドで名前に連番を付与し、待ち行列が溢れた場合は呼び出し元スレッドで実行する。
+ * 実行コンテキストは引き継がないため、タスクは{@link ContextPropagation#wrap(java.util.concurrent.Callable)}で包んで投入する。
+ * </p>
+ * <p>
+ * アプリケーションの停止時(再デプロイを含む)は{@link #shutdown()}で全てのスレッドプールを停止する。
+ * webアプリケーションではweb.xmlに登録した{@link SharedExecutorsListener}から呼び出す。
+ * 停止後に取得した場合は新たに生成する。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class SharedExecutors {
+
+	/** 停止時の実行中タスクの完了待ち時間(秒) */
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+	private static final Logger logger = LoggerFactory.getLogger(SharedExecutors.class);
+
+	/** 名前 -> スレッドプール */
+	private static final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ
+	 */
+	private SharedExecutors() {
+	}
+
+	/**
+	 * スレッドプールを返します。
+	 * <p>
+	 * 同じ名前で最初に取得した時点のスレッド数で生成する。
+	 * </p>
+	 *
+	 * @param name 名前(スレッド名の接頭辞)
+	 * @param threads スレッド数
+	 * @return スレッドプール
+	 */
+	public static ExecutorService get(String name, int threads) {
+		return executors.compute(name,
+				(key, current) -> current != null && !current.isShutdown() ? current : newExecutor(name, threads));
+	}
+
+	/**
+	 * 全てのスレッドプールを停止する
+	 * <p>
+	 * 実行中のタスクの完了を最大{@value #SHUTDOWN_TIMEOUT_SECONDS}秒待ち、完了しない場合は割り込む。
+	 * </p>
+	 */
+	public static void shutdown() {
+		List<ExecutorService> targets = new ArrayList<>(executors.values());
+		executors.clear();
+		for (ExecutorService executor : targets) {
+			executor.shutdown();
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+		for (ExecutorService executor : targets) {
+			try {
+				if (!executor.awaitTermination(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+					executor.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		logger.info("shared executors shut down. count={}", targets.size());
+	}
+
+	/**
+	 * スレッドプールを生成する
+	 * <p>
+	 * 待ち行列はスレッド数の16倍。アイドル状態のスレッドは60秒で終了する。
+	 * </p>
+	 */
+	private static ExecutorService newExecutor(String name, int threads) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(threads * 16), runnable -> {
+					Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
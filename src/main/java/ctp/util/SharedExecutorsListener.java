@@ -0,0 +1,25 @@
+package ctp.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * 共有スレッドプールの停止
+ * <p>
+ * web.xmlにlistenerとして登録し、webアプリケーションの停止時(再デプロイを含む)に{@link SharedExecutors#shutdown()}を呼び出す。
+ * スレッドが残るとwebアプリケーションのクラスローダが解放されないため、必ず登録すること。
+ * </p>
+ *
+ * @author lis93e
+ */
+public class SharedExecutorsListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		SharedExecutors.shutdown();
+	}
+}
@@ -0,0 +1,135 @@
+package ctp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.iplass.mtp.util.StringUtil;
+
+/**
+ * 置換テンプレート
+ * <p>
+ * 文字列中の{key}を置換位置として一度だけ解析し、固定文字列と置換位置の並びとして保持する。<br>
+ * 置換は1回の走査で行うため、置換対象の件数に関わらず文字列のコピーは1回となる。
+ * 解析結果はテンプレート文字列単位にキャッシュする。
+ * </p>
+ * <p>
+ * 置換内容は{@link ObjectUtil#replace(String, Map)}と同じく以下とする。
+ * </p>
+ * <ul>
+ * <li>バインド情報にkeyが存在する場合、valueで置換する。valueが空白の場合は空文字で置換する。
+ * <li>バインド情報にkeyが存在しない場合、{key}のまま残す。
+ * <li>置換後の文字列に含まれる{key}は再度置換しない。
+ * </ul>
+ *
+ * @author lis93e
+ */
+public final class Template {
+
+	/** キャッシュ件数上限(超えた場合は全て破棄する) */
+	private static final int CACHE_MAX_SIZE = 1024;
+	/** 解析済みテンプレート */
+	private static final Map<String, Template> cache = new ConcurrentHashMap<>();
+	/** 置換時に利用するバッファ */
+	private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	/** 固定文字列(置換位置の前。末尾に置換位置の後の文字列を持つため置換位置より1つ多い) */
+	private final String[] literals;
+	/** 置換位置のkey */
+	private final String[] keys;
+	/** テンプレート文字列の長さ */
+	private final int length;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param template テンプレート文字列
+	 */
+	private Template(String template) {
+		List<String> literalList = new ArrayList<>();
+		List<String> keyList = new ArrayList<>();
+
+		int literalStart = 0;
+		int open = template.indexOf('{');
+		while (open >= 0) {
+			int close = template.indexOf('}', open + 1);
+			if (close < 0) {
+				break;
+			}
+			int nested = template.indexOf('{', open + 1);
+			if (nested >= 0 && nested < close) {
+				// "{{key}"の場合は内側の"{"から置換位置とする
+				open = nested;
+				continue;
+			}
+			literalList.add(template.substring(literalStart, open));
+			keyList.add(template.substring(open + 1, close));
+			literalStart = close + 1;
+			open = template.indexOf('{', literalStart);
+		}
+		literalList.add(template.substring(literalStart));
+
+		this.literals = literalList.toArray(new String[0]);
+		this.keys = keyList.toArray(new String[0]);
+		this.length = template.length();
+	}
+
+	/**
+	 * テンプレートを取得する
+	 *
+	 * @param template テンプレート文字列
+	 * @return 解析済みテンプレート
+	 */
+	public static Template of(String template) {
+		Template t = cache.get(template);
+		if (t == null) {
+			if (cache.size() >= CACHE_MAX_SIZE) {
+				cache.clear();
+			}
+			t = cache.computeIfAbsent(template, Template::new);
+		}
+		return t;
+	}
+
+	/**
+	 * バインド情報で置換した文字列を返す
+	 *
+	 * @param bindData バインド情報
+	 * @return バインド後の文字列
+	 */
+	public String render(Map<String, String> bindData) {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		render(bindData, sb);
+		String result = sb.toString();
+		if (sb.capacity() > 64 * 1024) {
+			// 大きな文字列で拡張したバッファは保持しない
+			buffer.remove();
+		}
+		return result;
+	}
+
+	/**
+	 * バインド情報で置換した文字列を追加する
+	 *
+	 * @param bindData バインド情報
+	 * @param out 出力先
+	 */
+	public void render(Map<String, String> bindData, StringBuilder out) {
+		out.ensureCapacity(out.length() + length);
+		for (int i = 0; i < keys.length; i++) {
+			out.append(literals[i]);
+			String key = keys[i];
+			if (StringUtil.isNotBlank(key) && bindData.containsKey(key)) {
+				String value = bindData.get(key);
+				if (StringUtil.isNotBlank(value)) {
+					out.append(value);
+				}
+			} else {
+				out.append('{').append(key).append('}');
+			}
+		}
+		out.append(literals[keys.length]);
+	}
+}
@@ -0,0 +1,187 @@
+package ctp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 階層型タイミングホイール
+ * <p>
+ * 期限付きの要素を期限毎のバケットに振り分けて保持し、{@link #advance(long, Consumer)}で期限を過ぎたバケットの要素を取り出す。<br>
+ * 第1階層のバケット幅をtick、バケット数をwheelSizeとし、上位の階層はバケット幅を下位の階層のwheelSize倍とする。
+ * 上位階層のバケットは時刻がその開始に達した時点で下位の階層に振り分け直すため、
+ * 要素の追加、取り出しは保持件数に関わらず1件あたり一定のコストとなる。
+ * </p>
+ * <p>
+ * 要素は期限を含むtickが終了した時点で取り出すため、取り出しは期限から最大1tick遅れる(早まることはない)。
+ * 全階層の範囲を超える期限の要素は、最上位階層の1周毎に振り分け直す。
+ * 本クラスはスレッドセーフではない。
+ * </p>
+ *
+ * @author lis93e
+ * @param <T> 要素の型
+ */
+public class TimingWheel<T> {
+
+	/** 階層毎のバケット幅(ミリ秒) */
+	private final long[] levelTicks;
+	/** 1階層のバケット数 */
+	private final int wheelSize;
+	/** 階層 -> バケット */
+	private final List<List<List<Entry<T>>>> levels = new ArrayList<>();
+	/** 全階層の範囲を超える要素 */
+	private List<Entry<T>> overflow = new ArrayList<>();
+	/** 追加時点で期限を過ぎていた要素 */
+	private List<Entry<T>> overdue = new ArrayList<>();
+	/** 処理済みの時刻(この時刻より前の期限の要素は取り出し済み、tickの倍数) */
+	private long currentTime;
+	/** 保持件数 */
+	private int size;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param tickMillis 第1階層のバケット幅(ミリ秒)
+	 * @param wheelSize 1階層のバケット数
+	 * @param levelCount 階層数
+	 * @param startTime 開始時刻(エポックミリ秒)
+	 */
+	public TimingWheel(long tickMillis, int wheelSize, int levelCount, long startTime) {
+		if (tickMillis <= 0 || wheelSize <= 1 || levelCount <= 0) {
+			throw new IllegalArgumentException("invalid wheel: tick=" + tickMillis + ", wheelSize=" + wheelSize + ", levels=" + levelCount);
+		}
+		this.wheelSize = wheelSize;
+		this.levelTicks = new long[levelCount];
+		long levelTick = tickMillis;
+		for (int level = 0; level < levelCount; level++) {
+			levelTicks[level] = levelTick;
+			List<List<Entry<T>>> buckets = new ArrayList<>(wheelSize);
+			for (int i = 0; i < wheelSize; i++) {
+				buckets.add(new ArrayList<>());
+			}
+			levels.add(buckets);
+			levelTick = Math.multiplyExact(levelTick, wheelSize);
+		}
+		this.currentTime = Math.floorDiv(startTime, tickMillis) * tickMillis;
+	}
+
+	/**
+	 * 要素を追加する
+	 *
+	 * @param item 要素
+	 * @param expireAt 期限(エポックミリ秒)
+	 */
+	public void add(T item, long expireAt) {
+		add(new Entry<>(item, expireAt));
+		size++;
+	}
+
+	/**
+	 * 指定時刻までに期限を過ぎた要素を取り出す
+	 *
+	 * @param now 現在時刻(エポックミリ秒)
+	 * @param expired 取り出した要素の処理
+	 */
+	public void advance(long now, Consumer<T> expired) {
+		if (!overdue.isEmpty()) {
+			List<Entry<T>> list = overdue;
+			overdue = new ArrayList<>();
+			fire(list, expired);
+		}
+		long tick = levelTicks[0];
+		if (size == 0) {
+			currentTime = Math.max(currentTime, Math.floorDiv(now, tick) * tick);
+			return;
+		}
+		while (currentTime + tick <= now) {
+			// 開始時刻に達した上位階層のバケットを下位の階層に振り分け直す
+			long topSpan = levelTicks[levelTicks.length - 1] * wheelSize;
+			if (currentTime % topSpan == 0 && !overflow.isEmpty()) {
+				List<Entry<T>> list = overflow;
+				overflow = new ArrayList<>();
+				list.forEach(this::add);
+			}
+			for (int level = levelTicks.length - 1; level > 0; level--) {
+				if (currentTime % levelTicks[level] == 0) {
+					List<Entry<T>> bucket = levels.get(level).get(index(currentTime, level));
+					if (!bucket.isEmpty()) {
+						List<Entry<T>> list = new ArrayList<>(bucket);
+						bucket.clear();
+						list.forEach(this::add);
+					}
+				}
+			}
+			List<Entry<T>> bucket = levels.get(0).get(index(currentTime, 0));
+			currentTime += tick;
+			if (!bucket.isEmpty()) {
+				List<Entry<T>> list = new ArrayList<>(bucket);
+				bucket.clear();
+				fire(list, expired);
+			}
+			if (size == 0) {
+				currentTime = Math.max(currentTime, Math.floorDiv(now, tick) * tick);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 保持件数を返します。
+	 *
+	 * @return 保持件数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 処理済みの時刻を返します。
+	 *
+	 * @return この時刻より前の期限の要素は取り出し済み
+	 */
+	public long getCurrentTime() {
+		return currentTime;
+	}
+
+	private void fire(List<Entry<T>> list, Consumer<T> expired) {
+		size -= list.size();
+		for (Entry<T> entry : list) {
+			expired.accept(entry.item);
+		}
+	}
+
+	/**
+	 * 期限に応じた階層のバケットに追加する(件数は変更しない)
+	 */
+	private void add(Entry<T> entry) {
+		if (entry.expireAt < currentTime) {
+			overdue.add(entry);
+			return;
+		}
+		for (int level = 0; level < levelTicks.length; level++) {
+			if (Math.floorDiv(entry.expireAt, levelTicks[level]) - Math.floorDiv(currentTime, levelTicks[level]) < wheelSize) {
+				levels.get(level).get(index(entry.expireAt, level)).add(entry);
+				return;
+			}
+		}
+		overflow.add(entry);
+	}
+
+	private int index(long time, int level) {
+		return (int) Math.floorMod(Math.floorDiv(time, levelTicks[level]), (long) wheelSize);
+	}
+
+	/**
+	 * 要素と期限
+	 */
+	private static final class Entry<T> {
+
+		private final T item;
+		private final long expireAt;
+
+		private Entry(T item, long expireAt) {
+			this.item = item;
+			this.expireAt = expireAt;
+		}
+	}
+}
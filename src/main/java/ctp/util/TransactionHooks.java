@@ -0,0 +1,68 @@
+package ctp.util;
+
+import org.iplass.mtp.ManagerLocator;
+import org.iplass.mtp.impl.core.ExecuteContext;
+import org.iplass.mtp.transaction.Transaction;
+import org.iplass.mtp.transaction.TransactionListener;
+import org.iplass.mtp.transaction.TransactionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * トランザクション完了時の処理
+ * <p>
+ * キャッシュの破棄や更新の通知など、コミットされた内容にのみ反映すべき処理を現在のトランザクションのコミット後に実行する。
+ * ロールバックされた場合は実行しない。
+ * </p>
+ *
+ * @author lis93e
+ */
+public final class TransactionHooks {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransactionHooks.class);
+
+	/**
+	 * コンストラクタ
+	 */
+	private TransactionHooks() {
+	}
+
+	/**
+	 * 現在のトランザクションのコミット後に実行する
+	 * <p>
+	 * トランザクション外(実行コンテキストがない場合を含む)は即時に実行する。
+	 * コミット後の処理で発生した例外はコミット結果に影響させず、ログ出力のみ行う。
+	 * </p>
+	 *
+	 * @param action 処理
+	 */
+	public static void afterCommit(Runnable action) {
+		Transaction transaction = currentTransaction();
+		if (transaction == null) {
+			action.run();
+			return;
+		}
+		transaction.addTransactionListener(new TransactionListener() {
+			@Override
+			public void afterCommit(Transaction t) {
+				try {
+					action.run();
+				} catch (RuntimeException e) {
+					logger.warn("after commit action failed.", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 現在のトランザクションを取得する
+	 *
+	 * @return トランザクション、トランザクション外の場合はnull
+	 */
+	private static Transaction currentTransaction() {
+		if (ExecuteContext.getCurrentContext() == null) {
+			return null;
+		}
+		return ManagerLocator.getInstance().getManager(TransactionManager.class).currentTransaction();
+	}
+}
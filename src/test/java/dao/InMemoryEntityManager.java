@@ -0,0 +1,672 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.EntityConcurrentUpdateException;
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.entity.SearchResult;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.UpdateCondition;
+import org.iplass.mtp.entity.UpdateCondition.UpdateValue;
+import org.iplass.mtp.entity.UpdateOption;
+import org.iplass.mtp.entity.ValidateResult;
+import org.iplass.mtp.entity.query.Limit;
+import org.iplass.mtp.entity.query.OrderBy;
+import org.iplass.mtp.entity.query.Query;
+import org.iplass.mtp.entity.query.SortSpec;
+import org.iplass.mtp.entity.query.SortSpec.SortType;
+import org.iplass.mtp.entity.query.condition.Condition;
+import org.iplass.mtp.entity.query.condition.expr.And;
+import org.iplass.mtp.entity.query.condition.expr.Or;
+import org.iplass.mtp.entity.query.condition.predicate.Between;
+import org.iplass.mtp.entity.query.condition.predicate.ComparisonPredicate;
+import org.iplass.mtp.entity.query.condition.predicate.Equals;
+import org.iplass.mtp.entity.query.condition.predicate.Greater;
+import org.iplass.mtp.entity.query.condition.predicate.GreaterEqual;
+import org.iplass.mtp.entity.query.condition.predicate.In;
+import org.iplass.mtp.entity.query.condition.predicate.IsNull;
+import org.iplass.mtp.entity.query.condition.predicate.Lesser;
+import org.iplass.mtp.entity.query.condition.predicate.LesserEqual;
+import org.iplass.mtp.entity.query.value.ValueExpression;
+import org.iplass.mtp.entity.query.value.primary.EntityField;
+import org.iplass.mtp.entity.query.value.primary.Literal;
+
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+
+/**
+ * DBを利用しないEntityManager
+ * <p>
+ * {@link #asEntityManager()}で取得したEntityManagerをDaoのコンストラクタに指定することで、
+ * DB接続なしでDao層を動作させる。性能試験、単体テスト用。
+ * </p>
+ * <p>
+ * 対応している機能は以下のみ。
+ * </p>
+ * <ul>
+ * <li>load、loadAndLock(ロックは取得しない)、insert、update、delete、count、updateAll
+ * <li>searchEntity、search(List取得、callback)
+ * <li>validate({@link #setValidator(Function)}で設定した検証処理、未設定の場合は常にエラーなし)
+ * <li>条件:Equals、Between、In、Greater、GreaterEqual、Lesser、LesserEqual、IsNull、And、Or
+ * <li>order by、limit/offset
+ * </ul>
+ * <p>
+ * 登録したプロパティにはインデックスを作成し、Equals、Between、In、範囲条件の絞り込みに利用する。
+ * {@link #setLatency(long, TimeUnit)}で1呼び出し毎の遅延を設定できる。
+ * </p>
+ * <p>
+ * 更新日時は更新毎に必ず進め(同じミリ秒内の更新は1ミリ秒ずつ進める)、versionは更新毎に1加算する。
+ * このため更新日時のチェックは時計の精度に依存しない。時計は{@link #setClock(LongSupplier)}で差し替えられる。
+ * </p>
+ */
+public class InMemoryEntityManager implements InvocationHandler {
+
+	/** Entity定義 */
+	private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+	/** 1呼び出し毎の遅延(ナノ秒) */
+	private volatile long latencyNanos;
+
+	/** 検証処理 */
+	private volatile Function<Entity, ValidateResult> validator;
+
+	/** 時計(エポックミリ秒) */
+	private volatile LongSupplier clock = System::currentTimeMillis;
+
+	/** 最後に払い出した更新日時(エポックミリ秒) */
+	private final AtomicLong lastTimestamp = new AtomicLong();
+
+	/**
+	 * コンストラクタ
+	 * <p>
+	 * ctpのEntity(番組、定期予約、ラジオ局)を登録済みの状態で生成する。
+	 * </p>
+	 */
+	public InMemoryEntityManager() {
+		register(RadikoProgram.DEFINITION_NAME, RadikoProgram::new,
+				new String[] { RadikoProgram.PARENT_SCHEDULE, RadikoProgram.RADIKO_STATION, RadikoProgram.PROGRAM_NAME,
+						RadikoProgram.START_DATETIME, RadikoProgram.NOTE, RadikoProgram.RADIKO_URL, RadikoProgram.DEADLINE,
+						RadikoProgram.LISTEN_STATUS },
+				RadikoProgram.START_DATETIME, RadikoProgram.DEADLINE, RadikoProgram.RADIKO_STATION, RadikoProgram.PARENT_SCHEDULE);
+		register(RadikoSchedule.DEFINITION_NAME, RadikoSchedule::new,
+				new String[] { RadikoSchedule.STATION, RadikoSchedule.PROGRAM_NAME, RadikoSchedule.WEEK_DAY,
+						RadikoSchedule.START_TIME, RadikoSchedule.NOTES, RadikoSchedule.FAVO_RATE },
+				RadikoSchedule.STATION);
+		register(RadikoStation.DEFINITION_NAME, RadikoStation::new,
+				new String[] { RadikoStation.CALL_SIGN, RadikoStation.STATION_NAME },
+				RadikoStation.CALL_SIGN);
+	}
+
+	/**
+	 * Entity定義を登録する
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @param factory Entityの生成処理
+	 * @param properties 保持するプロパティ(oid、name、version、updateDate以外)
+	 * @param indexProperties インデックスを作成するプロパティ
+	 */
+	public void register(String defName, Supplier<? extends Entity> factory, String[] properties, String... indexProperties) {
+		tables.put(defName, new Table(factory, properties, indexProperties));
+	}
+
+	/**
+	 * 1呼び出し毎の遅延を設定する
+	 *
+	 * @param latency 遅延
+	 * @param unit 遅延の単位
+	 */
+	public void setLatency(long latency, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+	}
+
+	/**
+	 * 更新日時に使用する時計を設定する
+	 *
+	 * @param clock 時計(エポックミリ秒)
+	 */
+	public void setClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * validateの検証処理を設定する
+	 *
+	 * @param validator 検証処理
+	 */
+	public void setValidator(Function<Entity, ValidateResult> validator) {
+		this.validator = validator;
+	}
+
+	/**
+	 * 保持している件数を返します。
+	 *
+	 * @param defName EntityのdefinitionName
+	 * @return 件数
+	 */
+	public int size(String defName) {
+		return table(defName).rows.size();
+	}
+
+	/**
+	 * EntityManagerを返します。
+	 *
+	 * @return EntityManager
+	 */
+	public EntityManager asEntityManager() {
+		return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[] { EntityManager.class }, this);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "toString":
+			return "InMemoryEntityManager";
+		default:
+			break;
+		}
+
+		long latency = latencyNanos;
+		if (latency > 0) {
+			LockSupport.parkNanos(latency);
+		}
+
+		switch (method.getName()) {
+		case "load":
+		case "loadAndLock":
+			return load((String) args[0], (String) args[args.length == 4 ? 2 : 1]);
+		case "insert":
+			return insert((Entity) args[0]);
+		case "update":
+			update((Entity) args[0], (UpdateOption) args[1]);
+			return null;
+		case "delete":
+			delete((Entity) args[0]);
+			return null;
+		case "updateAll":
+			return updateAll((UpdateCondition) args[0]);
+		case "count":
+			return select((Query) args[0]).size();
+		case "searchEntity":
+			return searchEntity((Query) args[0], callback(args));
+		case "search":
+			return search((Query) args[0], callback(args));
+		case "validate":
+			return validator != null ? validator.apply((Entity) args[0]) : new ValidateResult();
+		default:
+			throw new UnsupportedOperationException(method.toString());
+		}
+	}
+
+	private Entity load(String oid, String defName) {
+		Map<String, Object> row = table(defName).rows.get(oid);
+		return row == null ? null : table(defName).toEntity(row);
+	}
+
+	private String insert(Entity entity) {
+		Table table = table(entity.getDefinitionName());
+		String oid = entity.getOid() != null ? entity.getOid() : UUID.randomUUID().toString();
+		Map<String, Object> row = new HashMap<>();
+		for (String property : table.properties) {
+			row.put(property, entity.getValue(property));
+		}
+		row.put(Entity.OID, oid);
+		row.put(Entity.VERSION, 0L);
+		row.put(Entity.UPDATE_DATE, nextTimestamp());
+		if (table.rows.putIfAbsent(oid, row) != null) {
+			throw new IllegalStateException("duplicate oid: " + oid);
+		}
+		table.index(oid, null, row);
+		entity.setOid(oid);
+		entity.setVersion(0L);
+		return oid;
+	}
+
+	private void update(Entity entity, UpdateOption option) {
+		Table table = table(entity.getDefinitionName());
+		table.rows.compute(entity.getOid(), (oid, current) -> {
+			if (current == null) {
+				throw new EntityConcurrentUpdateException("already deleted: " + oid);
+			}
+			if (option.isCheckTimestamp() && !current.get(Entity.UPDATE_DATE).equals(entity.getUpdateDate())) {
+				throw new EntityConcurrentUpdateException("already updated: " + oid);
+			}
+			Map<String, Object> row = new HashMap<>(current);
+			for (String property : option.getUpdateProperties()) {
+				row.put(property, entity.getValue(property));
+			}
+			touch(current, row);
+			table.index(oid, current, row);
+			return row;
+		});
+	}
+
+	private void delete(Entity entity) {
+		Table table = table(entity.getDefinitionName());
+		table.rows.computeIfPresent(entity.getOid(), (oid, current) -> {
+			table.index(oid, current, null);
+			return null;
+		});
+	}
+
+	private int updateAll(UpdateCondition condition) {
+		Table table = table(condition.getDefinitionName());
+		Condition where = condition.getWhere() != null ? condition.getWhere().getCondition() : null;
+		int[] count = new int[1];
+		for (String oid : table.candidates(where)) {
+			table.rows.computeIfPresent(oid, (key, current) -> {
+				if (!table.matches(current, where)) {
+					return current;
+				}
+				count[0]++;
+				Map<String, Object> row = new HashMap<>(current);
+				for (UpdateValue value : condition.getValues()) {
+					row.put(value.getEntityField(), literal(value.getValue()));
+				}
+				touch(current, row);
+				table.index(key, current, row);
+				return row;
+			});
+		}
+		return count[0];
+	}
+
+	/**
+	 * versionを1加算し、更新日時を進める
+	 */
+	private void touch(Map<String, Object> current, Map<String, Object> row) {
+		row.put(Entity.VERSION, (Long) current.get(Entity.VERSION) + 1);
+		row.put(Entity.UPDATE_DATE, nextTimestamp());
+	}
+
+	/**
+	 * 更新日時を払い出す(前回より必ず後の日時)
+	 */
+	private Timestamp nextTimestamp() {
+		long now = clock.getAsLong();
+		return new Timestamp(lastTimestamp.updateAndGet(last -> Math.max(now, last + 1)));
+	}
+
+	private Object searchEntity(Query query, Predicate<Object> callback) {
+		Table table = table(query.getFrom().getEntityName());
+		List<Map<String, Object>> rows = select(query);
+		if (callback != null) {
+			for (Map<String, Object> row : rows) {
+				if (!callback.test(table.toEntity(row))) {
+					break;
+				}
+			}
+			return null;
+		}
+		List<Entity> list = new ArrayList<>(rows.size());
+		for (Map<String, Object> row : rows) {
+			list.add(table.toEntity(row));
+		}
+		return new SearchResult<>(-1, list);
+	}
+
+	private Object search(Query query, Predicate<Object> callback) {
+		List<String> columns = new ArrayList<>();
+		for (ValueExpression value : query.getSelect().getSelectValues()) {
+			columns.add(propertyName(value));
+		}
+		List<Object[]> list = new ArrayList<>();
+		for (Map<String, Object> row : select(query)) {
+			Object[] values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = resolve(row, columns.get(i));
+			}
+			if (callback != null) {
+				if (!callback.test(values)) {
+					break;
+				}
+			} else {
+				list.add(values);
+			}
+		}
+		return callback != null ? null : new SearchResult<>(-1, list);
+	}
+
+	/**
+	 * 条件、並び順、件数制限を適用した行
+	 */
+	private List<Map<String, Object>> select(Query query) {
+		Table table = table(query.getFrom().getEntityName());
+		Condition where = query.getWhere() != null ? query.getWhere().getCondition() : null;
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (String oid : table.candidates(where)) {
+			Map<String, Object> row = table.rows.get(oid);
+			if (row != null && table.matches(row, where)) {
+				result.add(row);
+			}
+		}
+
+		OrderBy orderBy = query.getOrderBy();
+		if (orderBy != null && orderBy.getSortSpecList() != null) {
+			Comparator<Map<String, Object>> comparator = null;
+			for (SortSpec spec : orderBy.getSortSpecList()) {
+				String property = propertyName(spec.getSortKey());
+				Comparator<Map<String, Object>> c = (r1, r2) -> compare(key(resolve(r1, property)), key(resolve(r2, property)));
+				if (spec.getType() == SortType.DESC) {
+					c = c.reversed();
+				}
+				comparator = comparator == null ? c : comparator.thenComparing(c);
+			}
+			result.sort(comparator);
+		}
+
+		Limit limit = query.getLimit();
+		if (limit != null) {
+			int from = Math.min(Math.max(limit.getOffset(), 0), result.size());
+			int to = limit.getLimit() > 0 ? Math.min(from + limit.getLimit(), result.size()) : result.size();
+			result = result.subList(from, to);
+		}
+		return result;
+	}
+
+	/**
+	 * 参照プロパティを辿って値を取得する(例:radikoStation.callSign)
+	 */
+	private Object resolve(Map<String, Object> row, String path) {
+		int dot = path.indexOf('.');
+		if (dot < 0) {
+			return row.get(path);
+		}
+		Object ref = row.get(path.substring(0, dot));
+		if (!(ref instanceof Entity)) {
+			return null;
+		}
+		Entity entity = (Entity) ref;
+		String rest = path.substring(dot + 1);
+		if (Entity.OID.equals(rest)) {
+			return entity.getOid();
+		}
+		Table refTable = tables.get(entity.getDefinitionName());
+		Map<String, Object> refRow = refTable != null ? refTable.rows.get(entity.getOid()) : null;
+		return refRow != null ? resolve(refRow, rest) : null;
+	}
+
+	private Table table(String defName) {
+		Table table = tables.get(defName);
+		if (table == null) {
+			throw new IllegalArgumentException("unregistered entity: " + defName);
+		}
+		return table;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Predicate<Object> callback(Object[] args) {
+		Object last = args[args.length - 1];
+		return last instanceof Predicate ? (Predicate<Object>) last : null;
+	}
+
+	private static String propertyName(ValueExpression value) {
+		if (value instanceof EntityField) {
+			return ((EntityField) value).getPropertyName();
+		}
+		throw new UnsupportedOperationException("unsupported expression: " + value);
+	}
+
+	private static Object literal(Object value) {
+		if (value instanceof Literal) {
+			return ((Literal) value).getValue();
+		}
+		if (value instanceof ValueExpression) {
+			throw new UnsupportedOperationException("unsupported expression: " + value);
+		}
+		return value;
+	}
+
+	/**
+	 * 比較用の値に変換する
+	 */
+	private static Object key(Object value) {
+		if (value instanceof Entity) {
+			return ((Entity) value).getOid();
+		} else if (value instanceof SelectValue) {
+			return ((SelectValue) value).getValue();
+		} else if (value instanceof java.util.Date) {
+			return ((java.util.Date) value).getTime();
+		} else if (value instanceof Integer || value instanceof Short) {
+			return ((Number) value).longValue();
+		}
+		return value;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Object v1, Object v2) {
+		if (v1 == v2) {
+			return 0;
+		} else if (v1 == null) {
+			return -1;
+		} else if (v2 == null) {
+			return 1;
+		}
+		return ((Comparable) v1).compareTo(v2);
+	}
+
+	/**
+	 * Entity定義毎の格納領域
+	 */
+	private final class Table {
+
+		private final Supplier<? extends Entity> factory;
+		private final String[] properties;
+		/** oid -> 行(行は更新時に差し替え、変更しない) */
+		private final Map<String, Map<String, Object>> rows = new ConcurrentHashMap<>();
+		/** プロパティ -> 値 -> oid */
+		private final Map<String, NavigableMap<Object, Set<String>>> indexes = new HashMap<>();
+
+		private Table(Supplier<? extends Entity> factory, String[] properties, String[] indexProperties) {
+			this.factory = factory;
+			this.properties = properties.clone();
+			for (String property : indexProperties) {
+				indexes.put(property, new ConcurrentSkipListMap<>());
+			}
+			indexes.put(Entity.OID, new ConcurrentSkipListMap<>());
+		}
+
+		private Entity toEntity(Map<String, Object> row) {
+			Entity entity = factory.get();
+			for (Map.Entry<String, Object> e : row.entrySet()) {
+				if (e.getValue() instanceof GenericEntity) {
+					// 参照先は呼び出し元での変更が影響しないよう複製して返す
+					entity.setValue(e.getKey(), ((GenericEntity) e.getValue()).copy());
+				} else {
+					entity.setValue(e.getKey(), e.getValue());
+				}
+			}
+			return entity;
+		}
+
+		private void index(String oid, Map<String, Object> before, Map<String, Object> after) {
+			for (Map.Entry<String, NavigableMap<Object, Set<String>>> index : indexes.entrySet()) {
+				Object oldKey = before != null ? key(before.get(index.getKey())) : null;
+				Object newKey = after != null ? key(after.get(index.getKey())) : null;
+				if (before != null && oldKey != null && (after == null || !oldKey.equals(newKey))) {
+					Set<String> oids = index.getValue().get(oldKey);
+					if (oids != null) {
+						oids.remove(oid);
+					}
+				}
+				if (after != null && newKey != null) {
+					index.getValue().computeIfAbsent(newKey, k -> ConcurrentHashMap.newKeySet()).add(oid);
+				}
+			}
+		}
+
+		/**
+		 * インデックスで絞り込んだ候補のoid(条件の評価は呼び出し元で行う)
+		 */
+		private Set<String> candidates(Condition condition) {
+			Set<String> indexed = indexed(condition);
+			return indexed != null ? indexed : new HashSet<>(rows.keySet());
+		}
+
+		private Set<String> indexed(Condition condition) {
+			if (condition instanceof And) {
+				Set<String> best = null;
+				for (Condition child : ((And) condition).getChildExpressions()) {
+					Set<String> c = indexed(child);
+					if (c != null && (best == null || c.size() < best.size())) {
+						best = c;
+					}
+				}
+				return best;
+			}
+			if (condition instanceof Equals) {
+				NavigableMap<Object, Set<String>> index = indexOf(((Equals) condition).getProperty());
+				if (index == null) {
+					return null;
+				}
+				Set<String> oids = index.get(key(literal(((Equals) condition).getValue())));
+				return oids != null ? new HashSet<>(oids) : Collections.emptySet();
+			}
+			if (condition instanceof In) {
+				NavigableMap<Object, Set<String>> index = indexOf(((In) condition).getProperty());
+				if (index == null) {
+					return null;
+				}
+				Set<String> result = new HashSet<>();
+				for (ValueExpression value : ((In) condition).getValue()) {
+					Set<String> oids = index.get(key(literal(value)));
+					if (oids != null) {
+						result.addAll(oids);
+					}
+				}
+				return result;
+			}
+			if (condition instanceof Between) {
+				NavigableMap<Object, Set<String>> index = indexOf(((Between) condition).getProperty());
+				if (index == null) {
+					return null;
+				}
+				return union(index.subMap(key(literal(((Between) condition).getValue1())), true,
+						key(literal(((Between) condition).getValue2())), true));
+			}
+			if (condition instanceof Greater || condition instanceof GreaterEqual) {
+				NavigableMap<Object, Set<String>> index = indexOf(((ComparisonPredicate) condition).getProperty());
+				if (index == null) {
+					return null;
+				}
+				return union(index.tailMap(key(literal(((ComparisonPredicate) condition).getValue())), condition instanceof GreaterEqual));
+			}
+			if (condition instanceof Lesser || condition instanceof LesserEqual) {
+				NavigableMap<Object, Set<String>> index = indexOf(((ComparisonPredicate) condition).getProperty());
+				if (index == null) {
+					return null;
+				}
+				return union(index.headMap(key(literal(((ComparisonPredicate) condition).getValue())), condition instanceof LesserEqual));
+			}
+			return null;
+		}
+
+		private NavigableMap<Object, Set<String>> indexOf(ValueExpression property) {
+			String name = propertyName(property);
+			if (name.endsWith("." + Entity.OID)) {
+				name = name.substring(0, name.length() - Entity.OID.length() - 1);
+			}
+			return indexes.get(name);
+		}
+
+		private Set<String> union(Map<Object, Set<String>> range) {
+			Set<String> result = new LinkedHashSet<>();
+			for (Set<String> oids : range.values()) {
+				result.addAll(oids);
+			}
+			return result;
+		}
+
+		private boolean matches(Map<String, Object> row, Condition condition) {
+			if (condition == null) {
+				return true;
+			}
+			if (condition instanceof And) {
+				for (Condition child : ((And) condition).getChildExpressions()) {
+					if (!matches(row, child)) {
+						return false;
+					}
+				}
+				return true;
+			}
+			if (condition instanceof Or) {
+				for (Condition child : ((Or) condition).getChildExpressions()) {
+					if (matches(row, child)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if (condition instanceof Between) {
+				Between between = (Between) condition;
+				Object value = key(resolve(row, propertyName(between.getProperty())));
+				return value != null && compare(value, key(literal(between.getValue1()))) >= 0
+						&& compare(value, key(literal(between.getValue2()))) <= 0;
+			}
+			if (condition instanceof In) {
+				In in = (In) condition;
+				Object value = key(resolve(row, propertyName(in.getProperty())));
+				for (ValueExpression v : in.getValue()) {
+					if (value != null && value.equals(key(literal(v)))) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if (condition instanceof IsNull) {
+				return resolve(row, propertyName(((IsNull) condition).getProperty())) == null;
+			}
+			if (condition instanceof ComparisonPredicate) {
+				ComparisonPredicate p = (ComparisonPredicate) condition;
+				Object value = key(resolve(row, propertyName(p.getProperty())));
+				Object other = key(literal(p.getValue()));
+				if (condition instanceof Equals) {
+					return value == null ? other == null : value.equals(other);
+				}
+				if (value == null || other == null) {
+					return false;
+				}
+				int c = compare(value, other);
+				if (condition instanceof Greater) {
+					return c > 0;
+				} else if (condition instanceof GreaterEqual) {
+					return c >= 0;
+				} else if (condition instanceof Lesser) {
+					return c < 0;
+				} else if (condition instanceof LesserEqual) {
+					return c <= 0;
+				}
+			}
+			throw new UnsupportedOperationException("unsupported condition: " + condition);
+		}
+	}
+}
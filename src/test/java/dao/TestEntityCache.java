@@ -0,0 +1,115 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.entity.LoadOption;
+import org.iplass.mtp.entity.UpdateOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.EntityCache;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+
+public class TestEntityCache {
+
+	private static final String DEF_NAME = "test.cache";
+	private static final LoadOption OPTION = new LoadOption(true, false);
+
+	private EntityCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = EntityCache.enable(DEF_NAME, 10, 60000L);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		EntityCache.disable(DEF_NAME);
+		EntityCache.disable(RadikoProgram.DEFINITION_NAME);
+	}
+
+	@Test
+	public void testInvalidatedWhileLoading() {
+		long token = cache.token("1");
+		// 読込中に更新され破棄された
+		cache.invalidate("1");
+		assertFalse(cache.put(entity("1", 1000L), OPTION, token));
+		assertNull(cache.get("1", OPTION));
+
+		assertTrue(cache.put(entity("1", 2000L), OPTION, cache.token("1")));
+		assertNotNull(cache.get("1", OPTION));
+	}
+
+	@Test
+	public void testOlderVersion() {
+		assertTrue(cache.put(entity("1", 2000L), OPTION, cache.token("1")));
+		assertFalse(cache.put(entity("1", 1000L), new LoadOption(false, false), cache.token("1")));
+		assertNull(cache.get("1", new LoadOption(false, false)));
+
+		// 新しいversionは他のLoadOptionのEntityを置き換える
+		assertTrue(cache.put(entity("1", 3000L), new LoadOption(false, false), cache.token("1")));
+		assertNull(cache.get("1", OPTION));
+		assertEquals(new Timestamp(3000L), cache.get("1", new LoadOption(false, false)).getUpdateDate());
+	}
+
+	@Test
+	public void testDeepCopy() {
+		GenericEntity station = new GenericEntity("test.station", "TBS", 1L);
+		station.setValue("name", "TBSラジオ");
+		GenericEntity[] tags = { new GenericEntity("test.tag", "t1", 1L) };
+		Entity entity = entity("1", 1000L);
+		entity.setValue("station", station);
+		entity.setValue("tags", tags);
+		assertTrue(cache.put(entity, OPTION, cache.token("1")));
+
+		// 格納後の呼び出し元での変更は反映されない
+		station.setValue("name", "変更");
+		tags[0] = null;
+		Entity cached = cache.get("1", OPTION);
+		Entity cachedStation = cached.getValue("station");
+		Entity[] cachedTags = cached.getValue("tags");
+		assertEquals("TBSラジオ", cachedStation.getValue("name"));
+		assertEquals("t1", cachedTags[0].getOid());
+
+		// 取得したEntityの変更も反映されない
+		cachedStation.setValue("name", "変更");
+		cachedTags[0].setOid("t2");
+		cached.getUpdateDate().setTime(0L);
+		Entity again = cache.get("1", OPTION);
+		assertEquals("TBSラジオ", again.<Entity> getValue("station").getValue("name"));
+		assertEquals("t1", again.<Entity[]> getValue("tags")[0].getOid());
+		assertEquals(new Timestamp(1000L), again.getUpdateDate());
+	}
+
+	@Test
+	public void testDaoUpdate() {
+		InMemoryEntityManager store = new InMemoryEntityManager();
+		RadikoProgramDao dao = new RadikoProgramDao(store.asEntityManager());
+		EntityCache.enable(RadikoProgram.DEFINITION_NAME, 10, 60000L);
+
+		RadikoProgram program = new RadikoProgram();
+		program.setProgramName("番組");
+		String oid = dao.insert(program);
+		RadikoProgram loaded = dao.load(oid);
+
+		loaded.setNote("メモ");
+		UpdateOption option = new UpdateOption(false);
+		option.setUpdateProperties(Collections.singletonList(RadikoProgram.NOTE));
+		dao.update(loaded, option);
+		assertEquals("メモ", dao.load(oid).getNote());
+		assertEquals(1, EntityCache.get(RadikoProgram.DEFINITION_NAME).size());
+	}
+
+	private static Entity entity(String oid, long updateDate) {
+		GenericEntity entity = new GenericEntity(DEF_NAME, oid, 1L);
+		entity.setValue(Entity.UPDATE_DATE, new Timestamp(updateDate));
+		return entity;
+	}
+}
@@ -0,0 +1,121 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.DirtyTracker;
+import ctp.dao.KeysetPage;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+
+public class TestInMemoryEntityManager {
+
+	private static final long BASE = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	private InMemoryEntityManager store;
+	private RadikoProgramDao dao;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		dao = new RadikoProgramDao(store.asEntityManager());
+	}
+
+	@Test
+	public void testInsertAndLoad() {
+		String oid = dao.insert(program("番組", 0));
+		RadikoProgram loaded = dao.load(oid);
+		assertNotNull(loaded);
+		assertEquals("番組", loaded.getProgramName());
+		assertEquals(new Timestamp(BASE), loaded.getStartDatetime());
+	}
+
+	@Test
+	public void testUpdateDirty() {
+		String oid = dao.insert(program("番組", 0));
+		DirtyTracker<RadikoProgram> loaded = dao.track(dao.load(oid));
+		assertFalse(loaded.isDirty());
+
+		loaded.get().setProgramName("番組");
+		assertFalse(dao.updateDirty(loaded));
+
+		loaded.get().setNote("メモ");
+		assertEquals(1, loaded.getDirtyProperties().size());
+		assertTrue(dao.updateDirty(loaded));
+		assertFalse(loaded.isDirty());
+		assertEquals("メモ", dao.load(oid).getNote());
+	}
+
+	@Test
+	public void testFindBetweenStartDate() {
+		for (int i = 0; i < 48; i++) {
+			dao.insert(program("番組" + i, i));
+		}
+		List<RadikoProgram> list = dao.findBetweenStartDate(new Timestamp(BASE + 10 * HOUR), new Timestamp(BASE + 19 * HOUR));
+		assertEquals(10, list.size());
+	}
+
+	@Test
+	public void testKeysetPaging() {
+		for (int i = 0; i < 25; i++) {
+			// 同一開始日時を含めてoidでの順序付けを確認する
+			dao.insert(program("番組" + i, i / 2));
+		}
+		Set<String> seen = new HashSet<>();
+		String token = null;
+		int pages = 0;
+		do {
+			KeysetPage<RadikoProgram> page = dao.findBetweenStartDate(new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), token, 10);
+			for (RadikoProgram p : page.getList()) {
+				assertTrue(seen.add(p.getOid()));
+			}
+			token = page.getNextToken();
+			pages++;
+		} while (token != null);
+		assertEquals(25, seen.size());
+		assertEquals(3, pages);
+	}
+
+	@Test
+	public void testConcurrentCallers() throws Exception {
+		store.setLatency(100, TimeUnit.MICROSECONDS);
+		ExecutorService executor = Executors.newFixedThreadPool(64);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 2000; i++) {
+				int n = i;
+				futures.add(executor.submit(() -> {
+					String oid = dao.insert(program("番組" + n, n % 24));
+					assertNotNull(dao.load(oid));
+					dao.findBetweenStartDate(new Timestamp(BASE), new Timestamp(BASE + HOUR));
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(2000, store.size(RadikoProgram.DEFINITION_NAME));
+	}
+
+	private static RadikoProgram program(String name, int hours) {
+		RadikoProgram program = new RadikoProgram();
+		program.setProgramName(name);
+		program.setStartDatetime(new Timestamp(BASE + hours * HOUR));
+		return program;
+	}
+}
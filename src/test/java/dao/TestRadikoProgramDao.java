@@ -0,0 +1,201 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.EntityConcurrentUpdateException;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.ValidateError;
+import org.iplass.mtp.entity.ValidateResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.BulkValidateResult;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+
+public class TestRadikoProgramDao {
+
+	private static final long BASE = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	private InMemoryEntityManager store;
+	private RadikoProgramDao dao;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		dao = new RadikoProgramDao(store.asEntityManager());
+	}
+
+	@Test
+	public void testParallelSearch() {
+		for (int i = 0; i < 500; i++) {
+			// 同じ開始日時を含める
+			dao.insert(program("番組" + i, i / 3));
+		}
+		Timestamp from = new Timestamp(BASE + 10 * HOUR);
+		Timestamp to = new Timestamp(BASE + 150 * HOUR);
+		// 分割しない場合と同じ順序となること
+		dao.setSearchParallelism(1);
+		List<String> expected = new ArrayList<>();
+		for (RadikoProgram program : dao.findBetweenStartDateParallel(from, to)) {
+			expected.add(program.getOid());
+		}
+		assertEquals(141 * 3, expected.size());
+
+		for (int parallelism : new int[] { 2, 4, 7, 1000 }) {
+			dao.setSearchParallelism(parallelism);
+			List<String> actual = new ArrayList<>();
+			for (RadikoProgram program : dao.findBetweenStartDateParallel(from, to)) {
+				actual.add(program.getOid());
+			}
+			assertEquals(expected, actual);
+		}
+		assertEquals(new HashSet<>(expected).size(), expected.size());
+	}
+
+	@Test
+	public void testValidateAll() {
+		store.setValidator(entity -> {
+			ValidateResult result = new ValidateResult();
+			String name = entity.getValue(RadikoProgram.PROGRAM_NAME);
+			if (name.endsWith("0")) {
+				ValidateError error = new ValidateError();
+				error.setPropertyName(RadikoProgram.PROGRAM_NAME);
+				result.setErrors(Collections.singletonList(error));
+			}
+			return result;
+		});
+		List<RadikoProgram> programs = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			programs.add(program("番組" + i, i));
+		}
+
+		BulkValidateResult result = dao.validateAll(programs, null);
+		assertFalse(result.isSuccess());
+		assertFalse(result.isStopped());
+		assertEquals(500, result.getValidatedCount());
+		assertEquals(50, result.getFailureCount());
+		assertEquals(0, result.getFailureIndexes()[0]);
+		assertEquals(490, result.getFailureIndexes()[49]);
+		assertTrue(result.hasError(120));
+		assertNull(result.getResult(121));
+		assertTrue(result.isValidated(121));
+		assertEquals(500, result.getValidatedIndexes().length);
+		assertEquals(RadikoProgram.PROGRAM_NAME, result.getResult(120).getErrors().get(0).getPropertyName());
+
+		// 上限に達した時点で打ち切る
+		result = dao.validateAll(programs, null, 3);
+		assertTrue(result.isStopped());
+		assertTrue(result.getFailureCount() >= 3);
+		assertTrue(result.getValidatedCount() < 500);
+		assertEquals(result.getValidatedCount(), result.getValidatedIndexes().length);
+		// 打ち切り後の未チェックのEntityはエラーなしと区別できる
+		assertFalse(result.isValidated(499));
+		assertNull(result.getResult(499));
+		assertFalse(result.isValidated(500));
+
+		assertTrue(dao.validateAll(programs.subList(1, 10), null).isSuccess());
+	}
+
+	@Test
+	public void testLoadAndLockAll() {
+		List<String> oids = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			oids.add(dao.insert(program("番組" + i, i)));
+		}
+		List<String> requested = new ArrayList<>(oids);
+		Collections.reverse(requested);
+		requested.add(oids.get(0));
+		requested.add("unknown");
+
+		// 重複を除き、oidの昇順でロックする
+		List<String> expected = new ArrayList<>(oids);
+		Collections.sort(expected);
+		assertEquals(expected, new ArrayList<>(dao.loadAndLockAll(requested).keySet()));
+		assertEquals(5, dao.loadAndLockAll(requested, 1, TimeUnit.MINUTES).size());
+
+		// null、空白は除く
+		requested.add(null);
+		requested.add(" ");
+		assertEquals(expected, new ArrayList<>(dao.loadAndLockAll(requested).keySet()));
+	}
+
+	@Test
+	public void testLoadAndLockAllTimeout() {
+		List<String> oids = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			oids.add(dao.insert(program("番組" + i, i)));
+		}
+		store.setLatency(20, TimeUnit.MILLISECONDS);
+		// 最後のロックを取得できた場合は上限を超えていても返す
+		assertEquals(1, dao.loadAndLockAll(Arrays.asList(oids.get(0), oids.get(0)), 5, TimeUnit.MILLISECONDS).size());
+		try {
+			dao.loadAndLockAll(oids, 30, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (EntityConcurrentUpdateException e) {
+			// 重複を除いた件数に対するロック済み件数
+			assertTrue(e.getMessage(), e.getMessage().endsWith("/5"));
+		}
+	}
+
+	@Test
+	public void testUpdateIfVersion() {
+		// 時計が進まなくても更新日時は更新毎に進む
+		store.setClock(() -> BASE);
+		String oid = dao.insert(program("番組", 0));
+		RadikoProgram stale = dao.loadNonRef(oid);
+		assertNotNull(dao.updateListenStatus(oid, new SelectValue("LISTENED")));
+		// 同じ値の場合は更新しない
+		assertNull(dao.updateListenStatus(oid, new SelectValue("LISTENED")));
+		assertEquals(Long.valueOf(1), dao.loadNonRef(oid).getVersion());
+
+		// loadした後に更新されている場合は更新しない
+		stale.setListenStatus(new SelectValue("SKIPPED"));
+		assertFalse(dao.updateIfVersion(stale, Collections.singletonList(RadikoProgram.LISTEN_STATUS)));
+		assertEquals("LISTENED", dao.loadNonRef(oid).getListenStatus().getValue());
+
+		// 競合した場合はロードからやり直す
+		int[] attempts = new int[1];
+		RadikoProgram updated = dao.updateIfVersion(oid, Collections.singletonList(RadikoProgram.LISTEN_STATUS), program -> {
+			if (attempts[0]++ == 0) {
+				RadikoProgram other = dao.loadNonRef(oid);
+				other.setProgramName("更新");
+				dao.updateIfVersion(other, Collections.singletonList(RadikoProgram.PROGRAM_NAME));
+			}
+			program.setListenStatus(new SelectValue("SKIPPED"));
+			return true;
+		});
+		assertEquals(2, attempts[0]);
+		assertEquals("更新", updated.getProgramName());
+		assertEquals("SKIPPED", dao.loadNonRef(oid).getListenStatus().getValue());
+
+		// 最大試行回数まで競合した場合は例外
+		try {
+			dao.updateIfVersion(oid, Collections.singletonList(RadikoProgram.LISTEN_STATUS), program -> {
+				RadikoProgram other = dao.loadNonRef(oid);
+				other.setNote("競合");
+				dao.updateIfVersion(other, Collections.singletonList(RadikoProgram.NOTE));
+				return true;
+			}, 2);
+			fail();
+		} catch (EntityConcurrentUpdateException e) {
+			// expected
+		}
+	}
+
+	private static RadikoProgram program(String name, int hours) {
+		RadikoProgram program = new RadikoProgram();
+		program.setProgramName(name);
+		program.setStartDatetime(new Timestamp(BASE + hours * HOUR));
+		return program;
+	}
+}
@@ -0,0 +1,125 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.UpdateCondition.UpdateValue;
+import org.iplass.mtp.entity.UpdateOption;
+import org.iplass.mtp.entity.query.Where;
+import org.iplass.mtp.entity.query.condition.predicate.Equals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoProgramStartIndex;
+import ctp.entity.RadikoProgram;
+
+public class TestRadikoProgramStartIndex {
+
+	private static final long BASE = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	private InMemoryEntityManager store;
+	private RadikoProgramDao dao;
+	private RadikoProgramStartIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		dao = new RadikoProgramDao(store.asEntityManager());
+		// 開始日時の重複、逆順の登録を含める
+		for (int i = 9; i >= 0; i--) {
+			dao.insert(program("番組" + i, i / 2));
+		}
+		index = RadikoProgramStartIndex.create(dao);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		index.close();
+	}
+
+	@Test
+	public void testFindOids() {
+		assertEquals(10, index.size());
+		assertEquals(oidsFromDatabase(1, 3), index.findOids(at(1), at(3)));
+		assertEquals(0, index.findOids(at(10), at(20)).size());
+		assertEquals(10, index.findOids(at(-1), at(4)).size());
+
+		List<RadikoProgram> list = dao.findBetweenStartDate(at(2), at(2), index, false);
+		assertEquals(2, list.size());
+		assertEquals(at(2), list.get(0).getStartDatetime());
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		RadikoProgram added = program("追加", 7);
+		dao.insert(added);
+		assertEquals(Collections.singletonList(added.getOid()), index.findOids(at(6), at(8)));
+
+		RadikoProgram moved = dao.load(index.findOids(at(0), at(0)).get(0));
+		moved.setStartDatetime(at(8));
+		UpdateOption option = new UpdateOption(false);
+		option.setUpdateProperties(Collections.singletonList(RadikoProgram.START_DATETIME));
+		dao.update(moved, option);
+		assertEquals(1, index.findOids(at(0), at(0)).size());
+		assertEquals(Collections.singletonList(moved.getOid()), index.findOids(at(8), at(8)));
+
+		dao.delete(added);
+		assertEquals(0, index.findOids(at(6), at(7)).size());
+		assertEquals(oidsFromDatabase(0, 10), index.findOids(at(0), at(10)));
+	}
+
+	@Test
+	public void testStale() {
+		List<UpdateValue> values = new ArrayList<>();
+		values.add(new UpdateValue(RadikoProgram.NOTE, "メモ"));
+		dao.updateAll(values, new Where(new Equals(RadikoProgram.PROGRAM_NAME, "番組0")));
+		assertTrue(index.isReady());
+
+		values.add(new UpdateValue(RadikoProgram.START_DATETIME, at(3)));
+		dao.updateAll(values, new Where(new Equals(RadikoProgram.PROGRAM_NAME, "番組0")));
+		assertFalse(index.isReady());
+		assertNull(index.findOids(at(0), at(4)));
+
+		try {
+			dao.findBetweenStartDate(at(0), at(4), index, false);
+			fail();
+		} catch (IllegalStateException e) {
+			// 明示的に指定しない限りDBを検索しない
+		}
+		assertEquals(10, dao.findBetweenStartDate(at(0), at(4), index, true).size());
+
+		index.rebuild(dao);
+		assertTrue(index.isReady());
+		assertEquals(oidsFromDatabase(0, 4), index.findOids(at(0), at(4)));
+	}
+
+	private List<String> oidsFromDatabase(int fromHours, int toHours) {
+		List<String> list = new ArrayList<>();
+		dao.scanStartDatetime((oid, start) -> {
+			if (!start.before(at(fromHours)) && !start.after(at(toHours))) {
+				list.add(oid);
+			}
+			return true;
+		});
+		return list;
+	}
+
+	private static Timestamp at(int hours) {
+		return new Timestamp(BASE + hours * HOUR);
+	}
+
+	private static RadikoProgram program(String name, int hours) {
+		RadikoProgram program = new RadikoProgram();
+		program.setProgramName(name);
+		program.setStartDatetime(at(hours));
+		return program;
+	}
+}
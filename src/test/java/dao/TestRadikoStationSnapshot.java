@@ -0,0 +1,112 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.DirtyTracker;
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoStationDao;
+import ctp.dao.RadikoStationSnapshot;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+
+public class TestRadikoStationSnapshot {
+
+	private InMemoryEntityManager store;
+	private RadikoStationDao dao;
+	private RadikoStationSnapshot snapshot;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		dao = new RadikoStationDao(store.asEntityManager());
+		dao.insert(station("TBS", "TBSラジオ"));
+		dao.insert(station("QRR", "文化放送"));
+		snapshot = RadikoStationSnapshot.create(dao);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		snapshot.close();
+	}
+
+	@Test
+	public void testWrite() {
+		assertEquals(2, snapshot.size());
+		RadikoStation tbs = snapshot.getByCallSign("TBS");
+		assertEquals("TBSラジオ", tbs.getStationName());
+		// 返したラジオ局を変更してもスナップショットは変わらない
+		tbs.setStationName("変更");
+		assertEquals("TBSラジオ", snapshot.getByOid(tbs.getOid()).getStationName());
+
+		RadikoStation lfr = station("LFR", "ニッポン放送");
+		dao.insert(lfr);
+		assertEquals("ニッポン放送", snapshot.getByCallSign("LFR").getStationName());
+
+		RadikoStation loaded = dao.load(lfr.getOid());
+		DirtyTracker<RadikoStation> tracker = dao.track(loaded);
+		loaded.setCallSign("LF");
+		dao.updateDirty(tracker);
+		assertNull(snapshot.getByCallSign("LFR"));
+		assertEquals("ニッポン放送", snapshot.getByCallSign("LF").getStationName());
+
+		dao.delete(loaded);
+		assertNull(snapshot.getByOid(lfr.getOid()));
+		assertEquals(2, snapshot.getAll().size());
+	}
+
+	@Test
+	public void testRefreshConflict() {
+		RadikoStationDao writer = new RadikoStationDao(store.asEntityManager());
+		AtomicBoolean conflict = new AtomicBoolean(true);
+		RadikoStationDao reader = new RadikoStationDao(store.asEntityManager()) {
+			@Override
+			public List<RadikoStation> findAll() {
+				List<RadikoStation> list = super.findAll();
+				if (conflict.getAndSet(false)) {
+					// 読み込み後、差し替え前に登録が通知された
+					writer.insert(station("LFR", "ニッポン放送"));
+				}
+				return list;
+			}
+		};
+		RadikoStationSnapshot conflicted = RadikoStationSnapshot.create(reader);
+		try {
+			assertEquals(3, conflicted.size());
+			assertEquals("ニッポン放送", conflicted.getByCallSign("LFR").getStationName());
+		} finally {
+			conflicted.close();
+		}
+	}
+
+	@Test
+	public void testHydrate() {
+		RadikoProgramDao programDao = new RadikoProgramDao(store.asEntityManager());
+		RadikoStation ref = new RadikoStation();
+		ref.setOid(snapshot.getByCallSign("QRR").getOid());
+		RadikoProgram program = new RadikoProgram();
+		program.setRadikoStation(ref);
+		program.setProgramName("番組");
+		program.setStartDatetime(Timestamp.valueOf("2020-01-01 09:00:00"));
+		programDao.insert(program);
+
+		List<RadikoProgram> list = programDao.findBetweenStartDate(Timestamp.valueOf("2020-01-01 00:00:00"),
+				Timestamp.valueOf("2020-01-02 00:00:00"), snapshot);
+		assertEquals(1, list.size());
+		assertEquals("文化放送", list.get(0).getRadikoStation().getValue(RadikoStation.STATION_NAME));
+	}
+
+	private static RadikoStation station(String callSign, String name) {
+		RadikoStation station = new RadikoStation();
+		station.setCallSign(callSign);
+		station.setStationName(name);
+		return station;
+	}
+}
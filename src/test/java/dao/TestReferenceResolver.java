@@ -0,0 +1,90 @@
+package dao;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.iplass.mtp.entity.Entity;
+import org.iplass.mtp.entity.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.dao.RadikoStationDao;
+import ctp.dao.ReferenceResolver;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+
+public class TestReferenceResolver {
+
+	private EntityManager em;
+	private final AtomicInteger searchCount = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		EntityManager target = new InMemoryEntityManager().asEntityManager();
+		// 検索回数を数える
+		em = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[] { EntityManager.class },
+				(proxy, method, args) -> {
+					if (method.getName().startsWith("search")) {
+						searchCount.incrementAndGet();
+					}
+					return method.invoke(target, args);
+				});
+	}
+
+	@Test
+	public void testResolve() {
+		RadikoStationDao stationDao = new RadikoStationDao(em);
+		RadikoScheduleDao scheduleDao = new RadikoScheduleDao(em);
+		RadikoProgramDao programDao = new RadikoProgramDao(em);
+
+		RadikoStation[] stations = new RadikoStation[3];
+		RadikoSchedule[] schedules = new RadikoSchedule[5];
+		for (int i = 0; i < stations.length; i++) {
+			stations[i] = new RadikoStation();
+			stations[i].setCallSign("ST" + i);
+			stationDao.insert(stations[i]);
+		}
+		for (int i = 0; i < schedules.length; i++) {
+			schedules[i] = new RadikoSchedule();
+			schedules[i].setProgramName("予約" + i);
+			schedules[i].setStartTime(Time.valueOf("09:00:00"));
+			scheduleDao.insert(schedules[i]);
+		}
+		for (int i = 0; i < 100; i++) {
+			RadikoProgram program = new RadikoProgram();
+			program.setRadikoStation(reference(new RadikoStation(), stations[i % stations.length].getOid()));
+			program.setParentSchedule(reference(new RadikoSchedule(), schedules[i % schedules.length].getOid()));
+			program.setProgramName("番組" + i);
+			program.setStartDatetime(new Timestamp(Timestamp.valueOf("2020-01-01 00:00:00").getTime() + i * 60_000L));
+			programDao.insert(program);
+		}
+
+		searchCount.set(0);
+		ReferenceResolver resolver = new ReferenceResolver().register(RadikoProgram.RADIKO_STATION, stationDao)
+				.register(RadikoProgram.PARENT_SCHEDULE, scheduleDao);
+		List<RadikoProgram> list = programDao.findBetweenStartDate(Timestamp.valueOf("2020-01-01 00:00:00"),
+				Timestamp.valueOf("2020-01-02 00:00:00"), resolver);
+
+		assertEquals(100, list.size());
+		// 番組の検索1回 + 参照先の定義毎に1回
+		assertEquals(3, searchCount.get());
+		for (RadikoProgram program : list) {
+			assertNotNull(program.getRadikoStation().getValue(RadikoStation.CALL_SIGN));
+			assertNotNull(program.getParentSchedule().getValue(RadikoSchedule.PROGRAM_NAME));
+		}
+		assertSame(list.get(0).getRadikoStation(), list.get(3).getRadikoStation());
+	}
+
+	private static <E extends Entity> E reference(E entity, String oid) {
+		entity.setOid(oid);
+		return entity;
+	}
+}
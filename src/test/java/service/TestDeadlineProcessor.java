@@ -0,0 +1,89 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.UpdateOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.service.DeadlineProcessor;
+import dao.InMemoryEntityManager;
+
+public class TestDeadlineProcessor {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private RadikoProgramDao dao;
+	private DeadlineProcessor processor;
+	private long now;
+
+	@Before
+	public void setUp() throws Exception {
+		dao = new RadikoProgramDao(new InMemoryEntityManager().asEntityManager());
+		Map<String, String> transitions = new HashMap<>();
+		transitions.put(null, "EXPIRED");
+		transitions.put("RESERVED", "EXPIRED");
+		processor = new DeadlineProcessor(dao, transitions, MINUTE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		processor.stop();
+	}
+
+	@Test
+	public void testProcess() {
+		now = System.currentTimeMillis();
+		String overdue = dao.insert(program(-60, null));
+		String reserved = dao.insert(program(2, "RESERVED"));
+		String listened = dao.insert(program(2, "LISTENED"));
+		String later = dao.insert(program(TimeUnit.DAYS.toMinutes(10), null));
+
+		processor.start();
+		assertEquals(3, processor.size());
+		assertEquals(1, processor.process(now));
+		assertEquals("EXPIRED", status(overdue));
+
+		// 登録、期限の変更はDaoの通知で反映する
+		String inserted = dao.insert(program(1, null));
+		RadikoProgram moved = dao.load(later);
+		moved.setDeadline(new Timestamp(now + 3 * MINUTE));
+		UpdateOption option = new UpdateOption(false);
+		option.setUpdateProperties(Collections.singletonList(RadikoProgram.DEADLINE));
+		dao.update(moved, option);
+
+		assertEquals(0, processor.process(now + MINUTE));
+		assertEquals(3, processor.process(now + 5 * MINUTE));
+		assertEquals("EXPIRED", status(reserved));
+		assertEquals("EXPIRED", status(inserted));
+		assertEquals("EXPIRED", status(later));
+		assertEquals("LISTENED", status(listened));
+		assertEquals(0, processor.size());
+	}
+
+	private String status(String oid) {
+		SelectValue status = dao.load(oid).getListenStatus();
+		return status != null ? status.getValue() : null;
+	}
+
+	private RadikoProgram program(long deadlineMinutes, String status) {
+		RadikoProgram program = new RadikoProgram();
+		program.setProgramName("番組");
+		program.setStartDatetime(new Timestamp(now));
+		program.setDeadline(new Timestamp(now + deadlineMinutes * MINUTE));
+		if (status != null) {
+			program.setListenStatus(new SelectValue(status));
+		}
+		return program;
+	}
+}
@@ -0,0 +1,166 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.iplass.mtp.entity.GenericEntity;
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.UpdateOption;
+import org.iplass.mtp.entity.definition.EntityDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.ExpansionTaskDao;
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+import ctp.service.ExpansionTaskManager;
+import ctp.service.ExpansionTaskProgress;
+import ctp.service.ScheduleExpansionService;
+import dao.InMemoryEntityManager;
+
+public class TestExpansionTaskManager {
+
+	private InMemoryEntityManager store;
+	private ExpansionTaskDao taskDao;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		store.register(ExpansionTaskDao.DEFINITION_NAME, () -> new GenericEntity(ExpansionTaskDao.DEFINITION_NAME),
+				ExpansionTaskDao.PROPERTIES, ExpansionTaskDao.STATUS);
+		taskDao = new ExpansionTaskDao(store.asEntityManager());
+		// 非同期タスクの代わり
+		executor = Executors.newSingleThreadExecutor();
+
+		RadikoScheduleDao scheduleDao = new RadikoScheduleDao(store.asEntityManager());
+		scheduleDao.insert(schedule("TBS", "番組A", "1"));
+		scheduleDao.insert(schedule("QRR", "番組B", "3"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testSubmitAndResume() throws Exception {
+		ExpansionTaskManager manager = newManager();
+		ExpansionTaskProgress progress = manager.submit(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 21), 7, 2);
+		progress = await(manager, progress.getTaskId());
+		assertEquals(ExpansionTaskProgress.Status.COMPLETED, progress.getStatus());
+		assertEquals(3, progress.getTotalChunks());
+		assertEquals(3, progress.getChunksDone());
+		assertEquals(6, progress.getRowsWritten());
+
+		// 2チャンク目の途中でノードが停止した状態にする
+		GenericEntity entity = taskDao.loadNonRef(progress.getTaskId());
+		entity.setValue(ExpansionTaskDao.STATUS, "RUNNING");
+		entity.setValue(ExpansionTaskDao.CHUNKS_DONE, 1L);
+		entity.setValue(ExpansionTaskDao.ROWS_WRITTEN, 2L);
+		UpdateOption option = new UpdateOption(false);
+		option.setUpdateProperties(Arrays.asList(ExpansionTaskDao.STATUS, ExpansionTaskDao.CHUNKS_DONE, ExpansionTaskDao.ROWS_WRITTEN));
+		taskDao.update(entity, option);
+
+		ExpansionTaskManager restarted = newManager();
+		assertEquals(ExpansionTaskProgress.Status.RUNNING, restarted.getProgress(progress.getTaskId()).getStatus());
+		assertEquals(1, restarted.resumeIncomplete());
+		ExpansionTaskProgress resumed = await(restarted, progress.getTaskId());
+		assertEquals(ExpansionTaskProgress.Status.COMPLETED, resumed.getStatus());
+		assertEquals(3, resumed.getChunksDone());
+		// 再実行したチャンクは登録済みのため件数は増えない
+		assertEquals(2, resumed.getRowsWritten());
+		assertEquals(6, store.size(RadikoProgram.DEFINITION_NAME));
+		assertEquals(0, restarted.resumeIncomplete());
+		// 完了済みのタスクは再開しない
+		assertNull(restarted.resume(progress.getTaskId()));
+	}
+
+	@Test
+	public void testTakenOver() throws Exception {
+		String[] taskId = new String[1];
+		ExpansionTaskManager manager = new ExpansionTaskManager(taskDao, () -> {
+			// 実行開始後に再開により別の処理が実行を引き継いだ状態にする
+			GenericEntity entity = taskDao.loadNonRef(taskId[0]);
+			entity.setValue(ExpansionTaskDao.OWNER, "other");
+			UpdateOption option = new UpdateOption(false);
+			option.setUpdateProperties(Arrays.asList(ExpansionTaskDao.OWNER));
+			taskDao.update(entity, option);
+			return new ScheduleExpansionService(new RadikoScheduleDao(store.asEntityManager()),
+					new RadikoProgramDao(store.asEntityManager()));
+		}, id -> taskId[0] = id);
+		manager.submit(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 21), 7, 2);
+		manager.execute(taskId[0]);
+
+		// 1チャンク目の保存で引き継がれたことを検知して終了する
+		ExpansionTaskProgress progress = manager.getProgress(taskId[0]);
+		assertEquals(ExpansionTaskProgress.Status.RUNNING, progress.getStatus());
+		assertEquals(0, progress.getChunksDone());
+		assertEquals(2, store.size(RadikoProgram.DEFINITION_NAME));
+		assertNull(manager.getProgress("unknown"));
+	}
+
+	@Test
+	public void testDispatchFailed() {
+		ExpansionTaskManager manager = new ExpansionTaskManager(taskDao, ScheduleExpansionService::new, id -> {
+			throw new IllegalStateException("async task queue is disabled.");
+		});
+		try {
+			manager.submit(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 21), 7, 2);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// 実行されないタスクは残さない
+		assertEquals(0, store.size(ExpansionTaskDao.DEFINITION_NAME));
+	}
+
+	@Test
+	public void testDefinition() {
+		EntityDefinition definition = ExpansionTaskDao.createDefinition();
+		assertEquals(ExpansionTaskDao.DEFINITION_NAME, definition.getName());
+		String[] names = new String[definition.getPropertyList().size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = definition.getPropertyList().get(i).getName();
+		}
+		assertArrayEquals(ExpansionTaskDao.PROPERTIES, names);
+	}
+
+	private ExpansionTaskManager newManager() {
+		ExpansionTaskManager[] manager = new ExpansionTaskManager[1];
+		manager[0] = new ExpansionTaskManager(taskDao, () -> new ScheduleExpansionService(
+				new RadikoScheduleDao(store.asEntityManager()), new RadikoProgramDao(store.asEntityManager())),
+				taskId -> executor.execute(() -> manager[0].execute(taskId)));
+		return manager[0];
+	}
+
+	private static ExpansionTaskProgress await(ExpansionTaskManager manager, String taskId) throws InterruptedException {
+		ExpansionTaskProgress progress = manager.getProgress(taskId);
+		for (int i = 0; i < 500 && !progress.isFinished(); i++) {
+			Thread.sleep(10);
+			progress = manager.getProgress(taskId);
+		}
+		return progress;
+	}
+
+	private static RadikoSchedule schedule(String callSign, String name, String weekDay) {
+		RadikoStation station = new RadikoStation();
+		station.setOid(callSign);
+		station.setCallSign(callSign);
+		RadikoSchedule schedule = new RadikoSchedule();
+		schedule.setStation(station);
+		schedule.setProgramName(name);
+		schedule.setWeekDay(new SelectValue(weekDay));
+		schedule.setStartTime(Time.valueOf("09:00:00"));
+		return schedule;
+	}
+}
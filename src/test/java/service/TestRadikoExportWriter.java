@@ -0,0 +1,97 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.zip.GZIPInputStream;
+
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.SelectValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.dao.RadikoStationDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.service.RadikoExportWriter;
+import ctp.service.RadikoExportWriter.Format;
+import ctp.service.RadikoExportWriter.Target;
+import dao.InMemoryEntityManager;
+
+public class TestRadikoExportWriter {
+
+	private RadikoProgramDao programDao;
+	private RadikoScheduleDao scheduleDao;
+
+	@Before
+	public void setUp() {
+		EntityManager em = new InMemoryEntityManager().asEntityManager();
+		programDao = new RadikoProgramDao(em);
+		scheduleDao = new RadikoScheduleDao(em);
+		RadikoStation station = new RadikoStation();
+		station.setOid("TBS");
+		station.setCallSign("TBS");
+		new RadikoStationDao(em).insert(station);
+
+		RadikoProgram program = new RadikoProgram();
+		program.setOid("p1");
+		program.setRadikoStation(station);
+		program.setProgramName("アフター6ジャンクション, \"特集\"");
+		program.setStartDatetime(Timestamp.valueOf("2020-01-06 18:00:00"));
+		program.setListenStatus(new SelectValue("LISTENED"));
+		programDao.insert(program);
+		program = new RadikoProgram();
+		program.setOid("p2");
+		program.setRadikoStation(station);
+		program.setProgramName("荻上チキ・Session");
+		program.setStartDatetime(Timestamp.valueOf("2020-01-07 22:00:00"));
+		programDao.insert(program);
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		RadikoExportWriter writer = new RadikoExportWriter(Target.PROGRAM, Format.CSV, programDao, scheduleDao);
+		writer.setPeriod(Timestamp.valueOf("2020-01-06 00:00:00"), Timestamp.valueOf("2020-01-06 23:59:59"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(out);
+
+		String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+		assertEquals(1, writer.getRowCount());
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("\uFEFFoid,radikoStation.callSign,programName,"));
+		assertEquals("p1,TBS,\"アフター6ジャンクション, \"\"特集\"\"\",2020-01-06 18:00:00,,LISTENED,,", lines[1]);
+		assertEquals("text/csv; charset=UTF-8", writer.getContentType());
+	}
+
+	@Test
+	public void testNdjsonGzip() throws IOException {
+		RadikoExportWriter writer = new RadikoExportWriter(Target.PROGRAM, Format.NDJSON, programDao, scheduleDao);
+		writer.setGzip(true);
+		writer.setBufferSize(16);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(out);
+
+		String[] lines;
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int read; (read = in.read(buffer)) > 0;) {
+				decoded.write(buffer, 0, read);
+			}
+			lines = new String(decoded.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		}
+		assertEquals(2, writer.getRowCount());
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].contains("\"programName\":\"アフター6ジャンクション, \\\"特集\\\"\""));
+		assertTrue(lines[1].contains("\"oid\":\"p2\""));
+		assertTrue(lines[1].contains("\"listenStatus\":null"));
+		assertEquals("radikoProgram.ndjson.gz", writer.getFileName());
+	}
+}
@@ -0,0 +1,91 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.iplass.mtp.entity.EntityManager;
+import org.iplass.mtp.entity.ValidateError;
+import org.iplass.mtp.entity.ValidateResult;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoStationDao;
+import ctp.dao.RadikoStationSnapshot;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.service.ImportReport;
+import ctp.service.RadikoImportPipeline;
+import dao.InMemoryEntityManager;
+
+public class TestRadikoImportPipeline {
+
+	@Test
+	public void testRun() throws Exception {
+		InMemoryEntityManager memory = new InMemoryEntityManager();
+		memory.setValidator(entity -> {
+			ValidateResult result = new ValidateResult();
+			if ("NG".equals(entity.getValue(RadikoProgram.PROGRAM_NAME))) {
+				ValidateError error = new ValidateError();
+				error.setPropertyName(RadikoProgram.PROGRAM_NAME);
+				error.setErrorMessages(Collections.singletonList("invalid"));
+				result.setErrors(Collections.singletonList(error));
+			}
+			return result;
+		});
+		EntityManager em = memory.asEntityManager();
+		RadikoStation station = new RadikoStation();
+		station.setOid("station1");
+		station.setCallSign("TBS");
+		new RadikoStationDao(em).insert(station);
+		RadikoStationSnapshot stations = RadikoStationSnapshot.create(new RadikoStationDao(em));
+
+		Path dir = Files.createTempDirectory("import");
+		Path file = dir.resolve("program.csv");
+		Path errorFile = dir.resolve("error.csv");
+		List<String> lines = new ArrayList<>();
+		lines.add("\uFEFFoid,radikoStation.callSign,programName,startDatetime,deadline,listenStatus,radikoUrl,note");
+		for (int i = 0; i < 20; i++) {
+			lines.add(",TBS,番組" + i + ",2020-01-06 18:00:00,,,,");
+		}
+		lines.add(",TBS,\"改行を含む\r\n番組\",2020-01-07 18:00:00,,LISTENED,,");
+		lines.add("");
+		lines.add(",QRR,番組,2020-01-07 18:00:00,,,,");
+		lines.add(",TBS,番組,2020/01/07,,,,");
+		lines.add(",TBS,NG,2020-01-07 18:00:00,,,,");
+		Files.write(file, String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+		RadikoImportPipeline pipeline = new RadikoImportPipeline(new RadikoProgramDao(em), stations);
+		pipeline.setParserThreads(3);
+		pipeline.setBatchSize(4);
+		pipeline.setQueueCapacity(1);
+		try {
+			ImportReport report = pipeline.run(file, errorFile);
+			assertEquals(24, report.getReadCount());
+			assertEquals(21, report.getInsertedCount());
+			assertEquals(2, report.getParseErrorCount());
+			assertEquals(1, report.getValidationErrorCount());
+			assertEquals(21, memory.size(RadikoProgram.DEFINITION_NAME));
+
+			List<RadikoProgram> programs = new RadikoProgramDao(em).findBetweenStartDate(
+					Timestamp.valueOf("2020-01-07 00:00:00"), Timestamp.valueOf("2020-01-07 23:59:59"));
+			assertEquals(1, programs.size());
+			assertEquals("改行を含む\r\n番組", programs.get(0).getProgramName());
+			assertEquals("station1", programs.get(0).getRadikoStation().getOid());
+
+			List<String> errors = Files.readAllLines(errorFile, StandardCharsets.UTF_8);
+			assertEquals(4, errors.size());
+			assertTrue(errors.get(0).startsWith("line,"));
+			assertTrue(errors.stream().anyMatch(line -> line.startsWith("25,\"unknown callSign: QRR\"")));
+			assertTrue(errors.stream().anyMatch(line -> line.startsWith("27,\"programName:[invalid]\"")));
+		} finally {
+			stations.close();
+		}
+	}
+}
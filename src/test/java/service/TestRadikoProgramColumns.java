@@ -0,0 +1,132 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.service.RadikoProgramColumns;
+import ctp.service.RadikoProgramService;
+import dao.InMemoryEntityManager;
+
+public class TestRadikoProgramColumns {
+
+	private RadikoProgramColumns columns;
+
+	@Before
+	public void setUp() throws Exception {
+		RadikoProgramDao dao = new RadikoProgramDao(new InMemoryEntityManager().asEntityManager());
+		dao.insert(program("TBS", "番組A", "2020-01-06 09:00:00", "2020-01-13 09:00:00", null));
+		dao.insert(program("TBS", "番組B", "2020-01-12 09:00:00", "2020-01-19 09:00:00", "LISTENED"));
+		dao.insert(program("QRR", "番組A", "2020-01-13 09:00:00", null, "LISTENED"));
+		columns = RadikoProgramColumns.build(dao);
+	}
+
+	@Test
+	public void testFilterAndCount() {
+		assertEquals(3, columns.size());
+
+		boolean[] selection = columns.selectAll();
+		columns.filterStartBetween(selection, Timestamp.valueOf("2020-01-06 00:00:00"), Timestamp.valueOf("2020-01-12 23:59:59"));
+		assertEquals(2, columns.count(selection));
+		assertEquals(Long.valueOf(1), columns.countByStatus(selection).get(RadikoProgramService.NO_STATUS));
+		assertEquals(Long.valueOf(1), columns.countByStatus(selection).get("LISTENED"));
+		assertEquals(Collections.singletonMap("TBS", 2L), columns.countByStation(selection));
+		assertEquals(Timestamp.valueOf("2020-01-06 09:00:00").getTime(), columns.minStart(selection));
+		assertEquals(Timestamp.valueOf("2020-01-12 09:00:00").getTime(), columns.maxStart(selection));
+
+		selection = columns.selectAll();
+		columns.filterStatus(selection, "LISTENED");
+		columns.filterStation(selection, "QRR");
+		assertEquals(1, columns.count(selection));
+		columns.filterStatus(selection, "UNKNOWN");
+		assertEquals(0, columns.count(selection));
+		assertEquals(RadikoProgramColumns.NULL_TIME, columns.minStart(selection));
+	}
+
+	@Test
+	public void testCountByName() {
+		Map<String, Long> counts = columns.countByName(columns.selectAll());
+		assertEquals(2, counts.size());
+		assertEquals(Long.valueOf(2), counts.get("番組A"));
+		assertEquals(Long.valueOf(1), counts.get("番組B"));
+
+		boolean[] selection = columns.selectAll();
+		columns.filterStation(selection, "TBS");
+		columns.filterStatus(selection, "LISTENED");
+		assertEquals(Collections.singletonMap("番組B", 1L), columns.countByName(selection));
+	}
+
+	@Test
+	public void testFilterDeadlineBetween() {
+		boolean[] selection = columns.selectAll();
+		columns.filterDeadlineBetween(selection, Timestamp.valueOf("2020-01-13 00:00:00"), Timestamp.valueOf("2020-01-19 09:00:00"));
+		assertEquals(2, columns.count(selection));
+
+		// 視聴期限が未設定の行は一致しない
+		selection = columns.selectAll();
+		columns.filterStation(selection, "QRR");
+		columns.filterDeadlineBetween(selection, new Timestamp(0), Timestamp.valueOf("2100-01-01 00:00:00"));
+		assertEquals(0, columns.count(selection));
+	}
+
+	@Test
+	public void testFilterNoStatus() {
+		boolean[] selection = columns.selectAll();
+		columns.filterStatus(selection, null);
+		assertEquals(1, columns.count(selection));
+
+		// 集計結果のキーと同じ値で絞り込める
+		selection = columns.selectAll();
+		columns.filterStatus(selection, RadikoProgramService.NO_STATUS);
+		assertEquals(1, columns.count(selection));
+		assertEquals(Collections.singletonMap(RadikoProgramService.NO_STATUS, 1L), columns.countByStatus(selection));
+	}
+
+	@Test
+	public void testTooManyStatus() {
+		RadikoProgramColumns.Builder builder = new RadikoProgramColumns.Builder();
+		// 未設定を除き127種類まで
+		for (int i = 0; i < 127; i++) {
+			builder.add(program("TBS", "番組", "2020-01-06 09:00:00", null, "S" + i));
+		}
+		builder.add(program("TBS", "番組", "2020-01-06 09:00:00", null, null));
+		assertEquals(128, builder.build().size());
+		try {
+			builder.add(program("TBS", "番組", "2020-01-06 09:00:00", null, "S127"));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFootprint() {
+		Map<String, Long> footprint = columns.getFootprint();
+		assertTrue(footprint.get("total") > footprint.get(RadikoProgram.START_DATETIME));
+	}
+
+	private static RadikoProgram program(String stationOid, String name, String start, String deadline, String status) {
+		RadikoStation station = new RadikoStation();
+		station.setOid(stationOid);
+		RadikoProgram program = new RadikoProgram();
+		program.setRadikoStation(station);
+		program.setProgramName(name);
+		program.setStartDatetime(Timestamp.valueOf(start));
+		if (deadline != null) {
+			program.setDeadline(Timestamp.valueOf(deadline));
+		}
+		if (status != null) {
+			program.setListenStatus(new SelectValue(status));
+		}
+		return program;
+	}
+}
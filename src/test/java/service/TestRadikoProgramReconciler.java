@@ -0,0 +1,114 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
+import ctp.service.RadikoProgramReconciler;
+import ctp.service.ReconcileResult;
+import dao.InMemoryEntityManager;
+
+public class TestRadikoProgramReconciler {
+
+	private static final long BASE = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final String STATION = "TBS";
+
+	private InMemoryEntityManager store;
+	private RadikoProgramDao dao;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		dao = new RadikoProgramDao(store.asEntityManager());
+		for (int i = 0; i < 4; i++) {
+			dao.insert(program("番組" + i, i));
+		}
+	}
+
+	@Test
+	public void testReconcile() {
+		List<RadikoProgram> desired = new ArrayList<>();
+		desired.add(program("番組0", 0));
+		desired.add(program("番組1(変更)", 1));
+		desired.add(program("番組4", 4));
+
+		RadikoProgramReconciler reconciler = new RadikoProgramReconciler(dao);
+		ReconcileResult plan = reconciler.plan(STATION, new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), desired);
+		assertEquals(1, plan.getInsertCount());
+		assertEquals(1, plan.getUpdateCount());
+		assertEquals(2, plan.getDeleteCount());
+		assertEquals(1, plan.getUnchangedCount());
+		assertFalse(plan.isApplied());
+		assertEquals(4, store.size(RadikoProgram.DEFINITION_NAME));
+
+		reconciler.apply(plan);
+		assertTrue(plan.isSuccess());
+		assertEquals(3, store.size(RadikoProgram.DEFINITION_NAME));
+
+		ReconcileResult again = reconciler.plan(STATION, new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), desired);
+		assertEquals(3, again.getUnchangedCount());
+		assertEquals(0, again.getInsertCount() + again.getUpdateCount() + again.getDeleteCount());
+	}
+
+	@Test
+	public void testDuplicates() {
+		// 同じ開始日時の番組を重複して登録
+		dao.insert(program("番組1(重複)", 1));
+		dao.insert(program("番組1(重複)", 1));
+		List<RadikoProgram> desired = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			desired.add(program("番組" + i, i));
+		}
+
+		RadikoProgramReconciler reconciler = new RadikoProgramReconciler(dao);
+		ReconcileResult result = reconciler.reconcile(STATION, new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), desired);
+		assertEquals(2, result.getDeleteCount());
+		assertTrue(result.isSuccess());
+		assertEquals(4, store.size(RadikoProgram.DEFINITION_NAME));
+	}
+
+	@Test
+	public void testPlanDoesNotModifyDesired() {
+		RadikoProgram noStation = program("番組4", 4);
+		noStation.setRadikoStation(null);
+		RadikoProgram outOfRange = program("番組5", 48);
+		List<RadikoProgram> desired = new ArrayList<>();
+		desired.add(noStation);
+		desired.add(outOfRange);
+
+		RadikoProgramReconciler reconciler = new RadikoProgramReconciler(dao);
+		try {
+			reconciler.plan(STATION, new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), desired);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// 範囲外の番組があるため全件を変更しない
+		}
+		assertNull(noStation.getRadikoStation());
+
+		desired.remove(outOfRange);
+		ReconcileResult plan = reconciler.plan(STATION, new Timestamp(BASE), new Timestamp(BASE + 24 * HOUR), desired);
+		assertEquals(1, plan.getInsertCount());
+		assertEquals(STATION, plan.getInserts().get(0).getRadikoStation().getOid());
+		assertNull(noStation.getRadikoStation());
+	}
+
+	private static RadikoProgram program(String name, int hours) {
+		RadikoStation station = new RadikoStation();
+		station.setOid(STATION);
+		RadikoProgram program = new RadikoProgram();
+		program.setRadikoStation(station);
+		program.setProgramName(name);
+		program.setStartDatetime(new Timestamp(BASE + hours * HOUR));
+		return program;
+	}
+}
@@ -2,10 +2,27 @@ package service;
 
 import static org.junit.Assert.*;
 
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.iplass.mtp.entity.UpdateCondition.UpdateValue;
+import org.iplass.mtp.entity.UpdateOption;
+import org.iplass.mtp.entity.query.Where;
+import org.iplass.mtp.entity.query.condition.predicate.Equals;
 import org.junit.Before;
 import org.junit.Test;
 
+import ctp.dao.DirtyTracker;
+import ctp.dao.RadikoProgramDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoStation;
 import ctp.service.RadikoProgramService;
+import dao.InMemoryEntityManager;
 
 public class TestRadikoProgramService {
 	
@@ -23,4 +40,114 @@ public class TestRadikoProgramService {
 		assertEquals(100, RadikoProgramService.calc());
 	}
 
+	@Test
+	public void testStatistics() {
+		RadikoProgramDao dao = new RadikoProgramDao(new InMemoryEntityManager().asEntityManager());
+		// 2020-01-06(月)～2020-01-12(日)の週に2件、次の週に1件
+		dao.insert(program("TBS", "2020-01-06 09:00:00", null));
+		dao.insert(program("TBS", "2020-01-12 09:00:00", "LISTENED"));
+		dao.insert(program("QRR", "2020-01-13 09:00:00", null));
+
+		RadikoProgramService service = new RadikoProgramService(dao);
+		service.start();
+		try {
+			assertEquals(3, service.getProgramCount());
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("TBS").get(RadikoProgramService.NO_STATUS));
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("TBS").get("LISTENED"));
+			assertEquals(2, total(service.getStatusCountsByWeek(LocalDate.of(2020, 1, 8))));
+			assertEquals(1, total(service.getStatusCountsByWeek(LocalDate.of(2020, 1, 19))));
+
+			// 登録、更新、削除は通知された更新前の状態から増減する
+			RadikoProgram added = program("QRR", "2020-01-14 09:00:00", null);
+			dao.insert(added);
+			added.setListenStatus(new SelectValue("LISTENED"));
+			added.setStartDatetime(Timestamp.valueOf("2020-01-10 09:00:00"));
+			UpdateOption option = new UpdateOption(false);
+			List<String> properties = new ArrayList<>();
+			properties.add(RadikoProgram.LISTEN_STATUS);
+			properties.add(RadikoProgram.START_DATETIME);
+			option.setUpdateProperties(properties);
+			assertEquals(4, service.getProgramCount());
+			assertTrue(service.isConsistent());
+			dao.update(added, option);
+			assertTrue(service.isConsistent());
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("QRR").get("LISTENED"));
+			assertEquals(Long.valueOf(2), service.getStatusCountsByWeek(LocalDate.of(2020, 1, 6)).get("LISTENED"));
+			assertEquals(Long.valueOf(1), service.getStatusCountsByWeek(LocalDate.of(2020, 1, 13)).get(RadikoProgramService.NO_STATUS));
+			assertEquals(Collections.emptyList(), service.verify());
+
+			// 楽観ロックによる更新(referenceを指定しない更新)
+			assertNotNull(dao.updateListenStatus(added.getOid(), new SelectValue("SKIPPED")));
+			assertTrue(service.isConsistent());
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("QRR").get("SKIPPED"));
+			assertNull(service.getStatusCountsByStation("QRR").get("LISTENED"));
+			assertEquals(Collections.emptyList(), service.verify());
+
+			// 変更プロパティの更新
+			DirtyTracker<RadikoProgram> tracker = dao.track(dao.load(added.getOid()));
+			RadikoStation tbs = new RadikoStation();
+			tbs.setOid("TBS");
+			tracker.get().setRadikoStation(tbs);
+			assertTrue(dao.updateDirty(tracker));
+			assertTrue(service.isConsistent());
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("TBS").get("SKIPPED"));
+			assertEquals(Collections.emptyList(), service.verify());
+
+			dao.delete(added);
+			assertTrue(service.isConsistent());
+			assertEquals(3, service.getProgramCount());
+			assertNull(service.getStatusCountsByStation("TBS").get("SKIPPED"));
+			assertEquals(Collections.emptyList(), service.verify());
+
+			// 一括処理もチャンク毎にロードした更新前の状態から増減する
+			List<RadikoProgram> bulk = new ArrayList<>();
+			bulk.add(program("QRR", "2020-01-20 09:00:00", null));
+			bulk.add(program("QRR", "2020-01-21 09:00:00", null));
+			dao.insertAll(bulk, false);
+			for (RadikoProgram program : bulk) {
+				program.setListenStatus(new SelectValue("LISTENED"));
+			}
+			UpdateOption statusOption = new UpdateOption(false);
+			statusOption.setUpdateProperties(Collections.singletonList(RadikoProgram.LISTEN_STATUS));
+			dao.updateAll(bulk, statusOption);
+			assertTrue(service.isConsistent());
+			assertEquals(Long.valueOf(2), service.getStatusCountsByWeek(LocalDate.of(2020, 1, 20)).get("LISTENED"));
+			dao.deleteAll(bulk);
+			assertTrue(service.isConsistent());
+			assertEquals(3, service.getProgramCount());
+			assertEquals(Collections.emptyList(), service.verify());
+
+			// 条件指定の更新は参照時に集計し直す
+			List<UpdateValue> values = Collections.singletonList(new UpdateValue(RadikoProgram.LISTEN_STATUS, new SelectValue("LISTENED")));
+			dao.updateAll(values, new Where(new Equals(RadikoProgram.RADIKO_STATION + ".oid", "QRR")));
+			assertFalse(service.isConsistent());
+			assertFalse(service.verify().isEmpty());
+			assertEquals(Long.valueOf(1), service.getStatusCountsByStation("QRR").get("LISTENED"));
+			assertTrue(service.isConsistent());
+			assertEquals(Collections.emptyList(), service.verify());
+		} finally {
+			service.close();
+		}
+	}
+
+	private static long total(Map<String, Long> counts) {
+		long total = 0;
+		for (long count : counts.values()) {
+			total += count;
+		}
+		return total;
+	}
+
+	private static RadikoProgram program(String stationOid, String start, String status) {
+		RadikoStation station = new RadikoStation();
+		station.setOid(stationOid);
+		RadikoProgram program = new RadikoProgram();
+		program.setRadikoStation(station);
+		program.setProgramName("番組");
+		program.setStartDatetime(Timestamp.valueOf(start));
+		if (status != null) {
+			program.setListenStatus(new SelectValue(status));
+		}
+		return program;
+	}
 }
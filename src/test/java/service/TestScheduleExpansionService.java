@@ -0,0 +1,105 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.dao.RadikoProgramDao;
+import ctp.dao.RadikoScheduleDao;
+import ctp.entity.RadikoProgram;
+import ctp.entity.RadikoSchedule;
+import ctp.entity.RadikoStation;
+import ctp.service.ScheduleExpansionResult;
+import ctp.service.ScheduleExpansionService;
+import ctp.service.WeekDayMapping;
+import dao.InMemoryEntityManager;
+
+public class TestScheduleExpansionService {
+
+	private InMemoryEntityManager store;
+	private ScheduleExpansionService service;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new InMemoryEntityManager();
+		RadikoScheduleDao scheduleDao = new RadikoScheduleDao(store.asEntityManager());
+		service = new ScheduleExpansionService(scheduleDao, new RadikoProgramDao(store.asEntityManager()));
+
+		scheduleDao.insert(schedule("TBS", "番組A", "1", "09:00:00"));
+		scheduleDao.insert(schedule("TBS", "番組B", "SUNDAY", "21:00:00"));
+		scheduleDao.insert(schedule("QRR", "番組C", "3", "13:00:00"));
+		scheduleDao.insert(schedule("QRR", "番組D", "不明", "10:00:00"));
+	}
+
+	@Test
+	public void testExpandSchedule() {
+		RadikoSchedule schedule = schedule("TBS", "番組A", "1", "09:00:00");
+		// 2020-01-06は月曜日
+		List<RadikoProgram> list = service.expand(schedule, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31));
+		assertEquals(4, list.size());
+		assertEquals("2020-01-06 09:00:00.0", list.get(0).getStartDatetime().toString());
+		assertEquals("2020-01-13 09:00:00.0", list.get(0).getDeadline().toString());
+		assertEquals("http://radiko.jp/#!/ts/TBS/20200106090000", list.get(0).getRadikoUrl());
+	}
+
+	@Test
+	public void testExpandWithSettings() {
+		service.setDeadlineDays(14);
+		service.setRadikoUrlTemplate("https://radiko.jp/#!/ts/{callSign}/{startDatetime}");
+		// 0:日曜始まりの定義
+		service.setWeekDayMapping(WeekDayMapping.parse("0=SUNDAY,1=MONDAY,2=TUESDAY"));
+		RadikoSchedule schedule = schedule("TBS", "番組A", "2", "09:00:00");
+		List<RadikoProgram> list = service.expand(schedule, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31));
+		assertEquals(4, list.size());
+		assertEquals("2020-01-07 09:00:00.0", list.get(0).getStartDatetime().toString());
+		assertEquals("2020-01-21 09:00:00.0", list.get(0).getDeadline().toString());
+		assertEquals("https://radiko.jp/#!/ts/TBS/20200107090000", list.get(0).getRadikoUrl());
+
+		// 対応のない選択値は展開しない
+		assertTrue(service.expand(schedule("TBS", "番組B", "SUNDAY", "21:00:00"), LocalDate.of(2020, 1, 1),
+				LocalDate.of(2020, 1, 31)).isEmpty());
+	}
+
+	@Test
+	public void testExpandWithParallelismOne() {
+		service.setParallelism(1);
+		ScheduleExpansionResult result = service.expand(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 14));
+		assertTrue(result.isSuccess());
+		assertEquals(6, result.getInsertCount());
+	}
+
+	@Test
+	public void testExpandIsIdempotent() {
+		LocalDate from = LocalDate.of(2020, 1, 1);
+		LocalDate to = LocalDate.of(2020, 1, 14);
+
+		ScheduleExpansionResult first = service.expand(from, to);
+		assertTrue(first.isSuccess());
+		assertEquals(1, first.getSkippedScheduleCount());
+		assertEquals(6, first.getInsertCount());
+		assertEquals(6, store.size(RadikoProgram.DEFINITION_NAME));
+
+		ScheduleExpansionResult second = service.expand(from, to);
+		assertEquals(0, second.getInsertCount() + second.getUpdateCount());
+		assertEquals(6, second.getUnchangedCount());
+		assertEquals(6, store.size(RadikoProgram.DEFINITION_NAME));
+	}
+
+	private static RadikoSchedule schedule(String callSign, String name, String weekDay, String startTime) {
+		RadikoStation station = new RadikoStation();
+		station.setOid(callSign);
+		station.setCallSign(callSign);
+		RadikoSchedule schedule = new RadikoSchedule();
+		schedule.setStation(station);
+		schedule.setProgramName(name);
+		schedule.setWeekDay(new SelectValue(weekDay));
+		schedule.setStartTime(Time.valueOf(startTime));
+		return schedule;
+	}
+}
@@ -0,0 +1,108 @@
+package service;
+
+import static org.junit.Assert.*;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.iplass.mtp.entity.SelectValue;
+import org.junit.Test;
+
+import ctp.service.WeekDayMapping;
+
+public class TestWeekDayMapping {
+
+	@Test
+	public void testJapaneseLabelsFromSunday() {
+		// 値0～6、表示名 日～土
+		WeekDayMapping mapping = WeekDayMapping.fromOptions(options("0 1 2 3 4 5 6", "日 月 火 水 木 金 土"));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("0")));
+		assertEquals(DayOfWeek.MONDAY, mapping.toDayOfWeek(new SelectValue("1")));
+		assertEquals(DayOfWeek.SATURDAY, mapping.toDayOfWeek(new SelectValue("6")));
+		assertNull(mapping.toDayOfWeek(new SelectValue("7")));
+	}
+
+	@Test
+	public void testJapaneseLabelsFromMonday() {
+		// 値1～7、表示名 月曜日～日曜日
+		WeekDayMapping mapping = WeekDayMapping.fromOptions(options("1 2 3 4 5 6 7", "月曜日 火曜日 水曜日 木曜日 金曜日 土曜日 日曜日"));
+		assertEquals(DayOfWeek.MONDAY, mapping.toDayOfWeek(new SelectValue("1")));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("7")));
+		assertNull(mapping.toDayOfWeek(new SelectValue("0")));
+	}
+
+	@Test
+	public void testLabelsTakePrecedenceOverValues() {
+		// 値は1始まりだが日曜始まりの定義
+		WeekDayMapping mapping = WeekDayMapping.fromOptions(options("1 2 3 4 5 6 7", "Sunday Monday Tuesday Wednesday Thursday Friday Saturday"));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("1")));
+		assertEquals(DayOfWeek.SATURDAY, mapping.toDayOfWeek(new SelectValue("7")));
+	}
+
+	@Test
+	public void testNumericValuesWithoutLabels() {
+		WeekDayMapping zeroBased = WeekDayMapping.fromOptions(options("0 1 2 3 4 5 6", null));
+		assertEquals(DayOfWeek.SUNDAY, zeroBased.toDayOfWeek(new SelectValue("0")));
+		assertEquals(DayOfWeek.MONDAY, zeroBased.toDayOfWeek(new SelectValue("1")));
+
+		WeekDayMapping iso = WeekDayMapping.fromOptions(options("1 2 3 4 5 6 7", null));
+		assertEquals(DayOfWeek.MONDAY, iso.toDayOfWeek(new SelectValue("1")));
+		assertEquals(DayOfWeek.SUNDAY, iso.toDayOfWeek(new SelectValue("7")));
+	}
+
+	@Test
+	public void testEnglishValues() {
+		WeekDayMapping mapping = WeekDayMapping.fromOptions(options("MON TUE WED THU FRI SAT SUN", null));
+		assertEquals(DayOfWeek.MONDAY, mapping.toDayOfWeek(new SelectValue("MON")));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("SUN")));
+		assertNull(mapping.toDayOfWeek(new SelectValue("1")));
+	}
+
+	@Test
+	public void testParse() {
+		WeekDayMapping mapping = WeekDayMapping.parse("a=monday, b=SUNDAY");
+		assertEquals(DayOfWeek.MONDAY, mapping.toDayOfWeek(new SelectValue("a")));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("b")));
+		assertNull(mapping.toDayOfWeek(new SelectValue("c")));
+
+		try {
+			WeekDayMapping.parse("a");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void testLoad() {
+		// 定義を参照できない場合は値のみから判定する
+		WeekDayMapping mapping = WeekDayMapping.load();
+		assertEquals(DayOfWeek.MONDAY, mapping.toDayOfWeek(new SelectValue("1")));
+		assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("SUNDAY")));
+		assertNull(mapping.toDayOfWeek(new SelectValue("不明")));
+		assertNull(mapping.toDayOfWeek(null));
+
+		System.setProperty(WeekDayMapping.MAPPING_PROPERTY, "0=SUNDAY,1=MONDAY");
+		try {
+			mapping = WeekDayMapping.load();
+			assertEquals(DayOfWeek.SUNDAY, mapping.toDayOfWeek(new SelectValue("0")));
+			assertNull(mapping.toDayOfWeek(new SelectValue("SUNDAY")));
+		} finally {
+			System.clearProperty(WeekDayMapping.MAPPING_PROPERTY);
+		}
+	}
+
+	/**
+	 * 空白区切りの値、表示名から選択肢を生成する
+	 */
+	private static List<SelectValue> options(String values, String labels) {
+		String[] valueArray = values.split(" ");
+		String[] labelArray = labels != null ? labels.split(" ") : new String[valueArray.length];
+		List<SelectValue> list = new ArrayList<>();
+		for (int i = 0; i < valueArray.length; i++) {
+			list.add(new SelectValue(valueArray[i], labelArray[i]));
+		}
+		return list;
+	}
+}
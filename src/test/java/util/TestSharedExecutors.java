@@ -0,0 +1,33 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ctp.util.SharedExecutors;
+
+public class TestSharedExecutors {
+
+	@Test
+	public void testGetAndShutdown() throws Exception {
+		ExecutorService executor = SharedExecutors.get("test-shared", 2);
+		assertSame(executor, SharedExecutors.get("test-shared", 4));
+
+		Thread thread = executor.submit(Thread::currentThread).get();
+		assertTrue(thread.getName().startsWith("test-shared-"));
+		assertTrue(thread.isDaemon());
+
+		SharedExecutors.shutdown();
+		assertTrue(executor.isShutdown());
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+		// 停止後は新たに生成する
+		ExecutorService recreated = SharedExecutors.get("test-shared", 2);
+		assertNotSame(executor, recreated);
+		assertFalse(recreated.isShutdown());
+		SharedExecutors.shutdown();
+	}
+}
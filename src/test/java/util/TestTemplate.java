@@ -0,0 +1,63 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ctp.util.ObjectUtil;
+import ctp.util.Template;
+
+public class TestTemplate {
+
+	private Map<String, String> bindData;
+
+	@Before
+	public void setUp() throws Exception {
+		bindData = new HashMap<>();
+		bindData.put("station", "TBS");
+		bindData.put("program", "番組$1\\");
+		bindData.put("blank", " ");
+		bindData.put("null", null);
+	}
+
+	@Test
+	public void testReplace() {
+		assertEquals("TBSの番組$1\\です", ObjectUtil.replace("{station}の{program}です", bindData));
+	}
+
+	@Test
+	public void testBlankValue() {
+		assertEquals("[][]", ObjectUtil.replace("[{blank}][{null}]", bindData));
+	}
+
+	@Test
+	public void testUnknownKey() {
+		assertEquals("{unknown}TBS{", ObjectUtil.replace("{unknown}{station}{", bindData));
+	}
+
+	@Test
+	public void testNestedBrace() {
+		assertEquals("{TBS}", ObjectUtil.replace("{{station}}", bindData));
+	}
+
+	@Test
+	public void testNoReplaceInValue() {
+		bindData.put("self", "{station}");
+		assertEquals("{station}", ObjectUtil.replace("{self}", bindData));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertNull(ObjectUtil.replace(null, bindData));
+		assertEquals("{station}", ObjectUtil.replace("{station}", new HashMap<>()));
+	}
+
+	@Test
+	public void testCached() {
+		assertSame(Template.of("{station}"), Template.of("{station}"));
+	}
+}
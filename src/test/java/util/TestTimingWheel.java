@@ -0,0 +1,73 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ctp.util.TimingWheel;
+
+public class TestTimingWheel {
+
+	private static final long TICK = 1000L;
+
+	@Test
+	public void testAdvance() {
+		TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 2, 0L);
+		wheel.add("a", 500L);
+		wheel.add("b", 1500L);
+		wheel.add("c", 30_000L);
+		wheel.add("d", 1_000_000L);
+
+		List<String> fired = new ArrayList<>();
+		wheel.advance(999L, fired::add);
+		assertTrue(fired.isEmpty());
+		wheel.advance(1000L, fired::add);
+		assertEquals("[a]", fired.toString());
+		wheel.advance(29_999L, fired::add);
+		assertEquals("[a, b]", fired.toString());
+		wheel.advance(31_000L, fired::add);
+		assertEquals("[a, b, c]", fired.toString());
+		wheel.advance(1_001_000L, fired::add);
+		assertEquals("[a, b, c, d]", fired.toString());
+		assertEquals(0, wheel.size());
+
+		// 期限切れの要素は次回の取り出しで返す
+		wheel.add("e", 0L);
+		wheel.advance(1_001_000L, fired::add);
+		assertEquals("e", fired.get(4));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(1);
+		TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 16, 3, 0L);
+		Map<Integer, Long> expireAt = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			long expire = (long) (random.nextDouble() * TICK * 16 * 16 * 16 * 3);
+			expireAt.put(i, expire);
+			wheel.add(i, expire);
+		}
+
+		long now = 0L;
+		while (!expireAt.isEmpty()) {
+			now += random.nextInt((int) TICK * 40);
+			long current = now;
+			wheel.advance(current, item -> {
+				long expire = expireAt.remove(item);
+				// 期限前には取り出さない
+				assertTrue(expire < current);
+			});
+			// 期限を含むtickが終了した要素は全て取り出し済み
+			for (long expire : expireAt.values()) {
+				assertTrue((expire / TICK + 1) * TICK > current);
+			}
+		}
+		assertEquals(0, wheel.size());
+	}
+}